@@ -0,0 +1,168 @@
+/*
+Property List Abstract Immutable Sorted Map - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * <p>Base class for the unmodifiable {@link SortedMap}s backing {@link NSDictionary}.</p>
+ *
+ * <p>Keys use their natural ordering.
+ * The views returned by {@link #entrySet()}, {@link #keySet()} and {@link #values()}
+ * are created once and do not copy any entries.
+ * All modifying methods throw an {@link UnsupportedOperationException}.</p>
+ */
+abstract class AbstractImmutableSortedMap extends AbstractMap<String,NSObject> implements SortedMap<String,NSObject> {
+
+	/** The entry set view, created when needed */
+	private Set<Entry<String,NSObject>> entrySet;
+	/** The key set view, created when needed */
+	private Set<String> keySet;
+	/** The values view, created when needed */
+	private Collection<NSObject> valuesView;
+
+	/**
+	 * Estimate the amount of heap memory used by this map, excluding the keys and values.
+	 * The estimate assumes a 64 bits virtual machine with compressed references.
+	 * @return	the estimated size in bytes
+	 */
+	abstract long footprint();
+
+	/**
+	 * Get an iterator over the entries in ascending key order.
+	 * @return	the iterator
+	 */
+	abstract Iterator<Entry<String,NSObject>> entryIterator();
+
+	/**
+	 * Get an iterator over the keys in ascending order.
+	 * @return	the iterator
+	 */
+	Iterator<String> keyIterator() {
+		final Iterator<Entry<String,NSObject>> entries = entryIterator();
+		return new ReadOnlyIterator<String>() {
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+			public String next() {
+				return entries.next().getKey();
+			}
+		};
+	}
+
+	/**
+	 * Get an iterator over the values in ascending key order.
+	 * @return	the iterator
+	 */
+	Iterator<NSObject> valueIterator() {
+		final Iterator<Entry<String,NSObject>> entries = entryIterator();
+		return new ReadOnlyIterator<NSObject>() {
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+			public NSObject next() {
+				return entries.next().getValue();
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	public Comparator<? super String> comparator() {
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<Entry<String,NSObject>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Entry<String,NSObject>>() {
+				@Override
+				public Iterator<Entry<String,NSObject>> iterator() {
+					return entryIterator();
+				}
+				@Override
+				public int size() {
+					return AbstractImmutableSortedMap.this.size();
+				}
+			};
+		return entrySet;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<String> keySet() {
+		if (keySet == null)
+			keySet = new AbstractSet<String>() {
+				@Override
+				public Iterator<String> iterator() {
+					return keyIterator();
+				}
+				@Override
+				public boolean contains(Object o) {
+					return containsKey(o);
+				}
+				@Override
+				public int size() {
+					return AbstractImmutableSortedMap.this.size();
+				}
+			};
+		return keySet;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Collection<NSObject> values() {
+		if (valuesView == null)
+			valuesView = new AbstractCollection<NSObject>() {
+				@Override
+				public Iterator<NSObject> iterator() {
+					return valueIterator();
+				}
+				@Override
+				public int size() {
+					return AbstractImmutableSortedMap.this.size();
+				}
+			};
+		return valuesView;
+	}
+
+	/**
+	 * Iterator which does not support {@link #remove()}.
+	 * @param <E>	the type of the returned elements
+	 */
+	static abstract class ReadOnlyIterator<E> implements Iterator<E> {
+
+		/** The collection is unmodifiable */
+		public final void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
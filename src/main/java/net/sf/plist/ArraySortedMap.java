@@ -0,0 +1,267 @@
+/*
+Property List Array Sorted Map - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+
+/**
+ * <p>Unmodifiable {@link SortedMap} backed by two parallel arrays of keys and values,
+ * with the keys in ascending order.</p>
+ *
+ * <p>Maps with at least {@link #HASHTHRESHOLD} entries get an open-addressing hash index,
+ * an <code>int[]</code> of at most four times the amount of entries,
+ * so lookups cost O(1) and use the hash code which {@link String} caches.
+ * Smaller maps and sub maps use a binary search.
+ * Iteration always follows the order of the keys.</p>
+ *
+ * <p>Compared to a {@link java.util.TreeMap}, which needs an object of about 40 bytes per entry,
+ * the overhead is two references per entry plus the index.
+ * Sub maps share the arrays of their parent.
+ * The arrays are not copied, so they must not be modified after construction.</p>
+ * @see NSMutableDictionary#freeze()
+ */
+final class ArraySortedMap extends AbstractImmutableSortedMap {
+
+	/** The keys, in ascending order */
+	private final String[] keys;
+	/** The values, at the same index as their keys */
+	private final NSObject[] values;
+	/** Index of the first entry */
+	private final int from;
+	/** Index after the last entry */
+	private final int to;
+	/** Open-addressing hash table of entry indexes plus one, or <code>null</code> to use a binary search */
+	private final int[] table;
+
+	/** The minimal amount of entries for which a hash index is built */
+	static final int HASHTHRESHOLD = 16;
+
+	/**
+	 * Construct a new map which takes ownership of the arrays.
+	 * @param keys	the keys, in ascending order without duplicates
+	 * @param values	the values
+	 * @param size	the amount of entries, the arrays may be longer
+	 */
+	ArraySortedMap(String[] keys, NSObject[] values, int size) {
+		this(keys, values, 0, size, size >= HASHTHRESHOLD ? buildTable(keys, size) : null);
+	}
+
+	/**
+	 * Construct a new view on a range of the arrays.
+	 * @param keys	the keys
+	 * @param values	the values
+	 * @param from	index of the first entry
+	 * @param to	index after the last entry
+	 * @param table	the hash index, or <code>null</code>
+	 */
+	private ArraySortedMap(String[] keys, NSObject[] values, int from, int to, int[] table) {
+		this.keys = keys;
+		this.values = values;
+		this.from = from;
+		this.to = to;
+		this.table = table;
+	}
+
+	/**
+	 * Build the hash index for the first entries of an array.
+	 * @param keys	the keys, without duplicates
+	 * @param size	the amount of entries
+	 * @return	the table, whose length is a power of two of at least twice the amount of entries
+	 */
+	private static int[] buildTable(String[] keys, int size) {
+		final int[] table = new int[Integer.highestOneBit(size-1) << 2];
+		final int mask = table.length-1;
+		for(int i=0;i<size;i++) {
+			int slot = spread(keys[i].hashCode()) & mask;
+			while(table[slot] != 0)
+				slot = (slot+1) & mask;
+			table[slot] = i+1;
+		}
+		return table;
+	}
+
+	/**
+	 * Mix the high bits of a hash code into the low bits which select the slot.
+	 * @param hash	the hash code
+	 * @return	the mixed hash code
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Get the index of a key.
+	 * @param key	the key
+	 * @return	the index, or a negative value if the key is absent
+	 */
+	private int indexOf(Object key) {
+		if (!(key instanceof String))
+			return -1;
+		if (table == null)
+			return Arrays.binarySearch(keys, from, to, key);
+		final int mask = table.length-1;
+		for(int slot = spread(key.hashCode()) & mask;;slot = (slot+1) & mask) {
+			final int index = table[slot]-1;
+			if (index < 0)
+				return -1;
+			if (key.equals(keys[index]))
+				return index;
+		}
+	}
+
+	/**
+	 * Get the index of the first key which is equal to or greater than a key.
+	 * @param key	the key
+	 * @return	the index, between {@link #from} and {@link #to}
+	 */
+	private int lowerBound(String key) {
+		if (key == null)
+			throw new NullPointerException("key");
+		final int index = Arrays.binarySearch(keys, from, to, key);
+		return index < 0 ? -index-1 : index;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	long footprint() {
+		// Sub maps share the arrays, only their own range is counted
+		final long size = to-from;
+		return 48+2*NSObject.align(16+4*size)+(table == null ? 0 : NSObject.align(16+4L*table.length));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return to-from;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public NSObject get(Object key) {
+		final int index = indexOf(key);
+		return index < 0 ? null : values[index];
+	}
+
+	/** {@inheritDoc} */
+	public String firstKey() {
+		if (from == to)
+			throw new NoSuchElementException();
+		return keys[from];
+	}
+
+	/** {@inheritDoc} */
+	public String lastKey() {
+		if (from == to)
+			throw new NoSuchElementException();
+		return keys[to-1];
+	}
+
+	/** {@inheritDoc} */
+	public SortedMap<String,NSObject> subMap(String fromKey, String toKey) {
+		if (fromKey.compareTo(toKey) > 0)
+			throw new IllegalArgumentException("fromKey > toKey");
+		return new ArraySortedMap(keys, values, lowerBound(fromKey), lowerBound(toKey), null);
+	}
+
+	/** {@inheritDoc} */
+	public SortedMap<String,NSObject> headMap(String toKey) {
+		return new ArraySortedMap(keys, values, from, lowerBound(toKey), null);
+	}
+
+	/** {@inheritDoc} */
+	public SortedMap<String,NSObject> tailMap(String fromKey) {
+		return new ArraySortedMap(keys, values, lowerBound(fromKey), to, null);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	Iterator<Entry<String,NSObject>> entryIterator() {
+		return new RangeIterator<Entry<String,NSObject>>() {
+			@Override
+			Entry<String,NSObject> get(int index) {
+				return new SimpleImmutableEntry<String,NSObject>(keys[index], values[index]);
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	Iterator<String> keyIterator() {
+		return new RangeIterator<String>() {
+			@Override
+			String get(int index) {
+				return keys[index];
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	Iterator<NSObject> valueIterator() {
+		return new RangeIterator<NSObject>() {
+			@Override
+			NSObject get(int index) {
+				return values[index];
+			}
+		};
+	}
+
+	/**
+	 * Unmodifiable iterator over the entries of this map.
+	 * @param <E>	the type of the returned elements
+	 */
+	private abstract class RangeIterator<E> extends ReadOnlyIterator<E> {
+
+		/** Index of the next entry */
+		private int next = from;
+
+		/**
+		 * Get the element for an index.
+		 * @param index	the index
+		 * @return	the element
+		 */
+		abstract E get(int index);
+
+		/** {@inheritDoc} */
+		public boolean hasNext() {
+			return next < to;
+		}
+
+		/** {@inheritDoc} */
+		public E next() {
+			if (next >= to)
+				throw new NoSuchElementException();
+			return get(next++);
+		}
+
+	}
+
+}
@@ -0,0 +1,197 @@
+/*
+Property List Content Digest - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map.Entry;
+
+/**
+ * <p>Computes the digests of {@link NSObject#contentDigest()}.</p>
+ *
+ * <p>Each object is digested as a type tag followed by its content:</p>
+ * <ul>
+ * <li>booleans as one byte, 0 or 1;</li>
+ * <li>integers and UIDs as 8 bytes big endian;</li>
+ * <li>reals, and dates as seconds since 2001 (see {@link NSDate#toDouble()}), as the 8 bytes of {@link Double#doubleToLongBits(double)};</li>
+ * <li>strings as UTF-8 and data as is, preceded by their length in 4 bytes;</li>
+ * <li>arrays as their size in 4 bytes, followed by the digests of the elements;</li>
+ * <li>dictionaries as their size in 4 bytes, followed by each key (as a string) and the digest of its value,
+ * in the natural order of the keys.</li>
+ * </ul>
+ * <p>Missing values are digested as a tag without content.
+ * The digests of collections are computed bottom-up by a {@link PlistWalker} and cached in the collections.</p>
+ */
+final class ContentDigest implements PlistVisitor<RuntimeException> {
+
+	/** Charset to encode strings */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The digest algorithm */
+	private final MessageDigest md;
+	/** Scratch buffer to encode numbers */
+	private final byte[] buffer = new byte[8];
+
+	/** Use {@link #of(NSObject)} */
+	private ContentDigest() {
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Get the digest of an object.
+	 * @param obj	the object
+	 * @return	the digest, which must not be modified
+	 */
+	static byte[] of(NSObject obj) {
+		if (obj instanceof NSCollection) {
+			final NSCollection collection = (NSCollection) obj;
+			if (collection.digest == null)
+				PlistWalker.walk(collection, new ContentDigest());
+			return collection.digest;
+		}
+		return new ContentDigest().digest(obj);
+	}
+
+	/** {@inheritDoc} */
+	public Result preVisit(Object key, NSObject node) {
+		return node instanceof NSCollection && ((NSCollection) node).digest == null ? Result.CONTINUE : Result.SKIP_SUBTREE;
+	}
+
+	/** {@inheritDoc} */
+	public Result postVisit(Object key, NSCollection node) {
+		if (node.digest == null)
+			node.digest = digestCollection(node);
+		return Result.CONTINUE;
+	}
+
+	/**
+	 * Digest an object whose values, if any, have been digested before.
+	 * @param obj	the object, or <code>null</code>
+	 * @return	the digest
+	 */
+	private byte[] digest(NSObject obj) {
+		if (obj instanceof NSCollection) {
+			final NSCollection collection = (NSCollection) obj;
+			if (collection.digest == null)
+				collection.digest = digestCollection(collection);
+			return collection.digest;
+		}
+		if (obj == null) {
+			md.update((byte) 'n');
+		} else if (obj instanceof NSBoolean) {
+			md.update((byte) 'b');
+			md.update((byte) (obj.isTrue() ? 1 : 0));
+		} else if (obj instanceof NSInteger) {
+			md.update((byte) 'i');
+			updateLong(obj.toLong());
+		} else if (obj instanceof NSReal) {
+			md.update((byte) 'r');
+			updateLong(Double.doubleToLongBits(obj.toDouble()));
+		} else if (obj instanceof NSString) {
+			md.update((byte) 's');
+			updateString(((NSString) obj).getValue());
+		} else if (obj instanceof NSData) {
+			final byte[] bytes = obj.toBytes();
+			md.update((byte) 'd');
+			updateInt(bytes.length);
+			md.update(bytes);
+		} else if (obj instanceof NSDate) {
+			md.update((byte) 't');
+			updateLong(Double.doubleToLongBits(obj.toDouble()));
+		} else if (obj instanceof NSUID) {
+			md.update((byte) 'u');
+			updateLong(((NSUID) obj).getCfUid());
+		} else {
+			throw new IllegalArgumentException("Unknown NSObject type: "+obj.getClass().getName());
+		}
+		return md.digest();
+	}
+
+	/**
+	 * Digest a collection whose values have been digested before.
+	 * @param collection	the collection
+	 * @return	the digest
+	 */
+	private byte[] digestCollection(NSCollection collection) {
+		if (collection instanceof NSDictionary) {
+			final NSDictionary dict = (NSDictionary) collection;
+			final byte[][] values = new byte[dict.size()][];
+			int i = 0;
+			for(NSObject value : dict.values())
+				values[i++] = digest(value);
+			md.update((byte) 'k');
+			updateInt(values.length);
+			i = 0;
+			for(Entry<String,NSObject> e : dict.entrySet()) {
+				updateString(e.getKey());
+				md.update(values[i++]);
+			}
+		} else {
+			final NSArray array = (NSArray) collection;
+			final byte[][] values = new byte[array.size()][];
+			for(int i=0;i<values.length;i++)
+				values[i] = digest(array.get(i));
+			md.update((byte) 'a');
+			updateInt(values.length);
+			for(byte[] value : values)
+				md.update(value);
+		}
+		return md.digest();
+	}
+
+	/**
+	 * Add a string and its length.
+	 * @param s	the string
+	 */
+	private void updateString(String s) {
+		final byte[] bytes = s.getBytes(UTF8);
+		updateInt(bytes.length);
+		md.update(bytes);
+	}
+
+	/**
+	 * Add a big endian long.
+	 * @param l	the long
+	 */
+	private void updateLong(long l) {
+		for(int i=0;i<8;i++)
+			buffer[i] = (byte) (l >>> 56-8*i);
+		md.update(buffer, 0, 8);
+	}
+
+	/**
+	 * Add a big endian int.
+	 * @param n	the int
+	 */
+	private void updateInt(int n) {
+		for(int i=0;i<4;i++)
+			buffer[i] = (byte) (n >>> 24-8*i);
+		md.update(buffer, 0, 4);
+	}
+
+}
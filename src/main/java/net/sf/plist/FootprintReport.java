@@ -0,0 +1,143 @@
+/*
+Property List Footprint Report - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Estimate of the heap memory retained by a tree of {@link NSObject}s, by type.</p>
+ *
+ * <p>Every object is counted once, even if it occurs several times in the tree,
+ * so trees which share subtrees (see {@link NSObjectInterner} and {@link NSDictionary#with(String, NSObject)})
+ * are not overestimated.
+ * The estimate of an object includes its content, such as the characters of a string,
+ * the bytes of a data object and the arrays backing a collection.
+ * Dictionary keys are reported separately, as {@link String}; equal keys which are not the same instance
+ * are counted for each instance, so interning keys with a {@link KeyInterner} shows up in the report.
+ * The estimate assumes a 64 bits virtual machine with compressed references.</p>
+ *
+ * <p>Shared instances, like {@link NSBoolean#TRUE} and {@link NSArray#EMPTY}, are counted as well,
+ * although they are retained regardless of the tree.</p>
+ * @see NSObject#estimateRetainedSize()
+ */
+public final class FootprintReport {
+
+	/** Per type, the amount of objects and their estimated size in bytes */
+	private final Map<Class<?>,long[]> types = new LinkedHashMap<Class<?>,long[]>();
+	/** The estimated size of the tree in bytes */
+	private long total = 0;
+
+	/** Use {@link #of(NSObject)} */
+	private FootprintReport() {}
+
+	/**
+	 * Estimate the heap memory retained by a tree.
+	 * @param root	the root of the tree
+	 * @return	the report
+	 */
+	public static FootprintReport of(NSObject root) {
+		final FootprintReport result = new FootprintReport();
+		final Map<Object,Boolean> seen = new IdentityHashMap<Object,Boolean>();
+		PlistWalker.walk(root, new PlistVisitor<RuntimeException>() {
+			public Result preVisit(Object key, NSObject node) {
+				if (node == null || seen.put(node, Boolean.TRUE) != null)
+					return Result.SKIP_SUBTREE;
+				result.add(node.getClass(), node.shallowSize());
+				if (node instanceof NSDictionary)
+					for(String dictKey : ((NSDictionary) node).keys())
+						if (seen.put(dictKey, Boolean.TRUE) == null)
+							result.add(String.class, 24+NSObject.align(16+2L*dictKey.length()));
+				return Result.CONTINUE;
+			}
+			public Result postVisit(Object key, NSCollection node) {
+				return Result.CONTINUE;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Count an object.
+	 * @param type	the type of the object
+	 * @param bytes	the estimated size of the object
+	 */
+	private void add(Class<?> type, long bytes) {
+		long[] counts = types.get(type);
+		if (counts == null)
+			types.put(type, counts = new long[2]);
+		counts[0]++;
+		counts[1] += bytes;
+		total += bytes;
+	}
+
+	/**
+	 * Get the estimated size of the tree.
+	 * @return	the amount of bytes
+	 */
+	public long getTotalBytes() {
+		return total;
+	}
+
+	/**
+	 * Get the types of the objects in the tree,
+	 * which are subclasses of {@link NSObject} or {@link String} for dictionary keys.
+	 * @return	the unmodifiable set of types, in order of appearance
+	 */
+	public Set<Class<?>> getTypes() {
+		return Collections.unmodifiableSet(types.keySet());
+	}
+
+	/**
+	 * Get the amount of distinct objects of a type.
+	 * @param type	the type
+	 * @return	the amount of objects
+	 */
+	public long getCount(Class<?> type) {
+		final long[] counts = types.get(type);
+		return counts == null ? 0 : counts[0];
+	}
+
+	/**
+	 * Get the estimated size of all distinct objects of a type.
+	 * @param type	the type
+	 * @return	the amount of bytes
+	 */
+	public long getBytes(Class<?> type) {
+		final long[] counts = types.get(type);
+		return counts == null ? 0 : counts[1];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder("FootprintReport[total=").append(total);
+		for(Map.Entry<Class<?>,long[]> e : types.entrySet())
+			result.append(", ").append(e.getKey().getSimpleName())
+					.append('=').append(e.getValue()[1]).append(" (").append(e.getValue()[0]).append(')');
+		return result.append(']').toString();
+	}
+
+}
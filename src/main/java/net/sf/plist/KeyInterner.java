@@ -0,0 +1,207 @@
+/*
+Property List Key Interner - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Bounded table which makes equal dictionary keys share a single {@link String} instance.</p>
+ *
+ * <p>When many similar property lists are loaded, every {@link NSDictionary}
+ * would otherwise hold its own copy of keys like <code>CFBundleIdentifier</code>.
+ * A single {@link KeyInterner} can be shared between parsers
+ * (see {@link net.sf.plist.io.PropertyListParser#setKeyInterner(KeyInterner)})
+ * and {@link NSDictionary#fromMap(java.util.Map, KeyInterner)}.</p>
+ *
+ * <p>The table has a fixed amount of slots and never grows.
+ * Every key maps to two adjacent slots; when both are taken by other keys, the first one is replaced.
+ * Because of this, interning is a cache: a key may not be deduplicated, but it is always correct.
+ * All methods are thread-safe and lock free.</p>
+ */
+public final class KeyInterner {
+
+	/** The slots */
+	private final AtomicReferenceArray<String> table;
+	/** Mask to convert a hash to a slot index */
+	private final int mask;
+	/** The amount of lookups that returned an existing instance */
+	private final AtomicLong hits = new AtomicLong();
+	/** The amount of lookups that stored a new instance */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Construct a new interner.
+	 * @param capacity	the maximum amount of keys, rounded up to a power of two
+	 */
+	public KeyInterner(int capacity) {
+		if (capacity < 2 || capacity > 1<<30)
+			throw new IllegalArgumentException("capacity must be between 2 and 2^30, was "+capacity);
+		int size = Integer.highestOneBit(capacity-1) << 1;
+		table = new AtomicReferenceArray<String>(size);
+		mask = size-1;
+	}
+
+	/**
+	 * Get the first slot for a hash.
+	 * @param hash	the hash code of the key
+	 * @return	the slot index
+	 */
+	private int slot(int hash) {
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * Get the shared instance of a key.
+	 * @param key	the key
+	 * @return	an instance equal to <code>key</code>
+	 */
+	public String intern(String key) {
+		final int slot = slot(key.hashCode());
+		for(int i=0;i<2;i++) {
+			final String candidate = table.get((slot+i) & mask);
+			if (candidate != null && candidate.equals(key)) {
+				hits.incrementAndGet();
+				return candidate;
+			}
+		}
+		store(slot, key);
+		return key;
+	}
+
+	/**
+	 * Get the shared instance of a key.
+	 * If the key holds raw content, it is matched against the table without decoding it,
+	 * so no {@link String} is created when the key was seen before.
+	 * @param key	the key
+	 * @return	an instance equal to the value of <code>key</code>
+	 */
+	public String intern(NSString key) {
+		final int slot = slot(key.contentHashCode());
+		for(int i=0;i<2;i++) {
+			final String candidate = table.get((slot+i) & mask);
+			if (candidate != null && key.contentEquals(candidate)) {
+				hits.incrementAndGet();
+				return candidate;
+			}
+		}
+		final String result = key.getValue();
+		store(slot, result);
+		return result;
+	}
+
+	/**
+	 * Store a key in an empty slot, or replace the first slot.
+	 * @param slot	the first slot for the key
+	 * @param key	the key
+	 */
+	private void store(int slot, String key) {
+		misses.incrementAndGet();
+		if (table.compareAndSet(slot, null, key) || table.compareAndSet((slot+1) & mask, null, key))
+			return;
+		table.set(slot, key);
+	}
+
+	/**
+	 * Get the amount of lookups which returned a shared instance.
+	 * @return	the amount of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the amount of lookups which did not find a shared instance.
+	 * @return	the amount of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the fraction of lookups which returned a shared instance.
+	 * @return	the hit rate between 0 and 1, or 0 if no lookups were done
+	 */
+	public double getHitRate() {
+		final long hits = getHits(), total = hits+getMisses();
+		return total == 0 ? 0 : (double) hits/total;
+	}
+
+	/**
+	 * Get the amount of slots, which is the maximum amount of keys.
+	 * @return	the capacity
+	 */
+	public int getCapacity() {
+		return table.length();
+	}
+
+	/**
+	 * Get the amount of keys in the table.
+	 * @return	the size
+	 */
+	public int size() {
+		int result = 0;
+		for(int i=0;i<table.length();i++)
+			if (table.get(i) != null)
+				result++;
+		return result;
+	}
+
+	/**
+	 * Estimate the amount of heap memory retained by this table, including the keys.
+	 * The estimate assumes a 64 bits virtual machine with compressed references.
+	 * @return	the estimated footprint in bytes
+	 */
+	public long getFootprint() {
+		long result = align(16+4L*table.length());
+		for(int i=0;i<table.length();i++) {
+			final String key = table.get(i);
+			if (key != null)
+				result += 24+align(16+2L*key.length());
+		}
+		return result;
+	}
+
+	/**
+	 * Round a size up to the object alignment of 8 bytes.
+	 * @param size	the size
+	 * @return	the aligned size
+	 */
+	private static long align(long size) {
+		return (size+7) & ~7L;
+	}
+
+	/** Remove all keys and reset the statistics */
+	public void clear() {
+		for(int i=0;i<table.length();i++)
+			table.set(i, null);
+		hits.set(0);
+		misses.set(0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "KeyInterner[size="+size()+", capacity="+getCapacity()+", hitRate="+getHitRate()+"]";
+	}
+
+}
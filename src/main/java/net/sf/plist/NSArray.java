@@ -37,21 +37,44 @@ import java.util.TreeMap;
  */
 public final class NSArray extends NSCollection {
 
-	private final NSObject[] theList;
+	/** The empty array */
+	public static final NSArray EMPTY = new NSArray(new NSObject[0], false);
+
+	/** Unmodifiable list of the values, either a view on an array or a {@link PersistentList} */
+	private final List<NSObject> theList;
 	
 	/**
 	 * Constructor.
 	 * @param theList the contents of new object
 	 */
 	public NSArray(Collection<? extends NSObject> theList) {
-		this(theList.toArray(new NSObject[0]));
+		// toArray returns a new array, so it does not need to be copied again
+		this(theList.toArray(new NSObject[theList.size()]), false);
 	}
 	/**
 	 * Constructor.
 	 * @param theList the contents of new object
 	 */
 	public NSArray(NSObject[] theList) {
-		this.theList = theList.clone();
+		this(theList, true);
+	}
+	/**
+	 * Construct a new array, which takes ownership of <code>theList</code> unless it is copied.
+	 * @param theList the contents of new object
+	 * @param copy whether <code>theList</code> must be copied
+	 * @see NSMutableArray#freeze()
+	 */
+	NSArray(NSObject[] theList, boolean copy) {
+		this(Collections.unmodifiableList(Arrays.asList(copy ? theList.clone() : theList)));
+	}
+	/**
+	 * Construct a new array, which takes ownership of <code>theList</code>.
+	 * @param theList the contents of new object, which must be unmodifiable
+	 * @see #with(int, NSObject)
+	 * @see NSMutableArray#freeze()
+	 */
+	NSArray(List<NSObject> theList) {
+		this.theList = theList;
 	}
 	
 	/**
@@ -59,7 +82,103 @@ public final class NSArray extends NSCollection {
 	 * @param index index of object to retrieve
 	 */
 	public NSObject get(int index) {
-		return getValue().get(index);
+		return theList.get(index);
+	}
+	/**
+	 * Get the value at <code>index</code> as a <code>long</code>.
+	 * For packed integer arrays, no object is created.
+	 * @param index index of the value
+	 * @return the value
+	 * @see NSObject#toLong()
+	 */
+	public long getLong(int index) {
+		if (theList instanceof PackedLongList)
+			return ((PackedLongList) theList).values[index];
+		if (theList instanceof PackedDoubleList)
+			return Math.round(((PackedDoubleList) theList).values[index]);
+		return theList.get(index).toLong();
+	}
+	/**
+	 * Get the value at <code>index</code> as a <code>double</code>.
+	 * For packed arrays, no object is created.
+	 * @param index index of the value
+	 * @return the value
+	 * @see NSObject#toDouble()
+	 */
+	public double getDouble(int index) {
+		if (theList instanceof PackedDoubleList)
+			return ((PackedDoubleList) theList).values[index];
+		if (theList instanceof PackedLongList)
+			return ((PackedLongList) theList).values[index];
+		return theList.get(index).toDouble();
+	}
+	/**
+	 * Get all values as <code>long</code>s.
+	 * Changes made in the array will not affect this object.
+	 * @return the array
+	 * @see #getLong(int)
+	 */
+	public long[] toLongArray() {
+		if (theList instanceof PackedLongList)
+			return ((PackedLongList) theList).values.clone();
+		final long[] result = new long[theList.size()];
+		for(int i=0;i<result.length;i++)
+			result[i] = getLong(i);
+		return result;
+	}
+	/**
+	 * Get all values as <code>double</code>s.
+	 * Changes made in the array will not affect this object.
+	 * @return the array
+	 * @see #getDouble(int)
+	 */
+	public double[] toDoubleArray() {
+		if (theList instanceof PackedDoubleList)
+			return ((PackedDoubleList) theList).values.clone();
+		final double[] result = new double[theList.size()];
+		for(int i=0;i<result.length;i++)
+			result[i] = getDouble(i);
+		return result;
+	}
+	/**
+	 * <p>Get the type of all values if they are packed into a primitive array.</p>
+	 * <p>Arrays built by {@link NSMutableArray}, which includes all parsed arrays,
+	 * store integers and reals in a <code>long[]</code> or <code>double[]</code>
+	 * when all values are {@link NSInteger}s or all values are {@link NSReal}s.
+	 * {@link #get(int)} then creates a new object for every call;
+	 * {@link #getLong(int)} and {@link #getDouble(int)} do not.</p>
+	 * @return {@link NSInteger}, {@link NSReal}, or <code>null</code> if the values are stored as objects
+	 */
+	public Class<? extends NSNumber> getPackedType() {
+		if (theList instanceof PackedLongList)
+			return NSInteger.class;
+		if (theList instanceof PackedDoubleList)
+			return NSReal.class;
+		return null;
+	}
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return theList.size();
+	}
+	/** {@inheritDoc} */
+	@Override
+	long shallowSize() {
+		final long size = theList.size();
+		if (theList instanceof PackedLongList || theList instanceof PackedDoubleList)
+			return 24+16+align(16+8*size);
+		if (theList instanceof PersistentList)
+			return 24+16+40*size;
+		// Unmodifiable view on Arrays.asList
+		return 24+24+16+align(16+4*size);
+	}
+	/**
+	 * {@inheritDoc}
+	 * @see #getValue()
+	 */
+	@Override
+	public List<NSObject> values() {
+		return theList;
 	}
 	/**
 	 * Get an unmodifiable {@link List} containing all values of this object.
@@ -73,7 +192,7 @@ public final class NSArray extends NSCollection {
 	 */
 	@Override
 	public List<NSObject> toList() {
-		return new ArrayList<NSObject>(Arrays.asList(theList));
+		return new ArrayList<NSObject>(theList);
 	}
 	/**
 	 * <p>Get an array containing all values of this object.
@@ -84,15 +203,80 @@ public final class NSArray extends NSCollection {
 	 * @return the array
 	 */
 	public NSObject[] array() {
-		return theList.clone();
+		return theList.toArray(new NSObject[theList.size()]);
+	}
+	/**
+	 * <p>Get a copy of this array in which the value at <code>index</code> is replaced,
+	 * or appended if <code>index</code> equals the size of this array.
+	 * This array is not modified.</p>
+	 * <p>The first update of an array copies its values into a persistent tree in O(n);
+	 * updates of the result cost O(log n) and share all unchanged values with it.
+	 * Note that {@link #get(int)} costs O(log n) on such arrays as well.</p>
+	 * @param index the index
+	 * @param value the value
+	 * @return the new array, or this array if <code>value</code> was already at <code>index</code>
+	 * @throws IndexOutOfBoundsException if <code>index</code> is negative or greater than the size
+	 * @see #without(int)
+	 * @see #assocIn(List, NSObject)
+	 */
+	public NSArray with(int index, NSObject value) {
+		if (value == null)
+			throw new NullPointerException("value");
+		final PersistentList list = PersistentList.of(theList).with(index, value);
+		return list == theList ? this : new NSArray(list);
+	}
+	/**
+	 * Get a copy of this array in which <code>value</code> is inserted at <code>index</code>,
+	 * shifting the values from <code>index</code> onwards.
+	 * This array is not modified.
+	 * @param index the index
+	 * @param value the value
+	 * @return the new array
+	 * @throws IndexOutOfBoundsException if <code>index</code> is negative or greater than the size
+	 * @see #with(int, NSObject)
+	 */
+	public NSArray withInserted(int index, NSObject value) {
+		if (value == null)
+			throw new NullPointerException("value");
+		return new NSArray(PersistentList.of(theList).insert(index, value));
+	}
+	/**
+	 * Get a copy of this array without the value at <code>index</code>.
+	 * This array is not modified.
+	 * @param index the index
+	 * @return the new array
+	 * @throws IndexOutOfBoundsException if <code>index</code> is out of range
+	 * @see #with(int, NSObject)
+	 */
+	public NSArray without(int index) {
+		return new NSArray(PersistentList.of(theList).without(index));
 	}
 	/** {@inheritDoc} */
 	@Override
+	public NSArray assocIn(List<?> path, NSObject value) {
+		checkPath(path, value);
+		return assocIn(path, 0, value);
+	}
+	/** {@inheritDoc} */
+	@Override
+	NSArray assocIn(List<?> path, int depth, NSObject value) {
+		final Object step = path.get(depth);
+		if (!(step instanceof Integer))
+			throw new IllegalArgumentException("Step "+depth+" of the path ("+step+") is not an index.");
+		final int index = (Integer) step;
+		final NSObject current = index >= 0 && index < theList.size() ? theList.get(index) : null;
+		return with(index, assocIn(current, path, depth+1, value));
+	}
+	/** {@inheritDoc} */
+	@Override
+	public List<?> toObjectView() {
+		return new ObjectView.ListView(this);
+	}
+	/** {@inheritDoc} */
+	@Override
+	@SuppressWarnings("unchecked")
 	public List<Object> toObject() {
-		ArrayList<Object> result = new ArrayList<Object>();
-		for(NSObject e : toList())
-			result.add(e.toObject());
-		return result;
+		return (List<Object>) ObjectConverter.convert(this);
 	}
 	/**
 	 * {@inheritDoc}
@@ -100,15 +284,13 @@ public final class NSArray extends NSCollection {
 	 */
 	@Override
 	public List<NSObject> getValue() {
-		return Collections.unmodifiableList(
-				Arrays.asList(theList)
-			);
+		return theList;
 	}
 	
 	/** {@inheritDoc} */
 	@Override
 	public boolean isTrue() {
-		return theList.length != 0;
+		return !theList.isEmpty();
 	}
 	
 	/** {@inheritDoc} */
@@ -126,13 +308,13 @@ public final class NSArray extends NSCollection {
 	/** {@inheritDoc} */
 	@Override
 	public long toLong() {
-		return theList.length;
+		return theList.size();
 	}
 	
 	/** {@inheritDoc} */
 	@Override
 	public double toDouble() {
-		return theList.length;
+		return theList.size();
 	}
 	/**
 	 * Convert a list to an NSArray.
@@ -145,11 +327,17 @@ public final class NSArray extends NSCollection {
 	 * {@link NSObject#getValue()} always returns a valid object.
 	 */
 	public static NSArray fromList(List<?> list) {
-		ArrayList<NSObject> arrayList = new ArrayList<NSObject>();
-		for(Object item : list) {
-			arrayList.add(NSObject.fromObject(item));
-		}
-		return new NSArray(arrayList);
+		return fromList(list, null);
+	}
+	
+	/**
+	 * Convert a list to an NSArray, interning the keys of all nested maps.
+	 * @param list	the list to convert
+	 * @param keyInterner	the interner used for keys, or <code>null</code> to disable interning
+	 * @see #fromList(List)
+	 */
+	static NSArray fromList(List<?> list, KeyInterner keyInterner) {
+		return (NSArray) NSObject.fromObject(list, keyInterner);
 	}
 
 }
@@ -42,11 +42,23 @@ public final class NSBoolean extends NSObject {
 	/**
 	 * Constructor.
 	 * @param theBoolean value of the new object
+	 * @see #valueOf(boolean)
 	 */
 	public NSBoolean(boolean theBoolean) {
 		this.theBoolean = theBoolean;
 	}
 	
+	/**
+	 * Get {@link #TRUE} or {@link #FALSE}.
+	 * This method should be used instead of the constructor.
+	 * @param b	the value
+	 * @return	the shared instance representing <code>b</code>
+	 * @see Boolean#valueOf(boolean)
+	 */
+	public static NSBoolean valueOf(boolean b) {
+		return b ? TRUE : FALSE;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see #bool()
@@ -21,13 +21,193 @@ Project page on http://plist.sf.net/
 */
 package net.sf.plist;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
 /**
- * Parent class to {@link NSArray} and {@link NSDictionary}
+ * <p>Parent class to {@link NSArray} and {@link NSDictionary}
  * to make these classes, which contain {@link NSObject}s themselves,
- * easier identifiable. This class does not provide any functionality.
+ * easier identifiable.</p>
+ * <p>{@link #equals(Object)} and {@link #toString()} keep their position in nested collections
+ * in an explicit stack on the heap, so deep trees do not overflow the thread stack.</p>
  */
 public abstract class NSCollection extends NSObject {
 	
+	/** The cached result of {@link #contentDigest()}, or <code>null</code> if it was not computed yet */
+	volatile byte[] digest;
+	
+	/**
+	 * Get the amount of values in this collection.
+	 * @return the amount of values
+	 */
+	public abstract int size();
+	
+	/**
+	 * Get an unmodifiable view on the values of this collection.
+	 * Opposed to {@link #toList()}, no values are copied.
+	 * @return the values
+	 */
+	public abstract Collection<NSObject> values();
+	
+	/**
+	 * <p>Get a copy of this collection in which the value at the end of a path is replaced.</p>
+	 * <p>Each step of the path is a {@link String} key into a {@link NSDictionary}
+	 * or an {@link Integer} index into a {@link NSArray}; an index equal to the size of the array appends.
+	 * Missing collections along the path are created.
+	 * Only the collections along the path are copied, in O(log n) each;
+	 * everything else is shared with this collection, which is not modified.</p>
+	 * @param path the keys and indexes leading to the value
+	 * @param value the new value
+	 * @return the new collection
+	 * @throws IllegalArgumentException if the path is empty or does not match the collections along it
+	 * @see NSDictionary#with(String, NSObject)
+	 * @see NSArray#with(int, NSObject)
+	 */
+	public abstract NSCollection assocIn(List<?> path, NSObject value);
+	
+	/**
+	 * Replace the value at the end of a path, starting at a step of the path.
+	 * @param path the keys and indexes leading to the value
+	 * @param depth the index of the step for this collection
+	 * @param value the new value
+	 * @return the new collection
+	 */
+	abstract NSCollection assocIn(List<?> path, int depth, NSObject value);
+	
+	/**
+	 * Check whether a path can be used by {@link #assocIn(List, NSObject)}.
+	 * @param path the path
+	 * @param value the new value
+	 * @throws IllegalArgumentException if the path is empty
+	 */
+	static void checkPath(List<?> path, NSObject value) {
+		if (value == null)
+			throw new NullPointerException("value");
+		if (path.isEmpty())
+			throw new IllegalArgumentException("The path is empty.");
+	}
+	
+	/**
+	 * Replace the value at the end of a path, starting at a step of the path.
+	 * @param node the value at the current step, or <code>null</code> if it is missing
+	 * @param path the keys and indexes leading to the value
+	 * @param depth the index of the current step
+	 * @param value the new value
+	 * @return the new value for the current step
+	 * @throws IllegalArgumentException if the path does not match <code>node</code>
+	 */
+	static NSObject assocIn(NSObject node, List<?> path, int depth, NSObject value) {
+		if (depth == path.size())
+			return value;
+		final Object step = path.get(depth);
+		if (node == null) {
+			if (step instanceof String)
+				node = NSDictionary.EMPTY;
+			else if (step instanceof Integer)
+				node = NSArray.EMPTY;
+		}
+		if (!(node instanceof NSCollection))
+			throw new IllegalArgumentException("Step "+depth+" of the path ("+step+") does not lead into a collection.");
+		return ((NSCollection) node).assocIn(path, depth, value);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * Nested collections are compared pairwise without recursion.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		final NSCollection other = (NSCollection) obj;
+		if (hashDiffers(other) || size() != other.size())
+			return false;
+		final List<Iterator<?>> stack = new ArrayList<Iterator<?>>();
+		stack.add(children(this));
+		stack.add(children(other));
+		while(!stack.isEmpty()) {
+			final Iterator<?> a = stack.get(stack.size()-2), b = stack.get(stack.size()-1);
+			if (!a.hasNext()) {
+				// Both collections have the same size
+				stack.remove(stack.size()-1);
+				stack.remove(stack.size()-1);
+				continue;
+			}
+			Object x = a.next(), y = b.next();
+			if (x instanceof Entry) {
+				// Dictionaries of the same size are equal if their entries are equal in key order
+				if (!((Entry<?,?>) x).getKey().equals(((Entry<?,?>) y).getKey()))
+					return false;
+				x = ((Entry<?,?>) x).getValue();
+				y = ((Entry<?,?>) y).getValue();
+			}
+			if (x == y)
+				continue;
+			if (x == null || y == null || x.getClass() != y.getClass() || ((NSObject) x).hashDiffers((NSObject) y))
+				return false;
+			if (x instanceof NSCollection) {
+				if (((NSCollection) x).size() != ((NSCollection) y).size())
+					return false;
+				stack.add(children((NSCollection) x));
+				stack.add(children((NSCollection) y));
+			} else if (!x.equals(y)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Get an iterator over the children of a collection,
+	 * which are entries for a {@link NSDictionary} and values for a {@link NSArray}.
+	 * @param collection the collection
+	 * @return the iterator
+	 */
+	private static Iterator<?> children(NSCollection collection) {
+		if (collection instanceof NSDictionary)
+			return ((NSDictionary) collection).entrySet().iterator();
+		return collection.values().iterator();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * The text has the same layout as the {@link java.util.List} or {@link java.util.Map} value,
+	 * but nested collections are written by a {@link PlistWalker}.
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder();
+		PlistWalker.walk(this, new PlistVisitor<RuntimeException>() {
+			/** Whether the next node is the first child of its collection */
+			private boolean first = true;
+			public Result preVisit(Object key, NSObject node) {
+				if (!first)
+					result.append(", ");
+				if (key instanceof String)
+					result.append(key).append('=');
+				if (node instanceof NSCollection) {
+					result.append(node instanceof NSDictionary ? '{' : '[');
+					first = true;
+				} else {
+					result.append(node);
+					first = false;
+				}
+				return Result.CONTINUE;
+			}
+			public Result postVisit(Object key, NSCollection node) {
+				result.append(node instanceof NSDictionary ? '}' : ']');
+				first = false;
+				return Result.CONTINUE;
+			}
+		});
+		return result.toString();
+	}
+	
 	/**
 	 * Collections can not be converted to a byte array
 	 * in a way that makes sense.
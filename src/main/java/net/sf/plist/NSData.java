@@ -22,23 +22,52 @@ Project page on http://plist.sf.net/
 package net.sf.plist;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * <p>Represents a binary blob.</p>
  * 
- * <p>In this implementation, a primitive byte array or a {@link ByteArrayInputStream} is used to represent the {@link NSData}.</p>
- * @see ByteArrayInputStream
+ * <p>In this implementation, a {@link ByteBuffer} is used to represent the {@link NSData}.
+ * The buffer either wraps a primitive byte array or is a slice of a larger buffer,
+ * for example a memory mapped property list file.
+ * Large blobs can be served through {@link #asReadOnlyBuffer()} and the <code>writeTo</code> methods
+ * without copying them.
+ * {@link #equals(Object)} and {@link #hashCode()} compare the content, wherever it is stored;
+ * the hash code is computed once.</p>
+ * @see ByteBuffer
  */
 public final class NSData extends NSObject {
 
-	private final byte[] theData;
+	/** Size of the chunks used to write buffers without accessible array */
+	private static final int CHUNKSIZE = 8192;
+	
+	/** Data of length 0 */
+	public static final NSData EMPTY = new NSData(new byte[0]);
+	
+	/** The content; position is always 0 and limit is the length. Never exposed directly. */
+	private final ByteBuffer theData;
 	
 	/**
 	 * Constructor.
+	 * The array is not copied, so it should not be modified afterwards.
 	 * @param theData value of the new object
 	 */
 	public NSData(byte[] theData) {
-		this.theData = theData;
+		this.theData = ByteBuffer.wrap(theData);
+	}
+	
+	/**
+	 * Constructor for a blob backed by a buffer.
+	 * The new object represents the bytes between the position and the limit of <code>theData</code>.
+	 * The content is shared instead of copied, so it should not be modified afterwards.
+	 * The position and limit of <code>theData</code> are not modified.
+	 * @param theData value of the new object
+	 */
+	public NSData(ByteBuffer theData) {
+		this.theData = theData.slice();
 	}
 	
 	/**
@@ -51,28 +80,74 @@ public final class NSData extends NSObject {
 	}
 	/** {@inheritDoc} */
 	@Override
-	byte[] getRawValue() {
+	ByteBuffer getRawValue() {
 		return theData;
 	}
+	/** {@inheritDoc} */
+	@Override
+	long shallowSize() {
+		return 24+48+align(16+theData.limit());
+	}
 	/**
 	 * Get a {@link ByteArrayInputStream} which can be used to read the contents of this object.
-	 * This is the most cost-efficient way to retrieve the value contained in an {@link NSData} object.
+	 * If this object is backed by an array, this does not copy the content.
 	 * @return the {@link ByteArrayInputStream}
 	 */
 	@Override
 	public ByteArrayInputStream toStream() {
-		return new ByteArrayInputStream(theData);
+		if (theData.hasArray())
+			return new ByteArrayInputStream(theData.array(), theData.arrayOffset(), theData.limit());
+		return new ByteArrayInputStream(toBytes());
+	}
+	/**
+	 * Get a read-only view on the contents of this object.
+	 * This is the most cost-efficient way to retrieve the value contained in an {@link NSData} object;
+	 * the content is never copied.
+	 * Every call returns a new view with its own position, starting at 0.
+	 * @return the buffer
+	 */
+	public ByteBuffer asReadOnlyBuffer() {
+		return theData.asReadOnlyBuffer();
+	}
+	/**
+	 * Write the contents of this object to a stream.
+	 * If this object is backed by an array, the content is written without copying it.
+	 * @param stream	the stream to write to
+	 * @throws IOException	if an I/O error occurs
+	 */
+	public void writeTo(OutputStream stream) throws IOException {
+		if (theData.hasArray()) {
+			stream.write(theData.array(), theData.arrayOffset(), theData.limit());
+			return;
+		}
+		ByteBuffer source = theData.duplicate();
+		byte[] chunk = new byte[Math.min(CHUNKSIZE, source.remaining())];
+		while(source.hasRemaining()) {
+			int length = Math.min(chunk.length, source.remaining());
+			source.get(chunk, 0, length);
+			stream.write(chunk, 0, length);
+		}
+	}
+	/**
+	 * Write the contents of this object to a channel, without copying it.
+	 * @param channel	the channel to write to
+	 * @throws IOException	if an I/O error occurs
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer source = asReadOnlyBuffer();
+		while(source.hasRemaining())
+			channel.write(source);
 	}
 	/**
 	 * <p>Return the contents of this object as primitive array.<br />
 	 * Because the array is copied to keep this object immutable,
-	 * it's recommended to use {@link #toStream()} instead.</p>
+	 * it's recommended to use {@link #asReadOnlyBuffer()} or {@link #writeTo(OutputStream)} instead.</p>
 	 * @return the array
 	 */
 	@Override
 	public byte[] toBytes() {
-		byte[] result = new byte[theData.length];
-		System.arraycopy(theData, 0, result, 0, theData.length);
+		byte[] result = new byte[theData.limit()];
+		theData.duplicate().get(result);
 		return result;
 	}
 	/** {@inheritDoc} */
@@ -81,10 +156,18 @@ public final class NSData extends NSObject {
 		return toBytes();
 	}
 	
+	/**
+	 * Get the length of the content in bytes.
+	 * @return	the length
+	 */
+	public int length() {
+		return theData.limit();
+	}
+	
 	/** {@inheritDoc} */
 	@Override
 	public boolean isTrue() {
-		return theData.length > 0;
+		return length() > 0;
 	}
 	
 	/**
@@ -96,7 +179,8 @@ public final class NSData extends NSObject {
 	public String toString() {
 		StringBuilder sb = new StringBuilder("<");
 		byte count = 0;
-		for(byte b : theData) {
+		for(int i=0;i<theData.limit();i++) {
+			byte b = theData.get(i);
 			if ((b >> 4) == 0)
 				sb.append('0');
 			sb.append(Integer.toString(b&0xFF, 0x10));
@@ -114,7 +198,7 @@ public final class NSData extends NSObject {
 	 */
 	@Override
 	public long toLong() {
-		return theData.length;
+		return length();
 	}
 	
 	/** {@inheritDoc} */
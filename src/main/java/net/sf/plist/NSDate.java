@@ -28,7 +28,10 @@ import java.util.TimeZone;
 /**
  * <p>Represents a date and time.</p>
  * 
- * <p>In this implementation, a {@link Date} is used to represent the {@link NSDate}.</p>
+ * <p>In this implementation, the date is stored as the seconds since 2001-01-01T00:00:00Z in double precision,
+ * like in binary Property List files, so fractions of milliseconds are preserved
+ * and reading the time does not allocate.
+ * The {@link Date} returned by {@link #getValue()} is created when requested.</p>
  * @see Date
  */
 public final class NSDate extends NSObject {
@@ -52,7 +55,9 @@ public final class NSDate extends NSObject {
 	}
 	
 	/**
-	 * Get the format used for dates in Property List files
+	 * Get the format used for dates in Property List files.
+	 * A new format is created on every call;
+	 * {@link net.sf.plist.util.DateCodec} is faster and can be shared by threads.
 	 * @return the date format
 	 */
 	public static SimpleDateFormat getFormatter() {
@@ -61,14 +66,21 @@ public final class NSDate extends NSObject {
 		return result;
 	}
 	
-	private final Date theDate;
+	/** Seconds since {@link #EPOCH}, like in binary Property List files */
+	private final double theSeconds;
+	
+	/** {@inheritDoc} */
+	@Override
+	long shallowSize() {
+		return 24;
+	}
 	
 	/**
 	 * Constructor.
 	 * @param theDate value of the new object
 	 */
 	public NSDate(Date theDate) {
-		this.theDate = theDate;
+		this.theSeconds = (theDate.getTime()-EPOCH)/1000D;
 	}
 	
 	/**
@@ -76,7 +88,20 @@ public final class NSDate extends NSObject {
 	 * Use this constructor for values returned by the {@link #toDouble} method.
 	 */
 	public NSDate(double theDouble) {
-		this(new Date((long)(EPOCH + 1000D*theDouble)));
+		this.theSeconds = theDouble;
+	}
+	
+	/**
+	 * <p>Create a date from seconds and nanoseconds since 1970-01-01T00:00:00Z,
+	 * like <code>java.time.Instant.ofEpochSecond(long, long)</code>.</p>
+	 * <p>Dates are stored as seconds in double precision, like in binary Property List files,
+	 * so nanoseconds are only preserved for dates close to 2001.</p>
+	 * @param epochSecond	the seconds since 1970
+	 * @param nanoAdjustment	the nanoseconds to add, may be negative or more than a second
+	 * @return	the date
+	 */
+	public static NSDate fromEpochSecond(long epochSecond, long nanoAdjustment) {
+		return new NSDate((epochSecond-EPOCH/1000)+nanoAdjustment/1E9D);
 	}
 	
 	/**
@@ -93,12 +118,56 @@ public final class NSDate extends NSObject {
 	 */
 	@Override
 	public Date toDate() {
-		// Don't return theDate because Date is mutable
+		// Date is mutable, so every call returns a new one
 		return new Date(getTime());
 	}
-	/** @see Date#getTime() */
+	/**
+	 * Get the milliseconds since 1970-01-01T00:00:00Z, rounded to the nearest millisecond.
+	 * @see Date#getTime()
+	 */
 	public long getTime() {
-		return theDate.getTime();
+		return Math.round(1000D*theSeconds)+EPOCH;
+	}
+	/**
+	 * Get the whole seconds since 1970-01-01T00:00:00Z,
+	 * like <code>java.time.Instant.getEpochSecond()</code>.
+	 * @return	the seconds, rounded down
+	 * @see #getNano()
+	 */
+	public long getEpochSecond() {
+		long whole = (long) Math.floor(theSeconds);
+		if (Math.round((theSeconds-whole)*1E9D) == 1000000000L)
+			whole++;
+		return whole+EPOCH/1000;
+	}
+	/**
+	 * Get the nanoseconds within the second, like <code>java.time.Instant.getNano()</code>.
+	 * @return	the nanoseconds, from 0 to 999,999,999
+	 * @see #getEpochSecond()
+	 */
+	public int getNano() {
+		final int nano = (int) Math.round((theSeconds-Math.floor(theSeconds))*1E9D);
+		return nano == 1000000000 ? 0 : nano;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	int computeHashCode() {
+		final long bits = Double.doubleToLongBits(theSeconds);
+		return 31 + (int) (bits ^ bits >>> 32);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * Dates are equal if they have the same seconds, including the fraction of a second.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof NSDate))
+			return false;
+		return Double.doubleToLongBits(theSeconds) == Double.doubleToLongBits(((NSDate) obj).theSeconds);
 	}
 	
 	/** {@inheritDoc} */
@@ -120,7 +189,7 @@ public final class NSDate extends NSObject {
 	 */
 	@Override
 	public double toDouble() {
-		return (double)(getTime()-EPOCH)/1000D;
+		return theSeconds;
 	}
 
 	/** {@inheritDoc} */
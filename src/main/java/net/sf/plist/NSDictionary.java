@@ -22,6 +22,7 @@ Project page on http://plist.sf.net/
 package net.sf.plist;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -36,11 +37,17 @@ import java.util.TreeMap;
  * Usually, the root node of a Property List is a {@link NSDictionary}.</p> 
  * 
  * <p>In this implementation, a {@link SortedMap} is used
- * to represent the {@link NSDictionary}.</p>
+ * to represent the {@link NSDictionary}.
+ * Dictionaries are stored in sorted parallel arrays,
+ * with a hash index for O(1) lookups in larger dictionaries,
+ * until they are updated with {@link #with(String, NSObject)}.</p>
  * @see SortedMap
  */
 public final class NSDictionary extends NSCollection {
 
+	/** The empty dictionary */
+	public static final NSDictionary EMPTY = new NSDictionary(new ArraySortedMap(new String[0], new NSObject[0], 0), false);
+
 	private final SortedMap<String,NSObject> theDictionary;
 	
 	/**
@@ -49,9 +56,17 @@ public final class NSDictionary extends NSCollection {
 	 * @param map	value of the new object
 	 */
 	public NSDictionary(Map<String, ? extends NSObject> map) {
-		this.theDictionary = Collections.unmodifiableSortedMap(
-				new TreeMap<String,NSObject>(map)
-			);
+		this.theDictionary = new NSMutableDictionary(map).freeze().theDictionary;
+	}
+	
+	/**
+	 * Construct a new dictionary, which takes ownership of <code>map</code> unless it is copied.
+	 * @param map	value of the new object; if it is not copied, it must be unmodifiable and use the natural ordering of its keys
+	 * @param copy	whether <code>map</code> must be copied
+	 * @see NSMutableDictionary#freeze()
+	 */
+	NSDictionary(SortedMap<String,NSObject> map, boolean copy) {
+		this.theDictionary = copy ? new NSMutableDictionary(map).freeze().theDictionary : map;
 	}
 	
 	/**
@@ -65,11 +80,18 @@ public final class NSDictionary extends NSCollection {
 	 * {@link NSObject#getValue()} always returns a valid object.
 	 */
 	public static NSDictionary fromMap(Map<String,?> map) {
-		TreeMap<String, NSObject> dictMap = new TreeMap<String,NSObject>();
-		for(Entry<String, ?> e : map.entrySet()) {
-			dictMap.put(e.getKey(), NSObject.fromObject(e.getValue()));
-		}
-		return new NSDictionary(dictMap);
+		return fromMap(map, null);
+	}
+	
+	/**
+	 * Convert a map to a NSDictionary, interning all keys.
+	 * Keys of nested maps are interned as well.
+	 * @param map	the map to convert
+	 * @param keyInterner	the interner used for keys, or <code>null</code> to disable interning
+	 * @see #fromMap(Map)
+	 */
+	public static NSDictionary fromMap(Map<String,?> map, KeyInterner keyInterner) {
+		return (NSDictionary) NSObject.fromObject(map, keyInterner);
 	}
 	
 	/**
@@ -79,15 +101,98 @@ public final class NSDictionary extends NSCollection {
 	 * @see java.util.Map#get(Object)
 	 */
 	public NSObject get(String key) {
-		return toMap().get(key);
+		return theDictionary.get(key);
+	}
+	/**
+	 * Check whether this dictionary contains a key.
+	 * @param key The key to look for
+	 * @return whether a value is associated with <code>key</code>
+	 * @see java.util.Map#containsKey(Object)
+	 */
+	public boolean containsKey(String key) {
+		return theDictionary.containsKey(key);
+	}
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return theDictionary.size();
+	}
+	/** {@inheritDoc} */
+	@Override
+	long shallowSize() {
+		if (theDictionary instanceof AbstractImmutableSortedMap)
+			return 24+((AbstractImmutableSortedMap) theDictionary).footprint();
+		return 24+48+40L*theDictionary.size();
+	}
+	/**
+	 * Get an unmodifiable view on the keys of this dictionary, in ascending order.
+	 * @return the keys
+	 * @see java.util.Map#keySet()
+	 */
+	public Set<String> keys() {
+		return theDictionary.keySet();
 	}
 	/**
-	 * Get the entryset for this {@link NSObject}.
+	 * {@inheritDoc}
+	 * The values are ordered by their keys.
+	 * @see java.util.Map#values()
+	 */
+	@Override
+	public Collection<NSObject> values() {
+		return theDictionary.values();
+	}
+	/**
+	 * Get an unmodifiable view on the entries of this dictionary, ordered by their keys.
 	 * @return the entryset
 	 * @see java.util.Map#entrySet()
 	 */
 	public Set<Entry<String, NSObject>> entrySet() {
-		return toMap().entrySet();
+		return theDictionary.entrySet();
+	}
+	
+	/**
+	 * <p>Get a copy of this dictionary in which <code>key</code> is associated with <code>value</code>.
+	 * This dictionary is not modified.</p>
+	 * <p>The first update of a dictionary copies its entries into a persistent tree in O(n);
+	 * updates of the result cost O(log n) and share all unchanged entries with it.</p>
+	 * @param key the key
+	 * @param value the value
+	 * @return the new dictionary, or this dictionary if <code>value</code> was already associated with <code>key</code>
+	 * @see #without(String)
+	 * @see #assocIn(List, NSObject)
+	 */
+	public NSDictionary with(String key, NSObject value) {
+		if (value == null)
+			throw new NullPointerException("value");
+		final PersistentSortedMap map = PersistentSortedMap.of(theDictionary).with(key, value);
+		return map == theDictionary ? this : new NSDictionary(map, false);
+	}
+	/**
+	 * Get a copy of this dictionary without <code>key</code>.
+	 * This dictionary is not modified.
+	 * @param key the key
+	 * @return the new dictionary, or this dictionary if <code>key</code> is absent
+	 * @see #with(String, NSObject)
+	 */
+	public NSDictionary without(String key) {
+		if (!theDictionary.containsKey(key))
+			return this;
+		return new NSDictionary(PersistentSortedMap.of(theDictionary).without(key), false);
+	}
+	/** {@inheritDoc} */
+	@Override
+	public NSDictionary assocIn(List<?> path, NSObject value) {
+		checkPath(path, value);
+		return assocIn(path, 0, value);
+	}
+	/** {@inheritDoc} */
+	@Override
+	NSDictionary assocIn(List<?> path, int depth, NSObject value) {
+		final Object step = path.get(depth);
+		if (!(step instanceof String))
+			throw new IllegalArgumentException("Step "+depth+" of the path ("+step+") is not a key.");
+		final String key = (String) step;
+		return with(key, assocIn(theDictionary.get(key), path, depth+1, value));
 	}
 	
 	/**
@@ -114,13 +219,19 @@ public final class NSDictionary extends NSCollection {
 		return new TreeMap<String, NSObject>(theDictionary);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * The entries of the view are in the order of the keys.
+	 */
+	@Override
+	public Map<String, ?> toObjectView() {
+		return new ObjectView.MapView(this);
+	}
 	/** {@inheritDoc} */
 	@Override
+	@SuppressWarnings("unchecked")
 	public SortedMap<String, ?> toObject() {
-		TreeMap<String, Object> result = new TreeMap<String,Object>();
-		for(Entry<String, ? extends NSObject> e : toMap().entrySet())
-			result.put(e.getKey(), e.getValue().toObject());
-		return result;
+		return (SortedMap<String, ?>) ObjectConverter.convert(this);
 	}
 
 	
@@ -29,16 +29,63 @@ package net.sf.plist;
  */
 public final class NSInteger extends NSNumber {
 
+	/** Lowest value returned by {@link #valueOf(long)} from the cache */
+	static final long CACHELOW = cacheBound("net.sf.plist.NSInteger.cache.low", -128);
+	/** Highest value returned by {@link #valueOf(long)} from the cache */
+	static final long CACHEHIGH = Math.max(CACHELOW-1, cacheBound("net.sf.plist.NSInteger.cache.high", 1023));
+	/** Shared instances for the values from {@link #CACHELOW} to {@link #CACHEHIGH}, created when first requested */
+	private static final NSInteger[] CACHE = new NSInteger[(int) (CACHEHIGH-CACHELOW+1)];
+
 	private final long theLong;
 	
 	/**
 	 * Constructor.
 	 * @param theLong value of the new object
+	 * @see #valueOf(long)
 	 */
 	public NSInteger(long theLong) {
 		this.theLong = theLong;
 	}
 	
+	/**
+	 * <p>Get a {@link NSInteger} representing <code>l</code>.</p>
+	 * <p>Small values, by default from -128 to 1023, are shared instances,
+	 * like {@link NSBoolean#TRUE} and {@link NSBoolean#FALSE}.
+	 * The range can be changed with the system properties
+	 * <code>net.sf.plist.NSInteger.cache.low</code> and <code>net.sf.plist.NSInteger.cache.high</code>.
+	 * This method should be used instead of the constructor.</p>
+	 * @param l	the value
+	 * @return	the object
+	 * @see Long#valueOf(long)
+	 */
+	public static NSInteger valueOf(long l) {
+		if (l < CACHELOW || l > CACHEHIGH)
+			return new NSInteger(l);
+		final int index = (int) (l-CACHELOW);
+		// Racy initialisation is safe, because the object is immutable
+		NSInteger result = CACHE[index];
+		if (result == null)
+			CACHE[index] = result = new NSInteger(l);
+		return result;
+	}
+	
+	/**
+	 * Read a bound of the cache from a system property.
+	 * The bound is limited to 2^16 away from 0.
+	 * @param property	the name of the property
+	 * @param defaultValue	the value if the property is not set or cannot be read
+	 * @return	the bound
+	 */
+	private static long cacheBound(String property, int defaultValue) {
+		int result;
+		try {
+			result = Integer.getInteger(property, defaultValue).intValue();
+		} catch (SecurityException e) {
+			result = defaultValue;
+		}
+		return Math.max(-65536, Math.min(65536, result));
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see #toNumber()
@@ -59,13 +106,13 @@ public final class NSInteger extends NSNumber {
 	/** {@inheritDoc} */
 	@Override
 	public Long toNumber() {
-		return new Long(theLong);
+		return Long.valueOf(theLong);
 	}
 	
 	/** {@inheritDoc} */
 	@Override
 	public double toDouble() {
-		return new Double(theLong).doubleValue();
+		return theLong;
 	}
 
 	/** {@inheritDoc} */
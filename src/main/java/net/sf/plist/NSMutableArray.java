@@ -0,0 +1,321 @@
+/*
+Property List Mutable Array - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * <p>Builder for {@link NSArray}s.</p>
+ *
+ * <p>Elements are appended to an array which grows when needed,
+ * so {@link #add(NSObject)} costs amortized O(1).
+ * As long as all elements are {@link NSInteger}s, or all elements are {@link NSReal}s,
+ * they are packed into a <code>long[]</code> or <code>double[]</code> instead,
+ * which the resulting {@link NSArray} keeps; see {@link NSArray#getLong(int)}.
+ * {@link #add(long)} and {@link #add(double)} append such elements without creating objects.</p>
+ *
+ * <p>{@link #freeze()} hands the array over to the {@link NSArray}.
+ * The array is only copied if it is larger than the amount of elements,
+ * which never happens when the expected size was given to the constructor.
+ * After that, the builder can still be read, but every modification throws an {@link IllegalStateException}.
+ * Builders are not thread-safe.</p>
+ * @see NSMutableDictionary
+ */
+public final class NSMutableArray {
+
+	/** The elements, or <code>null</code> while the elements are packed */
+	private NSObject[] elements;
+	/** The packed integers, or <code>null</code> */
+	private long[] longs;
+	/** The packed reals, or <code>null</code> */
+	private double[] doubles;
+	/** The capacity to use for the first array */
+	private final int expectedSize;
+	/** The amount of elements */
+	private int size = 0;
+	/** The result of {@link #freeze()} */
+	private NSArray frozen;
+
+	/** Construct a new empty builder */
+	public NSMutableArray() {
+		this(8);
+	}
+
+	/**
+	 * Construct a new empty builder.
+	 * When the final size is known, no arrays have to be grown or trimmed.
+	 * @param expectedSize	the amount of elements which will be added
+	 */
+	public NSMutableArray(int expectedSize) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("expectedSize must be positive, was "+expectedSize);
+		this.expectedSize = expectedSize;
+	}
+
+	/**
+	 * Construct a new builder containing all elements of a collection.
+	 * @param collection	the collection
+	 */
+	public NSMutableArray(Collection<? extends NSObject> collection) {
+		this(collection.size());
+		addAll(collection);
+	}
+
+	/**
+	 * Construct a new builder containing all elements of an array.
+	 * @param array	the array
+	 */
+	public NSMutableArray(NSArray array) {
+		this(array.size());
+		if (array.getPackedType() == NSInteger.class) {
+			longs = array.toLongArray();
+			size = longs.length;
+		} else if (array.getPackedType() == NSReal.class) {
+			doubles = array.toDoubleArray();
+			size = doubles.length;
+		} else {
+			addAll(array.values());
+		}
+	}
+
+	/**
+	 * Throw an exception if this builder has been frozen.
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	private void checkMutable() {
+		if (frozen != null)
+			throw new IllegalStateException("The array has been frozen.");
+	}
+
+	/**
+	 * Throw an exception if an index is out of range.
+	 * @param index	the index
+	 * @throws IndexOutOfBoundsException	if the index is out of range
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+	}
+
+	/**
+	 * Get the capacity for a grown array.
+	 * @param length	the current length of the array
+	 * @return	the new length
+	 */
+	private static int grow(int length) {
+		return Math.max(8, 2*length);
+	}
+
+	/** Store the elements as objects from now on */
+	private void unpack() {
+		final NSObject[] result = new NSObject[longs != null ? longs.length : doubles != null ? doubles.length : expectedSize];
+		for(int i=0;i<size;i++)
+			result[i] = get(i);
+		elements = result;
+		longs = null;
+		doubles = null;
+	}
+
+	/**
+	 * Append an element.
+	 * @param value	the element
+	 * @return	this builder
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSMutableArray add(NSObject value) {
+		checkMutable();
+		if (elements == null) {
+			if (value instanceof NSInteger && doubles == null)
+				return add(((NSInteger) value).toLong());
+			if (value instanceof NSReal && longs == null)
+				return add(((NSReal) value).toDouble());
+			unpack();
+		}
+		if (size == elements.length)
+			elements = Arrays.copyOf(elements, grow(elements.length));
+		elements[size++] = value;
+		return this;
+	}
+
+	/**
+	 * Append an integer.
+	 * The integer is packed if all elements are integers.
+	 * @param value	the integer
+	 * @return	this builder
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSMutableArray add(long value) {
+		checkMutable();
+		if (elements != null || doubles != null)
+			return add(NSInteger.valueOf(value));
+		if (longs == null)
+			longs = new long[expectedSize];
+		if (size == longs.length)
+			longs = Arrays.copyOf(longs, grow(size));
+		longs[size++] = value;
+		return this;
+	}
+
+	/**
+	 * Append a real.
+	 * The real is packed if all elements are reals.
+	 * @param value	the real
+	 * @return	this builder
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSMutableArray add(double value) {
+		checkMutable();
+		if (elements != null || longs != null)
+			return add(new NSReal(value));
+		if (doubles == null)
+			doubles = new double[expectedSize];
+		if (size == doubles.length)
+			doubles = Arrays.copyOf(doubles, grow(size));
+		doubles[size++] = value;
+		return this;
+	}
+
+	/**
+	 * Append all elements of a collection.
+	 * @param collection	the collection
+	 * @return	this builder
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSMutableArray addAll(Collection<? extends NSObject> collection) {
+		for(NSObject value : collection)
+			add(value);
+		return this;
+	}
+
+	/**
+	 * Replace an element.
+	 * @param index	the index of the element
+	 * @param value	the new element
+	 * @return	the element which was replaced
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSObject set(int index, NSObject value) {
+		checkMutable();
+		checkIndex(index);
+		final NSObject result = get(index);
+		if (longs != null && value instanceof NSInteger)
+			longs[index] = ((NSInteger) value).toLong();
+		else if (doubles != null && value instanceof NSReal)
+			doubles[index] = ((NSReal) value).toDouble();
+		else {
+			if (elements == null)
+				unpack();
+			elements[index] = value;
+		}
+		return result;
+	}
+
+	/**
+	 * Remove an element.
+	 * @param index	the index of the element
+	 * @return	the element which was removed
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSObject remove(int index) {
+		checkMutable();
+		checkIndex(index);
+		final NSObject result = get(index);
+		final Object array = elements != null ? elements : longs != null ? longs : doubles;
+		System.arraycopy(array, index+1, array, index, size-index-1);
+		size--;
+		if (elements != null)
+			elements[size] = null;
+		return result;
+	}
+
+	/**
+	 * Get an element.
+	 * @param index	the index of the element
+	 * @return	the element
+	 */
+	public NSObject get(int index) {
+		checkIndex(index);
+		if (longs != null)
+			return NSInteger.valueOf(longs[index]);
+		if (doubles != null)
+			return new NSReal(doubles[index]);
+		return elements[index];
+	}
+
+	/**
+	 * Get the amount of elements.
+	 * @return	the amount of elements
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * <p>Get an {@link NSArray} containing the elements of this builder.</p>
+	 * <p>The elements are not copied unless the array is larger than needed;
+	 * instead, this builder can no longer be modified.
+	 * Subsequent calls return the same {@link NSArray}.</p>
+	 * @return	the array
+	 */
+	public NSArray freeze() {
+		if (frozen == null) {
+			if (size == 0) {
+				frozen = NSArray.EMPTY;
+			} else if (longs != null) {
+				if (longs.length != size)
+					longs = Arrays.copyOf(longs, size);
+				frozen = new NSArray(new PackedLongList(longs));
+			} else if (doubles != null) {
+				if (doubles.length != size)
+					doubles = Arrays.copyOf(doubles, size);
+				frozen = new NSArray(new PackedDoubleList(doubles));
+			} else {
+				if (elements == null || elements.length != size)
+					elements = elements == null ? new NSObject[0] : Arrays.copyOf(elements, size);
+				frozen = new NSArray(elements, false);
+			}
+		}
+		return frozen;
+	}
+
+	/**
+	 * Check whether {@link #freeze()} has been called.
+	 * @return	whether this builder can no longer be modified
+	 */
+	public boolean isFrozen() {
+		return frozen != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder("[");
+		for(int i=0;i<size;i++) {
+			if (i > 0)
+				result.append(", ");
+			result.append(get(i));
+		}
+		return result.append(']').toString();
+	}
+
+}
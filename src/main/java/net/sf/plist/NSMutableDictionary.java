@@ -0,0 +1,337 @@
+/*
+Property List Mutable Dictionary - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>Builder for {@link NSDictionary}s.</p>
+ *
+ * <p>Entries are appended to two arrays, so {@link #put(String, NSObject)} costs amortized O(1).
+ * When keys are not put in ascending order, the entries are sorted once,
+ * as soon as they are needed in order or a key is looked up.
+ * When a key is put more than once, the last value wins.</p>
+ *
+ * <p>{@link #freeze()} hands the arrays over to the {@link NSDictionary}.
+ * The arrays are only copied if they are larger than the amount of entries,
+ * which never happens when the expected size was given to the constructor and every key was put once.
+ * After that, the builder can still be read, but every modification throws an {@link IllegalStateException}.
+ * Builders are not thread-safe.</p>
+ * @see NSMutableArray
+ */
+public final class NSMutableDictionary {
+
+	/** Largest amount of entries which are sorted with an insertion sort */
+	private static final int INSERTIONSORT = 16;
+
+	/** The keys */
+	private String[] keys;
+	/** The values, at the same index as their keys */
+	private NSObject[] values;
+	/** The amount of entries, including keys which were put more than once if not {@link #sorted} */
+	private int size = 0;
+	/** Whether the keys are in ascending order without duplicates */
+	private boolean sorted = true;
+	/** The result of {@link #freeze()} */
+	private NSDictionary frozen;
+
+	/** Construct a new empty builder */
+	public NSMutableDictionary() {
+		this(8);
+	}
+
+	/**
+	 * Construct a new empty builder.
+	 * When the final size is known, no arrays have to be grown or trimmed.
+	 * @param expectedSize	the amount of entries which will be put
+	 */
+	public NSMutableDictionary(int expectedSize) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("expectedSize must be positive, was "+expectedSize);
+		keys = new String[expectedSize];
+		values = new NSObject[expectedSize];
+	}
+
+	/**
+	 * Construct a new builder which takes ownership of arrays of entries,
+	 * so that {@link #freeze()} sorts them in place instead of copying them.
+	 * @param keys	the keys
+	 * @param values	the values, at the same index as their keys
+	 * @param size	the amount of entries
+	 */
+	NSMutableDictionary(String[] keys, NSObject[] values, int size) {
+		for(int i=0;i<size;i++) {
+			if (keys[i] == null)
+				throw new NullPointerException("key");
+			if (sorted && i > 0 && keys[i-1].compareTo(keys[i]) >= 0)
+				sorted = false;
+		}
+		this.keys = keys;
+		this.values = values;
+		this.size = size;
+	}
+
+	/**
+	 * Construct a new builder containing all entries of a map.
+	 * @param map	the map
+	 */
+	public NSMutableDictionary(Map<String, ? extends NSObject> map) {
+		this(map.size());
+		putAll(map);
+	}
+
+	/**
+	 * Construct a new builder containing all entries of a dictionary.
+	 * @param dictionary	the dictionary
+	 */
+	public NSMutableDictionary(NSDictionary dictionary) {
+		this(dictionary.getValue());
+	}
+
+	/**
+	 * Throw an exception if this builder has been frozen.
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	private void checkMutable() {
+		if (frozen != null)
+			throw new IllegalStateException("The dictionary has been frozen.");
+	}
+
+	/**
+	 * Associate a value with a key, replacing any earlier value.
+	 * @param key	the key
+	 * @param value	the value
+	 * @return	this builder
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSMutableDictionary put(String key, NSObject value) {
+		checkMutable();
+		if (key == null)
+			throw new NullPointerException("key");
+		if (sorted && size > 0) {
+			final int comparison = keys[size-1].compareTo(key);
+			if (comparison == 0) {
+				values[size-1] = value;
+				return this;
+			}
+			if (comparison > 0)
+				sorted = false;
+		}
+		if (size == keys.length) {
+			final int capacity = Math.max(8, 2*size);
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		keys[size] = key;
+		values[size] = value;
+		size++;
+		return this;
+	}
+
+	/**
+	 * Put all entries of a map.
+	 * @param map	the map
+	 * @return	this builder
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSMutableDictionary putAll(Map<String, ? extends NSObject> map) {
+		for(Entry<String, ? extends NSObject> e : map.entrySet())
+			put(e.getKey(), e.getValue());
+		return this;
+	}
+
+	/**
+	 * Remove a key.
+	 * @param key	the key
+	 * @return	the value which was associated with the key, or <code>null</code>
+	 * @throws IllegalStateException	if this builder has been frozen
+	 */
+	public NSObject remove(String key) {
+		checkMutable();
+		final int index = indexOf(key);
+		if (index < 0)
+			return null;
+		final NSObject result = values[index];
+		System.arraycopy(keys, index+1, keys, index, size-index-1);
+		System.arraycopy(values, index+1, values, index, size-index-1);
+		size--;
+		keys[size] = null;
+		values[size] = null;
+		return result;
+	}
+
+	/**
+	 * Get the value associated with a key.
+	 * @param key	the key
+	 * @return	the value, or <code>null</code>
+	 */
+	public NSObject get(String key) {
+		final int index = indexOf(key);
+		return index < 0 ? null : values[index];
+	}
+
+	/**
+	 * Check whether a value is associated with a key.
+	 * @param key	the key
+	 * @return	whether the key is present
+	 */
+	public boolean containsKey(String key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * Get the amount of entries.
+	 * @return	the amount of entries
+	 */
+	public int size() {
+		sort();
+		return size;
+	}
+
+	/**
+	 * Get the index of a key.
+	 * @param key	the key
+	 * @return	the index, or a negative value if the key is absent
+	 */
+	private int indexOf(String key) {
+		if (key == null)
+			throw new NullPointerException("key");
+		sort();
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	/** Sort the entries by key and remove all but the last value of duplicate keys */
+	private void sort() {
+		if (sorted)
+			return;
+		// The sort is stable, so the last value of a key ends up last
+		if (size <= INSERTIONSORT)
+			insertionSort(keys, values, 0, size);
+		else
+			mergeSort(Arrays.copyOf(keys, size), Arrays.copyOf(values, size), keys, values, 0, size);
+		int count = 0;
+		for(int i=0;i<size;i++) {
+			if (count > 0 && keys[count-1].equals(keys[i]))
+				count--;
+			keys[count] = keys[i];
+			values[count] = values[i];
+			count++;
+		}
+		Arrays.fill(keys, count, size, null);
+		Arrays.fill(values, count, size, null);
+		this.size = count;
+		this.sorted = true;
+	}
+
+	/**
+	 * Sort a range of entries by key with a stable insertion sort.
+	 * @param keys	the keys
+	 * @param values	the values, at the same index as their keys
+	 * @param from	index of the first entry
+	 * @param to	index after the last entry
+	 */
+	private static void insertionSort(String[] keys, NSObject[] values, int from, int to) {
+		for(int i=from+1;i<to;i++) {
+			final String key = keys[i];
+			final NSObject value = values[i];
+			int j = i;
+			for(;j>from && keys[j-1].compareTo(key) > 0;j--) {
+				keys[j] = keys[j-1];
+				values[j] = values[j-1];
+			}
+			keys[j] = key;
+			values[j] = value;
+		}
+	}
+
+	/**
+	 * Sort a range of entries by key with a stable merge sort.
+	 * Both pairs of arrays contain the same entries in the range;
+	 * the sorted entries end up in <code>destKeys</code> and <code>destValues</code>.
+	 * @param srcKeys	the keys to merge from
+	 * @param srcValues	the values to merge from
+	 * @param destKeys	the keys to merge into
+	 * @param destValues	the values to merge into
+	 * @param from	index of the first entry
+	 * @param to	index after the last entry
+	 */
+	private static void mergeSort(String[] srcKeys, NSObject[] srcValues, String[] destKeys, NSObject[] destValues, int from, int to) {
+		if (to-from <= INSERTIONSORT) {
+			insertionSort(destKeys, destValues, from, to);
+			return;
+		}
+		final int mid = (from+to) >>> 1;
+		mergeSort(destKeys, destValues, srcKeys, srcValues, from, mid);
+		mergeSort(destKeys, destValues, srcKeys, srcValues, mid, to);
+		for(int i=from, p=from, q=mid;i<to;i++) {
+			if (q >= to || (p < mid && srcKeys[p].compareTo(srcKeys[q]) <= 0)) {
+				destKeys[i] = srcKeys[p];
+				destValues[i] = srcValues[p++];
+			} else {
+				destKeys[i] = srcKeys[q];
+				destValues[i] = srcValues[q++];
+			}
+		}
+	}
+
+	/**
+	 * <p>Get an {@link NSDictionary} containing the entries of this builder.</p>
+	 * <p>The entries are not copied; instead, this builder can no longer be modified.
+	 * Subsequent calls return the same {@link NSDictionary}.</p>
+	 * @return	the dictionary
+	 */
+	public NSDictionary freeze() {
+		if (frozen == null) {
+			sort();
+			if (keys.length != size) {
+				keys = Arrays.copyOf(keys, size);
+				values = Arrays.copyOf(values, size);
+			}
+			frozen = size == 0 ? NSDictionary.EMPTY : new NSDictionary(new ArraySortedMap(keys, values, size), false);
+		}
+		return frozen;
+	}
+
+	/**
+	 * Check whether {@link #freeze()} has been called.
+	 * @return	whether this builder can no longer be modified
+	 */
+	public boolean isFrozen() {
+		return frozen != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		sort();
+		final StringBuilder result = new StringBuilder("{");
+		for(int i=0;i<size;i++) {
+			if (i > 0)
+				result.append(", ");
+			result.append(keys[i]).append('=').append(values[i]);
+		}
+		return result.append('}').toString();
+	}
+
+}
@@ -50,7 +50,7 @@ public abstract class NSNumber extends NSObject {
 			|| number instanceof Integer
 			|| number instanceof Long
 			|| number instanceof Short)
-			return new NSInteger(number.longValue());
+			return NSInteger.valueOf(number.longValue());
 		return new NSReal(number.doubleValue());
 	}
 	
@@ -25,6 +25,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -32,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * <p>Every Property List contains one or more {@link NSObject}s.</p>
@@ -42,7 +44,10 @@ import java.util.TreeMap;
  * 
  * <p>The value of this object can be requested through the {@link #getValue()} method.</p>
  * 
- * <p>The {@link #hashCode()}, {@link #equals(Object)} and {@link #toString()} methods are overridden to use the respective functions of the value object.</p> 
+ * <p>The {@link #hashCode()}, {@link #equals(Object)} and {@link #toString()} methods are overridden to use the respective functions of the value object.
+ * Since {@link NSObject}s are immutable, the hash code is computed only once;
+ * for an {@link NSCollection} it covers the whole tree below it.
+ * {@link #equals(Object)} returns early when both hash codes are known and differ.</p> 
  */
 public abstract class NSObject {
 
@@ -64,6 +69,9 @@ public abstract class NSObject {
 		return Arrays.copyOf(result, i);
 	}
 	
+	/** The cached hash code, or 0 if it has not been computed yet */
+	private int hash;
+	
 	NSObject() {/*not directly extendable outside this package*/}
 	
 	/**
@@ -83,14 +91,94 @@ public abstract class NSObject {
 	
 	/**
 	 * {@inheritDoc}
+	 * The hash code is cached after the first call.
+	 * The hash codes of nested collections are computed bottom-up with a {@link PlistWalker},
+	 * so deep trees do not overflow the stack.
 	 */
 	@Override
-	public int hashCode() {
+	public final int hashCode() {
+		// Racy single-check, like String: the hash code is the same in every thread
+		int result = hash;
+		if (result == 0) {
+			if (this instanceof NSCollection)
+				PlistWalker.walk(this, HASHER);
+			result = hash;
+			if (result == 0) {
+				result = computeHashCode();
+				hash = result;
+			}
+		}
+		return result;
+	}
+	/** Caches the hash codes of all collections in a tree, children first */
+	private static final PlistVisitor<RuntimeException> HASHER = new PlistVisitor<RuntimeException>() {
+		public Result preVisit(Object key, NSObject node) {
+			return node instanceof NSCollection && node.hash == 0 ? Result.CONTINUE : Result.SKIP_SUBTREE;
+		}
+		public Result postVisit(Object key, NSCollection node) {
+			final NSObject obj = node;
+			if (obj.hash == 0)
+				obj.hash = obj.computeHashCode();
+			return Result.CONTINUE;
+		}
+	};
+	/**
+	 * Compute the hash code of this object. Called by {@link #hashCode()} until the result is cached.
+	 * @return	the hash code
+	 */
+	int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((getRawValue() == null) ? 0 : getRawValue().hashCode());
 		return result;
 	}
+	/**
+	 * Estimate the amount of heap memory used by this object, excluding the {@link NSObject}s it contains.
+	 * The estimate assumes a 64 bits virtual machine with compressed references.
+	 * @return	the estimated size in bytes
+	 */
+	long shallowSize() {
+		return 24;
+	}
+	/**
+	 * <p>Get a SHA-256 digest of the content of this object.</p>
+	 * <p>The digest is computed over a canonical encoding of the tree:
+	 * objects which are equal have the same digest, regardless of the format they were read from,
+	 * their whitespace or the order of the objects in the file.
+	 * Collections are digested bottom-up from the digests of their values, which are cached in each collection,
+	 * so subtrees which are shared between trees are digested once.
+	 * The encoding is stable, so digests can be stored and used as keys of content-addressed caches.</p>
+	 * @return	a new array with the 32 bytes of the digest
+	 */
+	public final byte[] contentDigest() {
+		return ContentDigest.of(this).clone();
+	}
+	/**
+	 * <p>Estimate the amount of heap memory retained by this object and all objects it contains.</p>
+	 * <p>Objects which occur several times in the tree are counted once.
+	 * Use {@link FootprintReport#of(NSObject)} for a breakdown by type.</p>
+	 * @return	the estimated size in bytes
+	 * @see FootprintReport
+	 */
+	public long estimateRetainedSize() {
+		return FootprintReport.of(this).getTotalBytes();
+	}
+	/**
+	 * Round a size up to the object alignment of 8 bytes.
+	 * @param size	the size
+	 * @return	the aligned size
+	 */
+	static long align(long size) {
+		return (size+7) & ~7L;
+	}
+	/**
+	 * Check whether the hash codes of both objects are known and differ, which means they are not equal.
+	 * @param other	the other object
+	 * @return	whether the objects are certainly not equal
+	 */
+	final boolean hashDiffers(NSObject other) {
+		return hash != 0 && other.hash != 0 && hash != other.hash;
+	}
 	/**
 	 * {@inheritDoc}
 	 */
@@ -101,6 +189,8 @@ public abstract class NSObject {
 		if (obj == null || getClass() != obj.getClass())
 			return false;
 		NSObject other = (NSObject) obj;
+		if (hashDiffers(other))
+			return false;
 		if (!this.getRawValue().equals(other.getRawValue()))
 			return false;
 		return true;
@@ -195,6 +285,18 @@ public abstract class NSObject {
 	public Object toObject() {
 		return getValue();
 	}
+	/**
+	 * <p>Get a read-only view of this NSObject as a normal Java object.</p>
+	 * <p>Unlike {@link #toObject()}, collections are not converted up front:
+	 * {@link NSDictionary}s become {@link Map}s and {@link NSArray}s become {@link List}s
+	 * which convert their values when they are first accessed, and then cache the result.
+	 * Other objects are converted by {@link #toObject()}.
+	 * The views are thread-safe.</p>
+	 * @return	a standard Java object, or a view on this collection
+	 */
+	public Object toObjectView() {
+		return toObject();
+	}
 	/**
 	 * Convenience function to avoid casting.
 	 * This method will convert this NSObject to a map,
@@ -257,7 +359,7 @@ public abstract class NSObject {
 	 * @return	the number
 	 */
 	public Number toNumber() {
-		return new Long(toLong());
+		return Long.valueOf(toLong());
 	}
 	
 	/**
@@ -294,24 +396,63 @@ public abstract class NSObject {
 	 * @return the NSObject
 	 * @throws InvalidObjectException if the Object cannot be converted 
 	 */
-	@SuppressWarnings("unchecked")
 	public static NSObject fromObject(Object object) {
+		return fromObject(object, null);
+	}
+	
+	/**
+	 * <p>Convert a Object to NSObject, converting large maps and lists in parallel.</p>
+	 * <p>The values of every {@link Map} or {@link List} with at least <code>threshold</code> entries
+	 * are converted in chunks of <code>threshold</code> values by <code>executor</code>,
+	 * while the calling thread converts one chunk itself and waits for the others.
+	 * The results are stored directly in the arrays backing the new collections.
+	 * Nested collections within a chunk are converted by the same task,
+	 * so the tasks never wait for each other and any {@link ExecutorService} can be used.
+	 * The objects must not be modified during the conversion.</p>
+	 * @param object to convert to NSObject
+	 * @param executor the executor which converts the chunks
+	 * @param threshold the minimum size of collections which are converted in parallel, and the size of the chunks
+	 * @return the NSObject
+	 * @throws IllegalArgumentException if the Object cannot be converted, or <code>threshold</code> is not positive
+	 * @see #fromObject(Object)
+	 */
+	public static NSObject fromObject(Object object, ExecutorService executor, int threshold) {
+		return new ParallelConverter(executor, threshold, null).convert(object);
+	}
+	
+	/**
+	 * Convert a Object to NSObject, interning the keys of all maps.
+	 * Nested maps and lists are converted without recursion.
+	 * @param object to convert to NSObject
+	 * @param keyInterner the interner used for keys, or <code>null</code> to disable interning
+	 * @return the NSObject
+	 * @see #fromObject(Object)
+	 */
+	static NSObject fromObject(Object object, KeyInterner keyInterner) {
+		return ObjectConverter.fromObject(object, keyInterner, null);
+	}
+	
+	/**
+	 * Convert an Object which is not a {@link Map} or {@link List} to NSObject.
+	 * @param object to convert to NSObject
+	 * @return the NSObject
+	 * @see #fromObject(Object)
+	 */
+	static NSObject fromValue(Object object) {
 		if (object instanceof NSObject)
 			return (NSObject) object;
-		if (object instanceof Map)
-			return NSDictionary.fromMap((Map<String, ?>) object);
-		if (object instanceof List)
-			return NSArray.fromList((List<?>) object);
 		if (object instanceof Boolean)
-			return new NSBoolean(((Boolean) object).booleanValue());
+			return NSBoolean.valueOf(((Boolean) object).booleanValue());
 		if (object instanceof byte[])
-			return new NSData((byte[]) object);
+			return ((byte[]) object).length == 0 ? NSData.EMPTY : new NSData((byte[]) object);
+		if (object instanceof ByteBuffer)
+			return new NSData((ByteBuffer) object);
 		if (object instanceof Date)
 			return new NSDate((Date) object);
 		if (object instanceof Number)
 			return NSNumber.createInstance((Number) object);
 		if (object instanceof String)
-			return new NSString(object.toString());
+			return NSString.valueOf(object.toString());
 		if (object instanceof InputStream) {
 			InputStream is = (InputStream) object;
 			if (!is.markSupported())
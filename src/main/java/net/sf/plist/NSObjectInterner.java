@@ -0,0 +1,215 @@
+/*
+Property List Object Interner - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.lang.ref.WeakReference;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+
+/**
+ * <p>Table which makes equal {@link NSObject} trees share a single instance.</p>
+ *
+ * <p>When many similar property lists are kept in memory,
+ * large parts of them are often identical, for example entitlements or standard sets of keys.
+ * {@link #intern(NSObject)} replaces every subtree by an equal subtree which was interned before,
+ * so each distinct subtree is stored once.
+ * A single {@link NSObjectInterner} can be shared between parsers
+ * (see {@link net.sf.plist.io.PropertyListCodec#withObjectInterner(NSObjectInterner)}
+ * and {@link net.sf.plist.io.PropertyListParser#setObjectInterner(NSObjectInterner)}),
+ * which intern every object as soon as it is parsed.</p>
+ *
+ * <p>Entries are weakly referenced, so subtrees which are no longer used elsewhere can be garbage collected.
+ * Lookups use the cached hash codes of {@link NSObject}s, and comparing a collection
+ * with its canonical instance mostly compares canonical children by identity.
+ * {@link #getBytesSaved()} estimates how much memory the duplicates which were replaced would have used.
+ * All methods are thread-safe.</p>
+ * @see KeyInterner
+ */
+public final class NSObjectInterner {
+
+	/** The canonical instances, referring to themselves */
+	private final WeakHashMap<NSObject,WeakReference<NSObject>> table = new WeakHashMap<NSObject,WeakReference<NSObject>>();
+	/** The amount of objects which were replaced by a canonical instance */
+	private long hits = 0;
+	/** The amount of objects which became a canonical instance */
+	private long misses = 0;
+	/** The estimated size of all objects which were replaced */
+	private long bytesSaved = 0;
+
+	/**
+	 * <p>Get the canonical instance of a tree.</p>
+	 * <p>If an equal tree was interned before and is still in use, that instance is returned.
+	 * Otherwise, the children of the tree are interned first,
+	 * and the tree itself becomes the canonical instance;
+	 * if any of its children was replaced, a copy with the canonical children is used instead.</p>
+	 * @param obj	the tree, or <code>null</code>
+	 * @param <T>	the type of the tree
+	 * @return	an instance equal to <code>obj</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T extends NSObject> T intern(T obj) {
+		if (obj == null || obj instanceof NSBoolean)
+			return obj;
+		// Equal objects always have the same class
+		return (T) internNode(obj);
+	}
+
+	/**
+	 * Find the canonical instance of an object.
+	 * @param obj	the object
+	 * @return	the canonical instance, or <code>null</code> if there is none
+	 */
+	private NSObject lookup(NSObject obj) {
+		final WeakReference<NSObject> reference = table.get(obj);
+		return reference == null ? null : reference.get();
+	}
+
+	/**
+	 * Intern an object and its children.
+	 * @param obj	the object
+	 * @return	the canonical instance
+	 */
+	private NSObject internNode(NSObject obj) {
+		final NSObject canonical = lookup(obj);
+		if (canonical != null) {
+			if (canonical != obj) {
+				hits++;
+				bytesSaved += duplicateSize(obj);
+			}
+			return canonical;
+		}
+		NSObject result = obj;
+		if (obj instanceof NSDictionary)
+			result = internChildren((NSDictionary) obj);
+		else if (obj instanceof NSArray)
+			result = internChildren((NSArray) obj);
+		misses++;
+		table.put(result, new WeakReference<NSObject>(result));
+		return result;
+	}
+
+	/**
+	 * Intern the values of a dictionary.
+	 * @param dict	the dictionary
+	 * @return	the dictionary, or a copy if any value was replaced
+	 */
+	private NSDictionary internChildren(NSDictionary dict) {
+		final String[] keys = new String[dict.size()];
+		final NSObject[] values = new NSObject[keys.length];
+		boolean replaced = false;
+		int i = 0;
+		for(Entry<String,NSObject> e : dict.entrySet()) {
+			keys[i] = e.getKey();
+			values[i] = e.getValue() == null ? null : internNode(e.getValue());
+			replaced |= values[i] != e.getValue();
+			i++;
+		}
+		if (!replaced)
+			return dict;
+		return new NSDictionary(new ArraySortedMap(keys, values, keys.length), false);
+	}
+
+	/**
+	 * Intern the values of an array.
+	 * Packed arrays have no children to intern.
+	 * @param array	the array
+	 * @return	the array, or a copy if any value was replaced
+	 */
+	private NSArray internChildren(NSArray array) {
+		if (array.getPackedType() != null)
+			return array;
+		final NSObject[] values = new NSObject[array.size()];
+		boolean replaced = false;
+		int i = 0;
+		for(NSObject value : array.values()) {
+			values[i] = value == null ? null : internNode(value);
+			replaced |= values[i] != value;
+			i++;
+		}
+		if (!replaced)
+			return array;
+		return new NSArray(values, false);
+	}
+
+	/**
+	 * Estimate the memory used by a duplicate of a canonical instance,
+	 * excluding its children which are canonical instances themselves.
+	 * @param obj	the duplicate
+	 * @return	the estimated size in bytes
+	 */
+	private long duplicateSize(NSObject obj) {
+		long result = obj.shallowSize();
+		if (obj instanceof NSCollection && !(obj instanceof NSArray && ((NSArray) obj).getPackedType() != null))
+			for(NSObject value : ((NSCollection) obj).values())
+				if (value != null && !(value instanceof NSBoolean) && lookup(value) != value)
+					result += duplicateSize(value);
+		return result;
+	}
+
+	/**
+	 * Get the amount of objects which were replaced by a canonical instance.
+	 * @return	the amount of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the amount of objects which became a canonical instance.
+	 * @return	the amount of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Estimate the amount of heap memory saved by replacing duplicates with canonical instances.
+	 * The estimate assumes a 64 bits virtual machine with compressed references.
+	 * @return	the estimated amount of bytes
+	 */
+	public synchronized long getBytesSaved() {
+		return bytesSaved;
+	}
+
+	/**
+	 * Get the amount of canonical instances which are still in use.
+	 * @return	the size
+	 */
+	public synchronized int size() {
+		return table.size();
+	}
+
+	/** Remove all canonical instances and reset the statistics */
+	public synchronized void clear() {
+		table.clear();
+		hits = 0;
+		misses = 0;
+		bytesSaved = 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized String toString() {
+		return "NSObjectInterner[size="+table.size()+", hits="+hits+", misses="+misses+", bytesSaved="+bytesSaved+"]";
+	}
+
+}
@@ -58,7 +58,7 @@ public final class NSReal extends NSNumber {
 	/** {@inheritDoc} */
 	@Override
 	public Double toNumber() {
-		return new Double(theDouble);
+		return Double.valueOf(theDouble);
 	}
 	
 	/** {@inheritDoc} */
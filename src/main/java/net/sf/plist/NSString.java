@@ -21,16 +21,35 @@ Project page on http://plist.sf.net/
 */
 package net.sf.plist;
 
+import java.nio.charset.Charset;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.Arrays;
 
 /**
  * <p>Represents a string.</p>
+ * 
+ * <p>An {@link NSString} is either constructed from a {@link String}
+ * or from the raw ASCII or UTF-16BE bytes found in a binary property list.
+ * In the latter case the bytes are only decoded when the value is requested for the first time,
+ * so strings which are never read are never decoded.
+ * Equality, hashing and {@link #contentEquals(String)} work on the raw bytes without decoding them.</p>
  * @see String
  */
 public final class NSString extends NSObject {
 
-	private final String theString;
+	/** Charset to decode ASCII strings; it maps bytes above 0x7F like {@link #charAt(byte[], int, int, boolean)} */
+	private static final Charset ASCIICHARSET = Charset.forName("ISO-8859-1");
+
+	/** The empty string */
+	public static final NSString EMPTY = new NSString("");
+
+	/** The decoded value, or <code>null</code> if it has not been decoded yet */
+	private String theString;
+	/** The raw bytes, or <code>null</code> if this object was constructed with a {@link String} */
+	private final byte[] theBytes;
+	/** Whether {@link #theBytes} are UTF-16BE encoded, opposed to ASCII */
+	private final boolean unicode;
 	
 	/**
 	 * Constructor.
@@ -38,6 +57,127 @@ public final class NSString extends NSObject {
 	 */
 	public NSString(String theString) {
 		this.theString = theString;
+		this.theBytes = null;
+		this.unicode = false;
+	}
+	
+	/**
+	 * Get a {@link NSString} representing <code>string</code>,
+	 * which is {@link #EMPTY} if the string is empty.
+	 * @param string	the value
+	 * @return	the object
+	 */
+	public static NSString valueOf(String string) {
+		return string.length() == 0 ? EMPTY : new NSString(string);
+	}
+	
+	/**
+	 * Constructor for raw content.
+	 * @param theBytes the raw bytes
+	 * @param unicode whether the bytes are UTF-16BE encoded, opposed to ASCII
+	 */
+	private NSString(byte[] theBytes, boolean unicode) {
+		this.theString = null;
+		this.theBytes = theBytes;
+		this.unicode = unicode;
+	}
+	
+	/**
+	 * Create a string from ASCII encoded bytes, which are decoded when the value is first requested.
+	 * The array is not copied, so it should not be modified afterwards.
+	 * @param bytes the ASCII encoded content
+	 * @return the new object
+	 */
+	public static NSString fromASCII(byte[] bytes) {
+		if (bytes.length == 0)
+			return EMPTY;
+		return new NSString(bytes, false);
+	}
+	
+	/**
+	 * Create a string from UTF-16 big endian encoded bytes, which are decoded when the value is first requested.
+	 * The array is not copied, so it should not be modified afterwards.
+	 * @param bytes the UTF-16BE encoded content, of even length
+	 * @return the new object
+	 */
+	public static NSString fromUTF16(byte[] bytes) {
+		if ((bytes.length & 1) != 0)
+			throw new IllegalArgumentException("UTF-16 content must have an even length, was "+bytes.length);
+		if (bytes.length == 0)
+			return EMPTY;
+		return new NSString(bytes, true);
+	}
+	
+	/**
+	 * Get a character from raw content.
+	 * @param bytes the raw content
+	 * @param offset start of the content
+	 * @param index index of the character
+	 * @param unicode whether the content is UTF-16BE encoded, opposed to ASCII
+	 * @return the character
+	 */
+	static char charAt(byte[] bytes, int offset, int index, boolean unicode) {
+		if (unicode)
+			return (char) (((bytes[offset+2*index]&0xFF) << 8) | (bytes[offset+2*index+1]&0xFF));
+		return (char) (bytes[offset+index]&0xFF);
+	}
+	
+	/**
+	 * Decode raw content.
+	 * @param bytes the raw content
+	 * @param offset start of the content
+	 * @param length amount of characters
+	 * @param unicode whether the content is UTF-16BE encoded, opposed to ASCII
+	 * @return the decoded {@link String}
+	 */
+	static String decode(byte[] bytes, int offset, int length, boolean unicode) {
+		if (!unicode)
+			return new String(bytes, offset, length, ASCIICHARSET);
+		char[] chars = new char[length];
+		for(int i=0;i<length;i++)
+			chars[i] = charAt(bytes, offset, i, true);
+		return new String(chars);
+	}
+	
+	/**
+	 * Calculate the {@link String#hashCode()} of raw content without decoding it.
+	 * @param bytes the raw content
+	 * @param offset start of the content
+	 * @param length amount of characters
+	 * @param unicode whether the content is UTF-16BE encoded, opposed to ASCII
+	 * @return the hash code the decoded {@link String} would have
+	 */
+	static int hashCode(byte[] bytes, int offset, int length, boolean unicode) {
+		int h = 0;
+		for(int i=0;i<length;i++)
+			h = 31*h + charAt(bytes, offset, i, unicode);
+		return h;
+	}
+	
+	/**
+	 * Compare raw content to a {@link String} without decoding it.
+	 * @param bytes the raw content
+	 * @param offset start of the content
+	 * @param length amount of characters
+	 * @param unicode whether the content is UTF-16BE encoded, opposed to ASCII
+	 * @param string the string to compare to
+	 * @return whether the decoded content would be equal to <code>string</code>
+	 */
+	static boolean contentEquals(byte[] bytes, int offset, int length, boolean unicode, String string) {
+		if (string.length() != length)
+			return false;
+		for(int i=0;i<length;i++)
+			if (string.charAt(i) != charAt(bytes, offset, i, unicode))
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Get the amount of characters in raw content.
+	 * @return the length
+	 */
+	private int rawLength() {
+		return unicode ? theBytes.length/2 : theBytes.length;
 	}
 	
 	/**
@@ -46,12 +186,89 @@ public final class NSString extends NSObject {
 	 */
 	@Override
 	public String getValue() {
-		return theString;
+		String result = theString;
+		if (result == null) // Benign race; every thread decodes to an equal immutable String
+			theString = result = decode(theBytes, 0, rawLength(), unicode);
+		return result;
+	}
+	
+	/**
+	 * Get the amount of characters in this string, without decoding it.
+	 * @return the length
+	 */
+	public int length() {
+		String value = theString;
+		return value == null ? rawLength() : value.length();
+	}
+	
+	/**
+	 * Compare the content of this object to a {@link String}.
+	 * If this object holds raw content, it is compared without decoding it.
+	 * @param string the string to compare to
+	 * @return whether the value of this object equals <code>string</code>
+	 */
+	public boolean contentEquals(String string) {
+		String value = theString;
+		if (value != null)
+			return value.equals(string);
+		return string != null && contentEquals(theBytes, 0, rawLength(), unicode, string);
+	}
+	
+	/**
+	 * Get the {@link String#hashCode()} of the value, without decoding raw content.
+	 * @return the hash code of the value
+	 */
+	int contentHashCode() {
+		String value = theString;
+		return value == null ? hashCode(theBytes, 0, rawLength(), unicode) : value.hashCode();
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	long shallowSize() {
+		final String value = theString;
+		long result = 32;
+		if (value != null)
+			result += 24+align(16+2L*value.length());
+		if (theBytes != null)
+			result += align(16+theBytes.length);
+		return result;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	int computeHashCode() {
+		return 31 + contentHashCode();
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof NSString))
+			return false;
+		NSString other = (NSString) obj;
+		if (hashDiffers(other))
+			return false;
+		if (theString == null && other.theString == null && unicode == other.unicode)
+			return Arrays.equals(theBytes, other.theBytes);
+		if (theString == null && other.theString == null) {
+			int length = rawLength();
+			if (length != other.rawLength())
+				return false;
+			for(int i=0;i<length;i++)
+				if (charAt(theBytes, 0, i, unicode) != charAt(other.theBytes, 0, i, other.unicode))
+					return false;
+			return true;
+		}
+		return theString == null ? contentEquals(other.theString) : other.contentEquals(theString);
 	}
 	
 	/** {@inheritDoc} */
 	@Override
 	public boolean isTrue() {
+		String theString = getValue();
 		return theString.length()>0
 				&& !"no".equalsIgnoreCase(theString)
 				&& !"false".equalsIgnoreCase(theString)
@@ -61,14 +278,14 @@ public final class NSString extends NSObject {
 	/** {@inheritDoc} */
 	@Override
 	public byte[] toBytes() {
-		return theString.getBytes();
+		return getValue().getBytes();
 	}
 	
 	/** {@inheritDoc} */
 	@Override
 	public Number toNumber() {
 		try {
-			return NumberFormat.getInstance().parse(theString);
+			return NumberFormat.getInstance().parse(getValue());
 		} catch (ParseException e) {
 			return new Byte((byte) 0);
 		}
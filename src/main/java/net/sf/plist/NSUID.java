@@ -92,7 +92,7 @@ public final class NSUID extends NSObject {
 	@Override
 	public SortedMap<String, NSObject> toMap() {
 		TreeMap<String, NSObject> result = new TreeMap<String,NSObject>();
-		result.put(CFUIDKEY, new NSInteger(cfUid));
+		result.put(CFUIDKEY, NSInteger.valueOf(cfUid));
 		return Collections.unmodifiableSortedMap(result);
 	}
 	
@@ -103,7 +103,7 @@ public final class NSUID extends NSObject {
 	 */
 	@Override
 	public List<NSObject> toList() {
-		return Collections.unmodifiableList(Arrays.asList(new NSObject[]{new NSInteger(cfUid)}));
+		return Collections.unmodifiableList(Arrays.asList(new NSObject[]{NSInteger.valueOf(cfUid)}));
 	}
 	
 	/** @see #getCfUid() */
@@ -121,7 +121,7 @@ public final class NSUID extends NSObject {
 	/** @see #getCfUid() */
 	@Override
 	public Long toNumber() {
-		return new Long(getCfUid());
+		return Long.valueOf(getCfUid());
 	}
 	
 	/**
@@ -0,0 +1,201 @@
+/*
+Property List Object Converter - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * <p>Converts collections to standard Java objects and back without recursion.</p>
+ * @see NSObject#toObject()
+ * @see NSObject#fromObject(Object)
+ * @see PlistWalker
+ */
+final class ObjectConverter implements PlistVisitor<RuntimeException> {
+
+	/** The converted collections which are being filled */
+	private final List<Object> stack = new ArrayList<Object>();
+	/** The converted root */
+	private Object result;
+
+	/** Use {@link #convert(NSCollection)} */
+	private ObjectConverter() {}
+
+	/**
+	 * Convert a collection and its children.
+	 * Dictionaries become {@link TreeMap}s and arrays become {@link ArrayList}s.
+	 * @param root	the collection
+	 * @return	the converted collection
+	 */
+	static Object convert(NSCollection root) {
+		final ObjectConverter converter = new ObjectConverter();
+		PlistWalker.walk(root, converter);
+		return converter.result;
+	}
+
+	/**
+	 * <p>Convert a standard Java object and its children to an NSObject.</p>
+	 * <p>{@link Map}s become {@link NSDictionary}s and {@link List}s become {@link NSArray}s;
+	 * other objects are converted by {@link NSObject#fromValue(Object)}.
+	 * The maps and lists which are being converted are kept in an explicit stack.</p>
+	 * @param root	the object
+	 * @param keyInterner	the interner used for keys, or <code>null</code> to disable interning
+	 * @param parallel	the converter for large maps and lists, or <code>null</code> to convert everything in this thread
+	 * @return	the NSObject
+	 */
+	static NSObject fromObject(Object root, KeyInterner keyInterner, ParallelConverter parallel) {
+		final List<Builder> stack = new ArrayList<Builder>();
+		NSObject result = start(root, stack, parallel);
+		while(!stack.isEmpty()) {
+			final Builder top = stack.get(stack.size()-1);
+			if (!top.entries.hasNext()) {
+				stack.remove(stack.size()-1);
+				final NSObject done = top.freeze();
+				if (stack.isEmpty())
+					result = done;
+				else
+					stack.get(stack.size()-1).add(done);
+				continue;
+			}
+			final Object value = top.next(keyInterner);
+			final int depth = stack.size();
+			final NSObject converted = start(value, stack, parallel);
+			if (stack.size() == depth)
+				top.add(converted);
+		}
+		return result;
+	}
+
+	/**
+	 * Convert an object, or push a builder for it if it is a map or list which is converted in this thread.
+	 * @param object	the object
+	 * @param stack	the builders of the maps and lists which are being converted
+	 * @param parallel	the converter for large maps and lists, or <code>null</code>
+	 * @return	the NSObject, or <code>null</code> if a builder was pushed
+	 */
+	private static NSObject start(Object object, List<Builder> stack, ParallelConverter parallel) {
+		if (object instanceof Map || object instanceof List) {
+			final NSCollection converted = parallel == null ? null : parallel.convertLarge(object);
+			if (converted != null)
+				return converted;
+			stack.add(new Builder(object));
+			return null;
+		}
+		return NSObject.fromValue(object);
+	}
+
+	/** A map or list whose values are being converted */
+	private static final class Builder {
+		/** The entries of the map, or the values of the list */
+		final Iterator<?> entries;
+		/** The builder, if the object is a map */
+		private final NSMutableDictionary dict;
+		/** The builder, if the object is a list */
+		private final NSMutableArray array;
+		/** The key of the value returned by {@link #next(KeyInterner)} */
+		private String key;
+
+		/**
+		 * Constructor.
+		 * @param object	the map or list
+		 */
+		Builder(Object object) {
+			if (object instanceof Map) {
+				final Map<?,?> map = (Map<?,?>) object;
+				entries = map.entrySet().iterator();
+				dict = new NSMutableDictionary(map.size());
+				array = null;
+			} else {
+				final List<?> list = (List<?>) object;
+				entries = list.iterator();
+				dict = null;
+				array = new NSMutableArray(list.size());
+			}
+		}
+
+		/**
+		 * Get the next value to convert.
+		 * @param keyInterner	the interner used for keys, or <code>null</code>
+		 * @return	the value
+		 */
+		Object next(KeyInterner keyInterner) {
+			if (dict == null)
+				return entries.next();
+			final Entry<?,?> e = (Entry<?,?>) entries.next();
+			key = (String) e.getKey();
+			if (keyInterner != null)
+				key = keyInterner.intern(key);
+			return e.getValue();
+		}
+
+		/**
+		 * Add the converted value returned by {@link #next(KeyInterner)}.
+		 * @param value	the converted value
+		 */
+		void add(NSObject value) {
+			if (dict == null)
+				array.add(value);
+			else
+				dict.put(key, value);
+		}
+
+		/**
+		 * Get the converted map or list.
+		 * @return	the NSCollection
+		 */
+		NSCollection freeze() {
+			return dict == null ? array.freeze() : dict.freeze();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@SuppressWarnings("unchecked")
+	public Result preVisit(Object key, NSObject node) {
+		final Object converted;
+		if (node instanceof NSDictionary)
+			converted = new TreeMap<String,Object>();
+		else if (node instanceof NSArray)
+			converted = new ArrayList<Object>(((NSArray) node).size());
+		else
+			converted = node.toObject();
+		if (stack.isEmpty())
+			result = converted;
+		else if (key instanceof String)
+			((Map<String,Object>) stack.get(stack.size()-1)).put((String) key, converted);
+		else
+			((List<Object>) stack.get(stack.size()-1)).add(converted);
+		if (node instanceof NSCollection)
+			stack.add(converted);
+		return Result.CONTINUE;
+	}
+
+	/** {@inheritDoc} */
+	public Result postVisit(Object key, NSCollection node) {
+		stack.remove(stack.size()-1);
+		return Result.CONTINUE;
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+Property List Object View - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Read-only views of collections as standard Java objects, which convert their values when first accessed.</p>
+ * @see NSObject#toObjectView()
+ */
+final class ObjectView {
+
+	/** Utility class */
+	private ObjectView() {}
+
+	/**
+	 * Get the view of an object.
+	 * @param obj	the object, or <code>null</code>
+	 * @return	a view if the object is a collection, otherwise the result of {@link NSObject#toObject()}
+	 */
+	static Object of(NSObject obj) {
+		if (obj instanceof NSDictionary)
+			return new MapView((NSDictionary) obj);
+		if (obj instanceof NSArray)
+			return new ListView((NSArray) obj);
+		return obj == null ? null : obj.toObject();
+	}
+
+	/** View of a {@link NSArray} */
+	static final class ListView extends AbstractList<Object> implements RandomAccess {
+		/** The array */
+		private final NSArray array;
+		/** The converted elements, <code>null</code> if they were not converted yet */
+		private final AtomicReferenceArray<Object> cache;
+
+		/**
+		 * Constructor.
+		 * @param array	the array
+		 */
+		ListView(NSArray array) {
+			this.array = array;
+			this.cache = new AtomicReferenceArray<Object>(array.size());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object get(int index) {
+			Object result = cache.get(index);
+			if (result == null) {
+				result = of(array.get(index));
+				// Keep the first conversion if another thread was faster
+				if (result != null && !cache.compareAndSet(index, null, result))
+					result = cache.get(index);
+			}
+			return result;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int size() {
+			return cache.length();
+		}
+	}
+
+	/** View of a {@link NSDictionary}, iterating in the order of its keys */
+	static final class MapView extends AbstractMap<String,Object> {
+		/** The dictionary */
+		private final NSDictionary dict;
+		/** The converted values */
+		private final ConcurrentHashMap<String,Object> cache = new ConcurrentHashMap<String,Object>();
+		/** The entries, created when needed */
+		private Set<Entry<String,Object>> entrySet;
+
+		/**
+		 * Constructor.
+		 * @param dict	the dictionary
+		 */
+		MapView(NSDictionary dict) {
+			this.dict = dict;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object get(Object key) {
+			if (!(key instanceof String))
+				return null;
+			Object result = cache.get(key);
+			if (result == null) {
+				result = of(dict.get((String) key));
+				if (result != null) {
+					final Object previous = cache.putIfAbsent((String) key, result);
+					if (previous != null)
+						result = previous;
+				}
+			}
+			return result;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && dict.containsKey((String) key);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int size() {
+			return dict.size();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Set<Entry<String,Object>> entrySet() {
+			if (entrySet == null)
+				entrySet = new AbstractSet<Entry<String,Object>>() {
+					@Override
+					public Iterator<Entry<String,Object>> iterator() {
+						final Iterator<String> keys = dict.keys().iterator();
+						return new Iterator<Entry<String,Object>>() {
+							public boolean hasNext() {
+								return keys.hasNext();
+							}
+							public Entry<String,Object> next() {
+								final String key = keys.next();
+								return new SimpleImmutableEntry<String,Object>(key, get(key));
+							}
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+					@Override
+					public int size() {
+						return dict.size();
+					}
+				};
+			return entrySet;
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+Property List Packed Double List - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * <p>Unmodifiable list of {@link NSReal}s backed by a <code>double[]</code>.</p>
+ *
+ * <p>Each real takes 8 bytes instead of an object.
+ * {@link #get(int)} creates a new {@link NSReal};
+ * use {@link NSArray#getDouble(int)} to read the values without creating objects.</p>
+ * @see NSMutableArray#add(double)
+ */
+final class PackedDoubleList extends AbstractList<NSObject> implements RandomAccess {
+
+	/** The values */
+	final double[] values;
+
+	/**
+	 * Construct a new list which takes ownership of the array.
+	 * @param values	the values
+	 */
+	PackedDoubleList(double[] values) {
+		this.values = values;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public NSReal get(int index) {
+		return new NSReal(values[index]);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+Property List Parallel Converter - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Converts large maps and lists to {@link NSObject}s in parallel.</p>
+ *
+ * <p>The values of every map or list with at least {@link #threshold} entries
+ * are split into chunks of {@link #threshold} values, which are converted by the executor
+ * directly into the array backing the result.
+ * The calling thread converts the last chunk itself.
+ * Only the calling thread splits collections; nested collections within a chunk
+ * are converted sequentially by the thread which converts the chunk,
+ * so the tasks never wait for each other and any executor can be used.</p>
+ * @see NSObject#fromObject(Object, ExecutorService, int)
+ */
+final class ParallelConverter {
+
+	/** The executor */
+	private final ExecutorService executor;
+	/** The minimum size of collections which are converted in parallel, and the size of the chunks */
+	private final int threshold;
+	/** The interner used for keys, or <code>null</code> to disable interning */
+	private final KeyInterner keyInterner;
+
+	/**
+	 * Constructor.
+	 * @param executor	the executor
+	 * @param threshold	the minimum size of collections which are converted in parallel
+	 * @param keyInterner	the interner used for keys, or <code>null</code> to disable interning
+	 */
+	ParallelConverter(ExecutorService executor, int threshold, KeyInterner keyInterner) {
+		if (threshold < 1)
+			throw new IllegalArgumentException("threshold must be positive, was "+threshold);
+		this.executor = executor;
+		this.threshold = threshold;
+		this.keyInterner = keyInterner;
+	}
+
+	/**
+	 * Convert an object.
+	 * Maps and lists below the threshold are converted by this thread without recursion,
+	 * until a map or list of at least {@link #threshold} entries is found.
+	 * @param object	the object
+	 * @return	the NSObject
+	 */
+	NSObject convert(Object object) {
+		return ObjectConverter.fromObject(object, keyInterner, this);
+	}
+
+	/**
+	 * Convert a map or list in parallel if it has at least {@link #threshold} entries.
+	 * @param object	the map or list
+	 * @return	the NSCollection, or <code>null</code> if the map or list is too small
+	 */
+	@SuppressWarnings("unchecked")
+	NSCollection convertLarge(Object object) {
+		if (object instanceof Map && ((Map<?,?>) object).size() >= threshold)
+			return convertMap((Map<String,?>) object);
+		if (object instanceof List && ((List<?>) object).size() >= threshold)
+			return convertList((List<?>) object);
+		return null;
+	}
+
+	/**
+	 * Convert a large map in parallel.
+	 * Sorted maps with natural ordering are handed over to the dictionary without sorting them again;
+	 * the entries of other maps are sorted in place.
+	 * @param map	the map
+	 * @return	the dictionary
+	 */
+	private NSDictionary convertMap(Map<String,?> map) {
+		final int size = map.size();
+		final String[] keys = new String[size];
+		final Object[] values = new Object[size];
+		int i = 0;
+		for(Entry<String,?> e : map.entrySet()) {
+			keys[i] = internKey(e.getKey());
+			values[i] = e.getValue();
+			i++;
+		}
+		final NSObject[] converted = convertAll(values);
+		if (map instanceof SortedMap && ((SortedMap<String,?>) map).comparator() == null)
+			return new NSDictionary(new ArraySortedMap(keys, converted, size), false);
+		return new NSMutableDictionary(keys, converted, size).freeze();
+	}
+
+	/**
+	 * Convert a large list in parallel.
+	 * Lists of only integers or only reals are packed, like {@link NSMutableArray} packs them;
+	 * other lists are handed over to the array without copying them.
+	 * @param list	the list
+	 * @return	the array
+	 */
+	private NSArray convertList(List<?> list) {
+		final NSObject[] converted = convertAll(list.toArray());
+		final boolean integers = converted[0] instanceof NSInteger;
+		if (!integers && !(converted[0] instanceof NSReal))
+			return new NSArray(converted, false);
+		final long[] longs = integers ? new long[converted.length] : null;
+		final double[] doubles = integers ? null : new double[converted.length];
+		for(int i=0;i<converted.length;i++) {
+			if (integers && converted[i] instanceof NSInteger)
+				longs[i] = converted[i].toLong();
+			else if (!integers && converted[i] instanceof NSReal)
+				doubles[i] = converted[i].toDouble();
+			else
+				return new NSArray(converted, false);
+		}
+		return new NSArray(integers ? new PackedLongList(longs) : new PackedDoubleList(doubles));
+	}
+
+	/**
+	 * Convert values in chunks, using the executor for all chunks but the last.
+	 * @param values	the values
+	 * @return	the converted values
+	 */
+	private NSObject[] convertAll(final Object[] values) {
+		final NSObject[] result = new NSObject[values.length];
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			int from = 0;
+			for(;from+threshold<values.length;from+=threshold) {
+				final int start = from;
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() {
+						convertChunk(values, result, start, start+threshold);
+						return null;
+					}
+				}));
+			}
+			convertChunk(values, result, from, values.length);
+			for(Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while converting", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			// Does nothing if all chunks were converted
+			for(Future<?> future : futures)
+				future.cancel(false);
+		}
+		return result;
+	}
+
+	/**
+	 * Convert a chunk of values sequentially.
+	 * @param values	the values
+	 * @param result	the converted values
+	 * @param from	the first index, inclusive
+	 * @param to	the last index, exclusive
+	 */
+	private void convertChunk(Object[] values, NSObject[] result, int from, int to) {
+		for(int i=from;i<to;i++)
+			result[i] = NSObject.fromObject(values[i], keyInterner);
+	}
+
+	/**
+	 * Intern a key if a key interner is used.
+	 * @param key	the key
+	 * @return	the interned key
+	 */
+	private String internKey(String key) {
+		return keyInterner == null ? key : keyInterner.intern(key);
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+Property List Persistent List - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.sf.plist.AbstractImmutableSortedMap.ReadOnlyIterator;
+import net.sf.plist.PersistentTree.Node;
+import net.sf.plist.PersistentTree.NodeIterator;
+
+/**
+ * <p>Unmodifiable {@link List} backed by a persistent AVL tree indexed by position.</p>
+ *
+ * <p>{@link #with(int, NSObject)} and {@link #without(int)} return a new list in O(log n),
+ * which shares all but O(log n) nodes with this list.
+ * {@link #get(int)} costs O(log n) as well.</p>
+ * @see NSArray#with(int, NSObject)
+ */
+final class PersistentList extends AbstractList<NSObject> {
+
+	/** The root of the tree, or <code>null</code> if this list is empty */
+	private final Node root;
+
+	/**
+	 * Construct a new list.
+	 * @param root	the root of the tree
+	 */
+	private PersistentList(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Get a persistent list containing the elements of a list.
+	 * Returns <code>list</code> itself if it is persistent already, otherwise the elements are copied once in O(n).
+	 * @param list	the list
+	 * @return	the persistent list
+	 */
+	static PersistentList of(List<NSObject> list) {
+		if (list instanceof PersistentList)
+			return (PersistentList) list;
+		final NSObject[] values = list.toArray(new NSObject[list.size()]);
+		return new PersistentList(PersistentTree.build(null, values, 0, values.length));
+	}
+
+	/**
+	 * Throw an exception if an index is out of range.
+	 * @param index	the index
+	 * @param size	the highest allowed index plus one
+	 * @throws IndexOutOfBoundsException	if the index is out of range
+	 */
+	private static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+	}
+
+	/**
+	 * Get a list with an element replaced, or appended if <code>index</code> equals the size.
+	 * @param index	the index
+	 * @param value	the element
+	 * @return	the new list
+	 */
+	PersistentList with(int index, NSObject value) {
+		final int size = size();
+		checkIndex(index, size+1);
+		if (index == size)
+			return new PersistentList(PersistentTree.insertAt(root, index, value));
+		if (PersistentTree.getAt(root, index).value == value)
+			return this;
+		return new PersistentList(PersistentTree.setAt(root, index, value));
+	}
+
+	/**
+	 * Get a list with an element inserted before <code>index</code>.
+	 * @param index	the index, at most the size
+	 * @param value	the element
+	 * @return	the new list
+	 */
+	PersistentList insert(int index, NSObject value) {
+		checkIndex(index, size()+1);
+		return new PersistentList(PersistentTree.insertAt(root, index, value));
+	}
+
+	/**
+	 * Get a list without an element.
+	 * @param index	the index
+	 * @return	the new list
+	 */
+	PersistentList without(int index) {
+		checkIndex(index, size());
+		return new PersistentList(PersistentTree.removeAt(root, index));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public NSObject get(int index) {
+		checkIndex(index, size());
+		return PersistentTree.getAt(root, index).value;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return PersistentTree.size(root);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<NSObject> iterator() {
+		final NodeIterator nodes = new NodeIterator(root);
+		return new ReadOnlyIterator<NSObject>() {
+			public boolean hasNext() {
+				return nodes.hasNext();
+			}
+			public NSObject next() {
+				return nodes.next().value;
+			}
+		};
+	}
+
+}
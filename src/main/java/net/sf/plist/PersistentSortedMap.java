@@ -0,0 +1,238 @@
+/*
+Property List Persistent Sorted Map - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+
+import net.sf.plist.PersistentTree.Node;
+import net.sf.plist.PersistentTree.NodeIterator;
+
+/**
+ * <p>Unmodifiable {@link SortedMap} backed by a persistent AVL tree.</p>
+ *
+ * <p>{@link #with(String, NSObject)} and {@link #without(String)} return a new map in O(log n),
+ * which shares all but O(log n) nodes with this map.
+ * Sub maps are copied into an {@link ArraySortedMap}.</p>
+ * @see NSDictionary#with(String, NSObject)
+ */
+final class PersistentSortedMap extends AbstractImmutableSortedMap {
+
+	/** The empty map */
+	static final PersistentSortedMap EMPTY = new PersistentSortedMap(null);
+
+	/** The root of the tree, or <code>null</code> if this map is empty */
+	private final Node root;
+
+	/**
+	 * Construct a new map.
+	 * @param root	the root of the tree
+	 */
+	private PersistentSortedMap(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Get a persistent map containing the entries of a sorted map.
+	 * Returns <code>map</code> itself if it is persistent already, otherwise the entries are copied once in O(n).
+	 * @param map	the map, which must use the natural ordering of its keys
+	 * @return	the persistent map
+	 */
+	static PersistentSortedMap of(SortedMap<String,NSObject> map) {
+		if (map instanceof PersistentSortedMap)
+			return (PersistentSortedMap) map;
+		final int size = map.size();
+		final String[] keys = new String[size];
+		final NSObject[] values = new NSObject[size];
+		int i = 0;
+		for(Entry<String,NSObject> e : map.entrySet()) {
+			keys[i] = e.getKey();
+			values[i] = e.getValue();
+			i++;
+		}
+		return new PersistentSortedMap(PersistentTree.build(keys, values, 0, size));
+	}
+
+	/**
+	 * Get a map with a key associated with a value.
+	 * @param key	the key
+	 * @param value	the value
+	 * @return	the new map, or this map if the value was already associated with the key
+	 */
+	PersistentSortedMap with(String key, NSObject value) {
+		if (key == null)
+			throw new NullPointerException("key");
+		final Node result = PersistentTree.put(root, key, value);
+		return result == root ? this : new PersistentSortedMap(result);
+	}
+
+	/**
+	 * Get a map without a key.
+	 * @param key	the key
+	 * @return	the new map, or this map if the key is absent
+	 */
+	PersistentSortedMap without(String key) {
+		if (key == null)
+			throw new NullPointerException("key");
+		final Node result = PersistentTree.remove(root, key);
+		return result == root ? this : new PersistentSortedMap(result);
+	}
+
+	/**
+	 * Find the node of a key.
+	 * @param key	the key
+	 * @return	the node, or <code>null</code> if the key is absent
+	 */
+	private Node find(Object key) {
+		if (!(key instanceof String))
+			return null;
+		return PersistentTree.find(root, (String) key);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	long footprint() {
+		return 32+40L*size();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return PersistentTree.size(root);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean containsKey(Object key) {
+		return find(key) != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public NSObject get(Object key) {
+		final Node node = find(key);
+		return node == null ? null : node.value;
+	}
+
+	/** {@inheritDoc} */
+	public String firstKey() {
+		if (root == null)
+			throw new NoSuchElementException();
+		return PersistentTree.getAt(root, 0).key;
+	}
+
+	/** {@inheritDoc} */
+	public String lastKey() {
+		if (root == null)
+			throw new NoSuchElementException();
+		return PersistentTree.getAt(root, root.size-1).key;
+	}
+
+	/**
+	 * Copy the entries of a key range into a new map.
+	 * @param fromKey	the lowest key, inclusive, or <code>null</code>
+	 * @param toKey	the highest key, exclusive, or <code>null</code>
+	 * @return	the new map
+	 */
+	private SortedMap<String,NSObject> range(String fromKey, String toKey) {
+		final String[] keys = new String[size()];
+		final NSObject[] values = new NSObject[keys.length];
+		int size = 0;
+		for(NodeIterator it = new NodeIterator(root);it.hasNext();) {
+			final Node node = it.next();
+			if (fromKey != null && node.key.compareTo(fromKey) < 0)
+				continue;
+			if (toKey != null && node.key.compareTo(toKey) >= 0)
+				break;
+			keys[size] = node.key;
+			values[size] = node.value;
+			size++;
+		}
+		return new ArraySortedMap(keys, values, size);
+	}
+
+	/** {@inheritDoc} */
+	public SortedMap<String,NSObject> subMap(String fromKey, String toKey) {
+		if (fromKey.compareTo(toKey) > 0)
+			throw new IllegalArgumentException("fromKey > toKey");
+		return range(fromKey, toKey);
+	}
+
+	/** {@inheritDoc} */
+	public SortedMap<String,NSObject> headMap(String toKey) {
+		if (toKey == null)
+			throw new NullPointerException("toKey");
+		return range(null, toKey);
+	}
+
+	/** {@inheritDoc} */
+	public SortedMap<String,NSObject> tailMap(String fromKey) {
+		if (fromKey == null)
+			throw new NullPointerException("fromKey");
+		return range(fromKey, null);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	Iterator<Entry<String,NSObject>> entryIterator() {
+		final NodeIterator nodes = new NodeIterator(root);
+		return new ReadOnlyIterator<Entry<String,NSObject>>() {
+			public boolean hasNext() {
+				return nodes.hasNext();
+			}
+			public Entry<String,NSObject> next() {
+				final Node node = nodes.next();
+				return new SimpleImmutableEntry<String,NSObject>(node.key, node.value);
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	Iterator<String> keyIterator() {
+		final NodeIterator nodes = new NodeIterator(root);
+		return new ReadOnlyIterator<String>() {
+			public boolean hasNext() {
+				return nodes.hasNext();
+			}
+			public String next() {
+				return nodes.next().key;
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	Iterator<NSObject> valueIterator() {
+		final NodeIterator nodes = new NodeIterator(root);
+		return new ReadOnlyIterator<NSObject>() {
+			public boolean hasNext() {
+				return nodes.hasNext();
+			}
+			public NSObject next() {
+				return nodes.next().value;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,338 @@
+/*
+Property List Persistent Tree - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Operations on immutable AVL trees, in which every node knows the size of its subtree.</p>
+ *
+ * <p>Nodes are never modified. An update copies the O(log n) nodes on the path
+ * to the changed node and shares all other subtrees with the original tree,
+ * so old versions remain valid.
+ * Trees can be addressed by key, for {@link PersistentSortedMap},
+ * or by index, for {@link PersistentList}, whose nodes have no key.</p>
+ */
+final class PersistentTree {
+
+	/** This class only has static methods */
+	private PersistentTree() {}
+
+	/** Immutable tree node */
+	static final class Node {
+
+		/** The key, or <code>null</code> in indexed trees */
+		final String key;
+		/** The value */
+		final NSObject value;
+		/** The left subtree, or <code>null</code> */
+		final Node left;
+		/** The right subtree, or <code>null</code> */
+		final Node right;
+		/** The amount of nodes in this subtree */
+		final int size;
+		/** The height of this subtree */
+		final int height;
+
+		/**
+		 * Construct a new node.
+		 * @param key	the key
+		 * @param value	the value
+		 * @param left	the left subtree
+		 * @param right	the right subtree
+		 */
+		Node(String key, NSObject value, Node left, Node right) {
+			this.key = key;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+			this.size = size(left) + size(right) + 1;
+			this.height = Math.max(height(left), height(right)) + 1;
+		}
+
+	}
+
+	/**
+	 * Get the amount of nodes in a tree.
+	 * @param node	the root of the tree
+	 * @return	the amount of nodes
+	 */
+	static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	/**
+	 * Get the height of a tree.
+	 * @param node	the root of the tree
+	 * @return	the height
+	 */
+	private static int height(Node node) {
+		return node == null ? 0 : node.height;
+	}
+
+	/**
+	 * Construct a new node, rotating it when the heights of its subtrees differ more than one.
+	 * The heights of the subtrees may differ at most two.
+	 * @param key	the key
+	 * @param value	the value
+	 * @param left	the left subtree
+	 * @param right	the right subtree
+	 * @return	the root of the balanced tree
+	 */
+	private static Node balance(String key, NSObject value, Node left, Node right) {
+		final int difference = height(left) - height(right);
+		if (difference > 1) {
+			if (height(left.left) >= height(left.right))
+				return new Node(left.key, left.value, left.left, new Node(key, value, left.right, right));
+			return new Node(left.right.key, left.right.value,
+					new Node(left.key, left.value, left.left, left.right.left),
+					new Node(key, value, left.right.right, right));
+		}
+		if (difference < -1) {
+			if (height(right.right) >= height(right.left))
+				return new Node(right.key, right.value, new Node(key, value, left, right.left), right.right);
+			return new Node(right.left.key, right.left.value,
+					new Node(key, value, left, right.left.left),
+					new Node(right.key, right.value, right.left.right, right.right));
+		}
+		return new Node(key, value, left, right);
+	}
+
+	/**
+	 * Build a balanced tree from arrays in O(n).
+	 * @param keys	the keys, in ascending order without duplicates, or <code>null</code> for an indexed tree
+	 * @param values	the values
+	 * @param from	index of the first entry
+	 * @param to	index after the last entry
+	 * @return	the root of the tree, or <code>null</code> if the range is empty
+	 */
+	static Node build(String[] keys, NSObject[] values, int from, int to) {
+		if (from >= to)
+			return null;
+		final int middle = (from + to) >>> 1;
+		return new Node(keys == null ? null : keys[middle], values[middle],
+				build(keys, values, from, middle),
+				build(keys, values, middle+1, to));
+	}
+
+	/**
+	 * Find the node of a key.
+	 * @param node	the root of the tree
+	 * @param key	the key
+	 * @return	the node, or <code>null</code> if the key is absent
+	 */
+	static Node find(Node node, String key) {
+		while(node != null) {
+			final int comparison = key.compareTo(node.key);
+			if (comparison == 0)
+				return node;
+			node = comparison < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * Associate a value with a key.
+	 * @param node	the root of the tree
+	 * @param key	the key
+	 * @param value	the value
+	 * @return	the root of the new tree, which is <code>node</code> if the value was already associated with the key
+	 */
+	static Node put(Node node, String key, NSObject value) {
+		if (node == null)
+			return new Node(key, value, null, null);
+		final int comparison = key.compareTo(node.key);
+		if (comparison < 0) {
+			final Node left = put(node.left, key, value);
+			return left == node.left ? node : balance(node.key, node.value, left, node.right);
+		}
+		if (comparison > 0) {
+			final Node right = put(node.right, key, value);
+			return right == node.right ? node : balance(node.key, node.value, node.left, right);
+		}
+		if (node.value == value)
+			return node;
+		return new Node(key, value, node.left, node.right);
+	}
+
+	/**
+	 * Remove a key.
+	 * @param node	the root of the tree
+	 * @param key	the key
+	 * @return	the root of the new tree, which is <code>node</code> if the key is absent
+	 */
+	static Node remove(Node node, String key) {
+		if (node == null)
+			return null;
+		final int comparison = key.compareTo(node.key);
+		if (comparison < 0) {
+			final Node left = remove(node.left, key);
+			return left == node.left ? node : balance(node.key, node.value, left, node.right);
+		}
+		if (comparison > 0) {
+			final Node right = remove(node.right, key);
+			return right == node.right ? node : balance(node.key, node.value, node.left, right);
+		}
+		return join(node.left, node.right);
+	}
+
+	/**
+	 * Get the node at an index.
+	 * @param node	the root of the tree
+	 * @param index	the index, which must be in range
+	 * @return	the node
+	 */
+	static Node getAt(Node node, int index) {
+		for(;;) {
+			final int leftSize = size(node.left);
+			if (index == leftSize)
+				return node;
+			if (index < leftSize) {
+				node = node.left;
+			} else {
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Replace the value at an index.
+	 * @param node	the root of the tree
+	 * @param index	the index, which must be in range
+	 * @param value	the value
+	 * @return	the root of the new tree
+	 */
+	static Node setAt(Node node, int index, NSObject value) {
+		final int leftSize = size(node.left);
+		if (index < leftSize)
+			return new Node(node.key, node.value, setAt(node.left, index, value), node.right);
+		if (index > leftSize)
+			return new Node(node.key, node.value, node.left, setAt(node.right, index-leftSize-1, value));
+		return new Node(node.key, value, node.left, node.right);
+	}
+
+	/**
+	 * Insert a value before an index.
+	 * @param node	the root of the tree
+	 * @param index	the index, which may be equal to the size to append
+	 * @param value	the value
+	 * @return	the root of the new tree
+	 */
+	static Node insertAt(Node node, int index, NSObject value) {
+		if (node == null)
+			return new Node(null, value, null, null);
+		final int leftSize = size(node.left);
+		if (index <= leftSize)
+			return balance(node.key, node.value, insertAt(node.left, index, value), node.right);
+		return balance(node.key, node.value, node.left, insertAt(node.right, index-leftSize-1, value));
+	}
+
+	/**
+	 * Remove the value at an index.
+	 * @param node	the root of the tree
+	 * @param index	the index, which must be in range
+	 * @return	the root of the new tree
+	 */
+	static Node removeAt(Node node, int index) {
+		final int leftSize = size(node.left);
+		if (index < leftSize)
+			return balance(node.key, node.value, removeAt(node.left, index), node.right);
+		if (index > leftSize)
+			return balance(node.key, node.value, node.left, removeAt(node.right, index-leftSize-1));
+		return join(node.left, node.right);
+	}
+
+	/**
+	 * Join two trees whose heights differ at most one,
+	 * when all nodes of <code>left</code> come before those of <code>right</code>.
+	 * @param left	the left tree
+	 * @param right	the right tree
+	 * @return	the root of the joined tree
+	 */
+	private static Node join(Node left, Node right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		Node first = right;
+		while(first.left != null)
+			first = first.left;
+		return balance(first.key, first.value, left, removeAt(right, 0));
+	}
+
+	/**
+	 * Iterator over the nodes of a tree in order,
+	 * using an explicit stack of at most the height of the tree.
+	 */
+	static final class NodeIterator {
+
+		/** The nodes whose left subtree is being visited */
+		private final Node[] stack;
+		/** The amount of nodes on the stack */
+		private int depth = 0;
+
+		/**
+		 * Construct a new iterator.
+		 * @param root	the root of the tree
+		 */
+		NodeIterator(Node root) {
+			stack = new Node[height(root)];
+			pushLeft(root);
+		}
+
+		/**
+		 * Push a node and all its left descendants.
+		 * @param node	the node
+		 */
+		private void pushLeft(Node node) {
+			while(node != null) {
+				stack[depth++] = node;
+				node = node.left;
+			}
+		}
+
+		/**
+		 * Check whether there are more nodes.
+		 * @return	whether there are more nodes
+		 */
+		boolean hasNext() {
+			return depth > 0;
+		}
+
+		/**
+		 * Get the next node.
+		 * @return	the node
+		 * @throws NoSuchElementException	if there are no more nodes
+		 */
+		Node next() {
+			if (depth == 0)
+				throw new NoSuchElementException();
+			final Node result = stack[--depth];
+			stack[depth] = null;
+			pushLeft(result.right);
+			return result;
+		}
+
+	}
+
+}
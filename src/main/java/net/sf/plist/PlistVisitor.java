@@ -0,0 +1,69 @@
+/*
+Property List Visitor - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+/**
+ * <p>Callbacks for the nodes of a tree of {@link NSObject}s, as traversed by {@link PlistWalker}.</p>
+ *
+ * <p>Every node is passed to {@link #preVisit(Object, NSObject)} before its children.
+ * The children of a {@link NSCollection} are visited in order,
+ * after which the collection is passed to {@link #postVisit(Object, NSCollection)}.
+ * Each node is passed along with its key in its parent:
+ * a {@link String} for values of a {@link NSDictionary},
+ * an {@link Integer} for elements of a {@link NSArray},
+ * or <code>null</code> for the root.</p>
+ * @param <X>	the type of exception the callbacks can throw,
+ * 				which is passed on by {@link PlistWalker#walk(NSObject, PlistVisitor)}
+ * @see PlistWalker
+ */
+public interface PlistVisitor<X extends Exception> {
+
+	/** How the traversal continues after a callback */
+	enum Result {
+		/** Continue the traversal, entering the children of the node */
+		CONTINUE,
+		/** Continue the traversal, but skip the children of the node; the node is not post-visited */
+		SKIP_SUBTREE,
+		/** Stop the traversal immediately */
+		TERMINATE
+	}
+
+	/**
+	 * Visit a node before its children.
+	 * @param key	the key of the node in its parent, or <code>null</code> for the root
+	 * @param node	the node, which is <code>null</code> for missing values
+	 * @return	how the traversal continues
+	 * @throws X	to abort the traversal
+	 */
+	Result preVisit(Object key, NSObject node) throws X;
+
+	/**
+	 * Visit a collection after its children.
+	 * {@link Result#SKIP_SUBTREE} has the same effect as {@link Result#CONTINUE}.
+	 * @param key	the key of the collection in its parent, or <code>null</code> for the root
+	 * @param node	the collection
+	 * @return	how the traversal continues
+	 * @throws X	to abort the traversal
+	 */
+	Result postVisit(Object key, NSCollection node) throws X;
+
+}
@@ -0,0 +1,134 @@
+/*
+Property List Walker - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import net.sf.plist.PlistVisitor.Result;
+
+/**
+ * <p>Depth-first traversal of a tree of {@link NSObject}s.</p>
+ *
+ * <p>The walker keeps its position in an explicit stack on the heap instead of recursing,
+ * so arbitrarily deep trees can be traversed without enlarging the thread stack.
+ * The writers and {@link NSObject#toObject()} use it for that reason.</p>
+ * @see PlistVisitor
+ */
+public final class PlistWalker {
+
+	/** Position in a collection whose children are being visited */
+	private static final class Frame {
+		/** The collection */
+		final NSCollection node;
+		/** The key of the collection in its parent */
+		final Object key;
+		/** The entries, if the collection is a dictionary */
+		private final Iterator<Entry<String,NSObject>> entries;
+		/** The array, if the collection is an array */
+		private final NSArray array;
+		/** The index of the next element, if the collection is an array */
+		private int index = 0;
+		/** The key of the child returned by {@link #next()} */
+		Object childKey;
+
+		/**
+		 * Constructor.
+		 * @param node	the collection
+		 * @param key	the key of the collection in its parent
+		 */
+		Frame(NSCollection node, Object key) {
+			this.node = node;
+			this.key = key;
+			if (node instanceof NSDictionary) {
+				entries = ((NSDictionary) node).entrySet().iterator();
+				array = null;
+			} else {
+				entries = null;
+				array = (NSArray) node;
+			}
+		}
+
+		/**
+		 * Check whether there are more children.
+		 * @return	whether {@link #next()} returns a child
+		 */
+		boolean hasNext() {
+			return entries == null ? index < array.size() : entries.hasNext();
+		}
+
+		/**
+		 * Get the next child, and set {@link #childKey} to its key.
+		 * @return	the child
+		 */
+		NSObject next() {
+			if (entries == null) {
+				childKey = Integer.valueOf(index);
+				return array.get(index++);
+			}
+			final Entry<String,NSObject> e = entries.next();
+			childKey = e.getKey();
+			return e.getValue();
+		}
+	}
+
+	/** Utility class */
+	private PlistWalker() {}
+
+	/**
+	 * Traverse a tree depth-first.
+	 * @param root	the root of the tree
+	 * @param visitor	the callbacks
+	 * @param <X>	the type of exception the callbacks can throw
+	 * @return	<code>true</code> if the whole tree was traversed,
+	 * 			<code>false</code> if a callback returned {@link Result#TERMINATE}
+	 * @throws X	when a callback throws it, which ends the traversal
+	 */
+	public static <X extends Exception> boolean walk(NSObject root, PlistVisitor<X> visitor) throws X {
+		final Result rootResult = visitor.preVisit(null, root);
+		if (rootResult == Result.TERMINATE)
+			return false;
+		if (rootResult == Result.SKIP_SUBTREE || !(root instanceof NSCollection))
+			return true;
+		final List<Frame> stack = new ArrayList<Frame>();
+		stack.add(new Frame((NSCollection) root, null));
+		while(!stack.isEmpty()) {
+			final Frame top = stack.get(stack.size()-1);
+			if (top.hasNext()) {
+				final NSObject child = top.next();
+				final Result result = visitor.preVisit(top.childKey, child);
+				if (result == Result.TERMINATE)
+					return false;
+				if (result == Result.CONTINUE && child instanceof NSCollection)
+					stack.add(new Frame((NSCollection) child, top.childKey));
+			} else {
+				stack.remove(stack.size()-1);
+				if (visitor.postVisit(top.key, top.node) == Result.TERMINATE)
+					return false;
+			}
+		}
+		return true;
+	}
+
+}
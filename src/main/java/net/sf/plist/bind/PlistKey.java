@@ -1,5 +1,5 @@
 /*
-Property List Seekable - LGPL 3.0 licensed
+Property List Key - LGPL 3.0 licensed
 Copyright (C) 2012  Yørn de Jong
 
 This library is free software; you can redistribute it and/or
@@ -19,31 +19,30 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
 File is part of the Property List project.
 Project page on http://plist.sf.net/
 */
-package net.sf.plist.io.bin;
+package net.sf.plist.bind;
 
-import java.io.IOException;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 
 /**
- * Generic searchable interface, used internally by {@link BinaryParser} and {@link BinaryWriter}.
+ * <p>Sets the dictionary key of a bean property, when it differs from the property name.</p>
+ *
+ * <p>The annotation can be placed on either the getter or the setter, for example
+ * <code>@PlistKey("CFBundleIdentifier") public String getIdentifier()</code>.</p>
+ * @see PlistMapper
  */
-interface Seekable {
-
-	/** @see RandomAccessFile#read(byte[]) */
-	int read(byte[] bytes) throws IOException;
-	
-	/** @see RandomAccessFile#length() */
-	long length() throws IOException;
-	
-	/** @see RandomAccessFile#seek(long) */
-	void seek(long bytes) throws IOException;
-	
-	/** @see RandomAccessFile#close() */
-	void close() throws IOException;
-	
-	/** @see RandomAccessFile#read() */
-	int read() throws IOException;
-	
-	/** @see RandomAccessFile#readLong() */
-	long readLong() throws IOException;
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface PlistKey {
+
+	/**
+	 * The key in the dictionary.
+	 * @return	the key
+	 */
+	String value();
 
 }
@@ -0,0 +1,585 @@
+/*
+Property List Mapper - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.bind;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.plist.NSArray;
+import net.sf.plist.NSBoolean;
+import net.sf.plist.NSData;
+import net.sf.plist.NSDate;
+import net.sf.plist.NSDictionary;
+import net.sf.plist.NSInteger;
+import net.sf.plist.NSMutableArray;
+import net.sf.plist.NSMutableDictionary;
+import net.sf.plist.NSNumber;
+import net.sf.plist.NSObject;
+import net.sf.plist.NSReal;
+import net.sf.plist.NSString;
+
+/**
+ * <p>Binds {@link NSDictionary}s to Java beans and back.</p>
+ *
+ * <p>Every bean property with a public getter and setter is bound to the dictionary key
+ * with the same name, or the name given by {@link PlistKey}.
+ * Beans need a public constructor without arguments.
+ * Supported property types are the primitive types and their wrappers,
+ * {@link String}, {@link Date}, <code>byte[]</code>, enums (by name), {@link NSObject}s,
+ * {@link List}s and {@link Collection}s, {@link Map}s with {@link String} keys, and other beans.
+ * Elements of lists and maps can be of any supported type;
+ * untyped elements are converted with {@link NSObject#toObject()} and {@link NSObject#fromObject(Object)}.</p>
+ *
+ * <p>The properties of a class and the conversion of each property are resolved once,
+ * when the class is first bound, and cached in this mapper.
+ * Values are converted directly from and to the property lists,
+ * so no intermediate {@link Map}s or {@link List}s are created as with {@link NSObject#toObject()}.
+ * Missing keys and <code>null</code> values leave a property untouched, and <code>null</code> properties are not written.
+ * Conversion errors throw {@link IllegalArgumentException}.</p>
+ *
+ * <p>A mapper is thread-safe, and should be shared to make the most of its cache.</p>
+ */
+public final class PlistMapper {
+
+	/** Conversion between a property list value and a Java value of a specific type */
+	private static abstract class Converter {
+		/**
+		 * Convert a property list value.
+		 * @param value	the value, never <code>null</code>
+		 * @return	the Java value
+		 */
+		abstract Object read(NSObject value);
+		/**
+		 * Convert a Java value.
+		 * @param value	the value, never <code>null</code>
+		 * @return	the property list value
+		 */
+		abstract NSObject write(Object value);
+	}
+
+	/** A bound property of a bean */
+	private static final class Property {
+		/** The key in the dictionary */
+		final String key;
+		/** The getter */
+		final Method getter;
+		/** The setter */
+		final Method setter;
+		/** The conversion of the values */
+		final Converter converter;
+		/**
+		 * Constructor.
+		 * @param key	the key in the dictionary
+		 * @param getter	the getter
+		 * @param setter	the setter
+		 * @param converter	the conversion of the values
+		 */
+		Property(String key, Method getter, Method setter, Converter converter) {
+			this.key = key;
+			this.getter = getter;
+			this.setter = setter;
+			this.converter = converter;
+		}
+	}
+
+	/** The bound properties of a bean class */
+	private static final class Binding {
+		/** The constructor without arguments */
+		final Constructor<?> constructor;
+		/** The properties */
+		final Property[] properties;
+		/**
+		 * Constructor.
+		 * @param constructor	the constructor without arguments
+		 * @param properties	the properties
+		 */
+		Binding(Constructor<?> constructor, Property[] properties) {
+			this.constructor = constructor;
+			this.properties = properties;
+		}
+	}
+
+	/** The bindings of all classes which were bound before */
+	private final ConcurrentMap<Class<?>,Binding> bindings = new ConcurrentHashMap<Class<?>,Binding>();
+
+	/**
+	 * Create a bean from a dictionary.
+	 * @param dict	the dictionary
+	 * @param type	the class of the bean
+	 * @param <T>	the type of the bean
+	 * @return	the new bean
+	 * @throws IllegalArgumentException	when the class cannot be bound, or a value cannot be converted
+	 */
+	public <T> T read(NSDictionary dict, Class<T> type) {
+		return type.cast(readBean(dict, type));
+	}
+
+	/**
+	 * Create a dictionary from a bean.
+	 * @param bean	the bean
+	 * @return	the dictionary
+	 * @throws IllegalArgumentException	when the class cannot be bound, or a value cannot be converted
+	 */
+	public NSDictionary write(Object bean) {
+		return writeBean(bean);
+	}
+
+	/**
+	 * Create a bean from a dictionary.
+	 * @param dict	the dictionary
+	 * @param type	the class of the bean
+	 * @return	the new bean
+	 */
+	private Object readBean(NSDictionary dict, Class<?> type) {
+		final Binding binding = getBinding(type);
+		try {
+			final Object bean = binding.constructor.newInstance();
+			for(Property property : binding.properties) {
+				final NSObject value = dict.get(property.key);
+				if (value != null)
+					property.setter.invoke(bean, property.converter.read(value));
+			}
+			return bean;
+		} catch (InstantiationException e) {
+			throw new IllegalArgumentException("Cannot instantiate "+type.getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot instantiate "+type.getName(), e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalArgumentException("Binding "+type.getName()+" failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Create a dictionary from a bean.
+	 * @param bean	the bean
+	 * @return	the dictionary
+	 */
+	private NSDictionary writeBean(Object bean) {
+		final Binding binding = getBinding(bean.getClass());
+		final NSMutableDictionary result = new NSMutableDictionary(binding.properties.length);
+		try {
+			for(Property property : binding.properties) {
+				final Object value = property.getter.invoke(bean);
+				if (value != null)
+					result.put(property.key, property.converter.write(value));
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot read "+bean.getClass().getName(), e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalArgumentException("Binding "+bean.getClass().getName()+" failed", e.getCause());
+		}
+		return result.freeze();
+	}
+
+	/**
+	 * Get the binding of a class, resolving it if it was not bound before.
+	 * @param type	the class
+	 * @return	the binding
+	 */
+	private Binding getBinding(Class<?> type) {
+		Binding result = bindings.get(type);
+		if (result == null) {
+			// Resolving twice in a race is harmless, the bindings are equivalent
+			result = resolve(type);
+			final Binding previous = bindings.putIfAbsent(type, result);
+			if (previous != null)
+				result = previous;
+		}
+		return result;
+	}
+
+	/**
+	 * Resolve the properties of a class.
+	 * @param type	the class
+	 * @return	the binding
+	 */
+	private Binding resolve(Class<?> type) {
+		final Constructor<?> constructor;
+		final PropertyDescriptor[] descriptors;
+		try {
+			constructor = type.getConstructor();
+			descriptors = Introspector.getBeanInfo(type, Object.class).getPropertyDescriptors();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(type.getName()+" has no public constructor without arguments", e);
+		} catch (IntrospectionException e) {
+			throw new IllegalArgumentException("Cannot bind "+type.getName(), e);
+		}
+		final List<Property> properties = new ArrayList<Property>(descriptors.length);
+		for(PropertyDescriptor descriptor : descriptors) {
+			final Method getter = descriptor.getReadMethod();
+			final Method setter = descriptor.getWriteMethod();
+			if (getter == null || setter == null)
+				continue;
+			// Skips the access check on every call for public members of non-public classes
+			if (!Modifier.isPublic(type.getModifiers())) {
+				getter.setAccessible(true);
+				setter.setAccessible(true);
+			}
+			PlistKey key = getter.getAnnotation(PlistKey.class);
+			if (key == null)
+				key = setter.getAnnotation(PlistKey.class);
+			properties.add(new Property(key == null ? descriptor.getName() : key.value(),
+					getter, setter, getConverter(setter.getGenericParameterTypes()[0])));
+		}
+		return new Binding(constructor, properties.toArray(new Property[properties.size()]));
+	}
+
+	/**
+	 * Get the conversion for a type.
+	 * @param type	the type
+	 * @return	the conversion
+	 */
+	private Converter getConverter(Type type) {
+		if (type instanceof ParameterizedType) {
+			final ParameterizedType parameterized = (ParameterizedType) type;
+			final Type[] arguments = parameterized.getActualTypeArguments();
+			if (parameterized.getRawType() == List.class || parameterized.getRawType() == Collection.class)
+				return new ListConverter(getConverter(arguments[0]));
+			if (parameterized.getRawType() == Map.class && arguments[0] == String.class)
+				return new MapConverter(getConverter(arguments[1]));
+			return OBJECT;
+		}
+		if (!(type instanceof Class<?>))
+			return OBJECT;
+		final Class<?> c = (Class<?>) type;
+		if (c == String.class)
+			return STRING;
+		if (c == boolean.class || c == Boolean.class)
+			return BOOLEAN;
+		if (c == long.class || c == Long.class)
+			return LONG;
+		if (c == int.class || c == Integer.class)
+			return INT;
+		if (c == short.class || c == Short.class)
+			return SHORT;
+		if (c == byte.class || c == Byte.class)
+			return BYTE;
+		if (c == double.class || c == Double.class)
+			return DOUBLE;
+		if (c == float.class || c == Float.class)
+			return FLOAT;
+		if (c == Date.class)
+			return DATE;
+		if (c == byte[].class)
+			return DATA;
+		if (NSObject.class.isAssignableFrom(c))
+			return new NSObjectConverter(c);
+		if (c.isEnum())
+			return new EnumConverter(c);
+		if (c == Object.class || c == List.class || c == Collection.class || c == Map.class || c.isArray())
+			return OBJECT;
+		return new BeanConverter(c);
+	}
+
+	/**
+	 * Check the type of a property list value.
+	 * @param value	the value
+	 * @param type	the expected type
+	 * @return	<code>value</code>
+	 */
+	private static NSObject expect(NSObject value, Class<? extends NSObject> type) {
+		if (!type.isInstance(value))
+			throw new IllegalArgumentException("Expected "+type.getSimpleName()+", found "+value.getClass().getSimpleName());
+		return value;
+	}
+
+	/**
+	 * Read an integer in a range.
+	 * @param value	the value
+	 * @param min	the minimum
+	 * @param max	the maximum
+	 * @return	the integer
+	 */
+	private static long readInteger(NSObject value, long min, long max) {
+		final long result = expect(value, NSNumber.class).toLong();
+		if (result < min || result > max)
+			throw new IllegalArgumentException(result+" is out of range ["+min+", "+max+"]");
+		return result;
+	}
+
+	/** Conversion of untyped values */
+	private static final Converter OBJECT = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return value.toObject();
+		}
+		@Override
+		NSObject write(Object value) {
+			return NSObject.fromObject(value);
+		}
+	};
+	/** Conversion of {@link String}s */
+	private static final Converter STRING = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return ((NSString) expect(value, NSString.class)).getValue();
+		}
+		@Override
+		NSObject write(Object value) {
+			return NSString.valueOf((String) value);
+		}
+	};
+	/** Conversion of booleans */
+	private static final Converter BOOLEAN = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return Boolean.valueOf(expect(value, NSBoolean.class).isTrue());
+		}
+		@Override
+		NSObject write(Object value) {
+			return NSBoolean.valueOf(((Boolean) value).booleanValue());
+		}
+	};
+	/** Conversion of longs */
+	private static final Converter LONG = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return Long.valueOf(expect(value, NSNumber.class).toLong());
+		}
+		@Override
+		NSObject write(Object value) {
+			return NSInteger.valueOf(((Number) value).longValue());
+		}
+	};
+	/** Conversion of ints */
+	private static final Converter INT = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return Integer.valueOf((int) readInteger(value, Integer.MIN_VALUE, Integer.MAX_VALUE));
+		}
+		@Override
+		NSObject write(Object value) {
+			return NSInteger.valueOf(((Number) value).longValue());
+		}
+	};
+	/** Conversion of shorts */
+	private static final Converter SHORT = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return Short.valueOf((short) readInteger(value, Short.MIN_VALUE, Short.MAX_VALUE));
+		}
+		@Override
+		NSObject write(Object value) {
+			return NSInteger.valueOf(((Number) value).longValue());
+		}
+	};
+	/** Conversion of bytes */
+	private static final Converter BYTE = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return Byte.valueOf((byte) readInteger(value, Byte.MIN_VALUE, Byte.MAX_VALUE));
+		}
+		@Override
+		NSObject write(Object value) {
+			return NSInteger.valueOf(((Number) value).longValue());
+		}
+	};
+	/** Conversion of doubles */
+	private static final Converter DOUBLE = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return Double.valueOf(expect(value, NSNumber.class).toDouble());
+		}
+		@Override
+		NSObject write(Object value) {
+			return new NSReal(((Number) value).doubleValue());
+		}
+	};
+	/** Conversion of floats */
+	private static final Converter FLOAT = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return Float.valueOf((float) expect(value, NSNumber.class).toDouble());
+		}
+		@Override
+		NSObject write(Object value) {
+			return new NSReal(((Number) value).doubleValue());
+		}
+	};
+	/** Conversion of {@link Date}s */
+	private static final Converter DATE = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return ((NSDate) expect(value, NSDate.class)).getValue();
+		}
+		@Override
+		NSObject write(Object value) {
+			return new NSDate((Date) value);
+		}
+	};
+	/** Conversion of byte arrays */
+	private static final Converter DATA = new Converter() {
+		@Override
+		Object read(NSObject value) {
+			return expect(value, NSData.class).toBytes();
+		}
+		@Override
+		NSObject write(Object value) {
+			return new NSData(((byte[]) value).clone());
+		}
+	};
+
+	/** Conversion of {@link NSObject}s, which only checks the type */
+	private static final class NSObjectConverter extends Converter {
+		/** The type */
+		private final Class<?> type;
+		/**
+		 * Constructor.
+		 * @param type	the type
+		 */
+		NSObjectConverter(Class<?> type) {
+			this.type = type;
+		}
+		@Override
+		Object read(NSObject value) {
+			if (!type.isInstance(value))
+				throw new IllegalArgumentException("Expected "+type.getSimpleName()+", found "+value.getClass().getSimpleName());
+			return value;
+		}
+		@Override
+		NSObject write(Object value) {
+			return (NSObject) value;
+		}
+	}
+
+	/** Conversion of enums, by name */
+	private static final class EnumConverter extends Converter {
+		/** The enum class */
+		@SuppressWarnings("rawtypes")
+		private final Class type;
+		/**
+		 * Constructor.
+		 * @param type	the enum class
+		 */
+		EnumConverter(Class<?> type) {
+			this.type = type;
+		}
+		@Override
+		@SuppressWarnings("unchecked")
+		Object read(NSObject value) {
+			return Enum.valueOf(type, ((NSString) expect(value, NSString.class)).getValue());
+		}
+		@Override
+		NSObject write(Object value) {
+			return NSString.valueOf(((Enum<?>) value).name());
+		}
+	}
+
+	/** Conversion of lists */
+	private static final class ListConverter extends Converter {
+		/** The conversion of the elements */
+		private final Converter elements;
+		/**
+		 * Constructor.
+		 * @param elements	the conversion of the elements
+		 */
+		ListConverter(Converter elements) {
+			this.elements = elements;
+		}
+		@Override
+		Object read(NSObject value) {
+			final NSArray array = (NSArray) expect(value, NSArray.class);
+			final int size = array.size();
+			final List<Object> result = new ArrayList<Object>(size);
+			for(int i=0;i<size;i++) {
+				final NSObject element = array.get(i);
+				result.add(element == null ? null : elements.read(element));
+			}
+			return result;
+		}
+		@Override
+		NSObject write(Object value) {
+			final Collection<?> collection = (Collection<?>) value;
+			final NSMutableArray result = new NSMutableArray(collection.size());
+			for(Object element : collection)
+				result.add(element == null ? null : elements.write(element));
+			return result.freeze();
+		}
+	}
+
+	/** Conversion of maps with {@link String} keys */
+	private static final class MapConverter extends Converter {
+		/** The conversion of the values */
+		private final Converter values;
+		/**
+		 * Constructor.
+		 * @param values	the conversion of the values
+		 */
+		MapConverter(Converter values) {
+			this.values = values;
+		}
+		@Override
+		Object read(NSObject value) {
+			final Map<String,Object> result = new TreeMap<String,Object>();
+			for(Entry<String,NSObject> e : ((NSDictionary) expect(value, NSDictionary.class)).entrySet())
+				result.put(e.getKey(), e.getValue() == null ? null : values.read(e.getValue()));
+			return result;
+		}
+		@Override
+		NSObject write(Object value) {
+			final Map<?,?> map = (Map<?,?>) value;
+			final NSMutableDictionary result = new NSMutableDictionary(map.size());
+			for(Entry<?,?> e : map.entrySet())
+				if (e.getValue() != null)
+					result.put((String) e.getKey(), values.write(e.getValue()));
+			return result.freeze();
+		}
+	}
+
+	/** Conversion of nested beans, which are bound when first converted */
+	private final class BeanConverter extends Converter {
+		/** The class of the bean */
+		private final Class<?> type;
+		/**
+		 * Constructor.
+		 * @param type	the class of the bean
+		 */
+		BeanConverter(Class<?> type) {
+			this.type = type;
+		}
+		@Override
+		Object read(NSObject value) {
+			return readBean((NSDictionary) expect(value, NSDictionary.class), type);
+		}
+		@Override
+		NSObject write(Object value) {
+			return writeBean(value);
+		}
+	}
+
+}
@@ -0,0 +1,353 @@
+/*
+Property List Codec - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import net.sf.plist.KeyInterner;
+import net.sf.plist.NSObjectInterner;
+import net.sf.plist.NSObject;
+import net.sf.plist.io.bin.BinaryCodec;
+import net.sf.plist.io.domxml.DOMXMLCodec;
+
+/**
+ * <p>Converts property lists from and to trees consisting of {@link NSObject}s.</p>
+ *
+ * <p>Opposed to {@link PropertyListParser} and {@link PropertyListWriter},
+ * a codec is not bound to a single input or tree.
+ * It is configured once and can then be used any number of times, by any number of threads at once.
+ * When no format is configured, the format is detected by looking at the first bytes of the property list.
+ * Instances are immutable; the <code>with</code> methods return a copy with a different option.
+ * Builders, transformers and scratch buffers are kept per thread,
+ * so repeated calls do not pay for setting them up again.</p>
+ *
+ * <pre>
+ * PropertyListCodec codec = PropertyListCodec.BINARY.withKeyInterner(new KeyInterner(4096));
+ * NSObject root = codec.decode(file);
+ * codec.encode(root, stream);
+ * </pre>
+ * @see BinaryCodec
+ * @see DOMXMLCodec
+ */
+public final class PropertyListCodec {
+
+	/** Codec which detects the format while decoding and encodes using {@link PropertyListWriter#DEFAULTFORMAT} */
+	public static final PropertyListCodec DEFAULT = new PropertyListCodec(null);
+	/** Codec for binary property lists */
+	public static final PropertyListCodec BINARY = new PropertyListCodec(PropertyListFormat.BINARY);
+	/** Codec for XML property lists */
+	public static final PropertyListCodec XML = new PropertyListCodec(PropertyListFormat.XML);
+
+	/** The format, or <code>null</code> to detect it */
+	private final PropertyListFormat format;
+	/** The interner used for dictionary keys, or <code>null</code> */
+	private final KeyInterner keyInterner;
+	/** The interner used for parsed objects, or <code>null</code> */
+	private final NSObjectInterner objectInterner;
+	/** Whether XML output is indented */
+	private final boolean indent;
+	/** Whether binary output is canonical */
+	private final boolean canonical;
+	/** The codec for binary property lists */
+	private final BinaryCodec binary;
+	/** The codec for XML property lists */
+	private final DOMXMLCodec xml;
+
+	/**
+	 * Construct a new codec with default options.
+	 * @param format	the format, or <code>null</code> to detect the format while decoding
+	 */
+	public PropertyListCodec(PropertyListFormat format) {
+		this(format, null, null, true, false);
+	}
+
+	/**
+	 * Construct a new codec.
+	 * @param format	the format, or <code>null</code> to detect the format while decoding
+	 * @param keyInterner	the interner used for dictionary keys, or <code>null</code>
+	 * @param objectInterner	the interner used for parsed objects, or <code>null</code>
+	 * @param indent	whether XML output is indented
+	 * @param canonical	whether binary output is canonical
+	 */
+	private PropertyListCodec(PropertyListFormat format, KeyInterner keyInterner, NSObjectInterner objectInterner, boolean indent, boolean canonical) {
+		this.format = format;
+		this.keyInterner = keyInterner;
+		this.objectInterner = objectInterner;
+		this.indent = indent;
+		this.canonical = canonical;
+		this.binary = new BinaryCodec(this);
+		this.xml = new DOMXMLCodec(this);
+	}
+
+	/**
+	 * Get the format.
+	 * @return	the format, or <code>null</code> if the format is detected while decoding
+	 */
+	public PropertyListFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Get the interner used for dictionary keys.
+	 * @return	the interner, or <code>null</code> if keys are not interned
+	 */
+	public KeyInterner getKeyInterner() {
+		return keyInterner;
+	}
+
+	/**
+	 * Get the interner used for parsed objects.
+	 * @return	the interner, or <code>null</code> if objects are not interned
+	 */
+	public NSObjectInterner getObjectInterner() {
+		return objectInterner;
+	}
+
+	/**
+	 * Get whether XML output is indented.
+	 * @return	whether XML output is indented
+	 */
+	public boolean isIndent() {
+		return indent;
+	}
+
+	/**
+	 * Get whether binary output is canonical.
+	 * @return	whether binary output is canonical
+	 * @see #withCanonical(boolean)
+	 */
+	public boolean isCanonical() {
+		return canonical;
+	}
+
+	/**
+	 * Get a codec which uses another format.
+	 * @param format	the format, or <code>null</code> to detect the format while decoding
+	 * @return	the codec
+	 */
+	public PropertyListCodec withFormat(PropertyListFormat format) {
+		return new PropertyListCodec(format, keyInterner, objectInterner, indent, canonical);
+	}
+
+	/**
+	 * Get a codec which uses an interner for dictionary keys.
+	 * @param keyInterner	the interner, or <code>null</code> to disable interning
+	 * @return	the codec
+	 * @see PropertyListParser#setKeyInterner(KeyInterner)
+	 */
+	public PropertyListCodec withKeyInterner(KeyInterner keyInterner) {
+		return new PropertyListCodec(format, keyInterner, objectInterner, indent, canonical);
+	}
+
+	/**
+	 * Get a codec which interns every parsed object, so equal subtrees of all decoded property lists share one instance.
+	 * @param objectInterner	the interner, or <code>null</code> to disable interning
+	 * @return	the codec
+	 */
+	public PropertyListCodec withObjectInterner(NSObjectInterner objectInterner) {
+		return new PropertyListCodec(format, keyInterner, objectInterner, indent, canonical);
+	}
+
+	/**
+	 * Get a codec which does or does not indent XML output.
+	 * @param indent	whether XML output is indented
+	 * @return	the codec
+	 */
+	public PropertyListCodec withIndent(boolean indent) {
+		return new PropertyListCodec(format, keyInterner, objectInterner, indent, canonical);
+	}
+
+	/**
+	 * <p>Get a codec which does or does not write canonical binary property lists.</p>
+	 * <p>Canonical output depends only on the content of the tree:
+	 * equal trees always produce the same bytes, regardless of how they were built or which instances they share.
+	 * XML output is not affected.</p>
+	 * @param canonical	whether binary output is canonical
+	 * @return	the codec
+	 * @see BinaryCodec#isCanonical(ByteBuffer)
+	 */
+	public PropertyListCodec withCanonical(boolean canonical) {
+		return new PropertyListCodec(format, keyInterner, objectInterner, indent, canonical);
+	}
+
+	/**
+	 * Decode a Property List file.
+	 * @param file	the file to decode
+	 * @return	the root {@link NSObject} of the property list
+	 * @throws PropertyListException	when the file is not a valid property list
+	 * @throws IOException	when reading the file failed
+	 */
+	public NSObject decode(File file) throws PropertyListException, IOException {
+		if (file == null)
+			throw new NullPointerException("file");
+		switch(getFormat(file)) {
+			case BINARY: return binary.decode(file);
+			case XML: return xml.decode(file);
+		}
+		throw new IllegalStateException(); // unreachable
+	}
+
+	/**
+	 * <p>Decode a Property List InputStream.</p>
+	 * <p>Warning: This method will <b>not</b> explicitly close the {@link InputStream}.
+	 * The stream is consumed entirely.</p>
+	 * @param input	the InputStream to decode
+	 * @return	the root {@link NSObject} of the property list
+	 * @throws PropertyListException	when the input is not a valid property list
+	 * @throws IOException	when reading the input failed
+	 */
+	public NSObject decode(InputStream input) throws PropertyListException, IOException {
+		if (input == null)
+			throw new NullPointerException("input");
+		PropertyListFormat format = this.format;
+		if (format == null) {
+			if (!input.markSupported())
+				input = new BufferedInputStream(input);
+			final byte[] magic = new byte[BinaryCodec.MAGICLENGTH];
+			input.mark(magic.length);
+			int length = 0, read;
+			while(length < magic.length && (read = input.read(magic, length, magic.length-length)) >= 0)
+				length += read;
+			input.reset();
+			format = BinaryCodec.isBinary(ByteBuffer.wrap(magic, 0, length)) ? PropertyListFormat.BINARY : PropertyListFormat.XML;
+		}
+		switch(format) {
+			case BINARY: return binary.decode(input);
+			case XML: return xml.decode(input);
+		}
+		throw new IllegalStateException(); // unreachable
+	}
+
+	/**
+	 * Decode a Property List contained in a byte array.
+	 * The result does not share any content with the array.
+	 * @param data	the property list
+	 * @return	the root {@link NSObject} of the property list
+	 * @throws PropertyListException	when the data is not a valid property list
+	 */
+	public NSObject decode(byte[] data) throws PropertyListException {
+		if (data == null)
+			throw new NullPointerException("data");
+		if (format == PropertyListFormat.BINARY || format == null && BinaryCodec.isBinary(ByteBuffer.wrap(data)))
+			return binary.decode(data);
+		return decodeXML(data);
+	}
+
+	/**
+	 * <p>Decode the remaining bytes of a buffer, for example a memory mapped file.</p>
+	 * <p>Binary data objects in the result share their content with this buffer,
+	 * so the content of the buffer must not be modified while the result is in use.
+	 * The position and limit of the buffer are not modified.</p>
+	 * @param buffer	the buffer to decode
+	 * @return	the root {@link NSObject} of the property list
+	 * @throws PropertyListException	when the buffer does not contain a valid property list
+	 */
+	public NSObject decode(ByteBuffer buffer) throws PropertyListException {
+		if (buffer == null)
+			throw new NullPointerException("buffer");
+		if (format == PropertyListFormat.BINARY || format == null && BinaryCodec.isBinary(buffer))
+			return binary.decode(buffer);
+		final byte[] data = new byte[buffer.remaining()];
+		buffer.duplicate().get(data);
+		return decodeXML(data);
+	}
+
+	/**
+	 * Decode an XML Property List contained in a byte array.
+	 * @param data	the property list
+	 * @return	the root {@link NSObject} of the property list
+	 * @throws PropertyListException	when the data is not a valid property list
+	 */
+	private NSObject decodeXML(byte[] data) throws PropertyListException {
+		try {
+			return xml.decode(new ByteArrayInputStream(data));
+		} catch (IOException e) {
+			// ByteArrayInputStream does not throw IOExceptions
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * <p>Encode a tree to a property list and write it to a stream.</p>
+	 * <p>Opposed to {@link PropertyListWriter#write(OutputStream)}, the stream is <b>not</b> closed.</p>
+	 * @param root	the root of the tree
+	 * @param stream	the stream to write the property list to
+	 * @throws PropertyListException	when generating the property list fails
+	 * @throws IOException	when writing to the stream fails
+	 */
+	public void encode(NSObject root, OutputStream stream) throws PropertyListException, IOException {
+		if (stream == null)
+			throw new NullPointerException("stream");
+		switch(format == null ? PropertyListWriter.DEFAULTFORMAT : format) {
+			case BINARY: binary.encode(root, stream); break;
+			case XML: xml.encode(root, stream); break;
+		}
+	}
+
+	/**
+	 * Encode a tree to a property list and write it to a file.
+	 * If this codec has no format, the format of the existing file is used, which is detected by its first bytes;
+	 * new and empty files get {@link PropertyListWriter#DEFAULTFORMAT}.
+	 * @param root	the root of the tree
+	 * @param file	the file to write to
+	 * @throws PropertyListException	when generating the property list fails
+	 * @throws IOException	when writing to the file fails
+	 */
+	public void encode(NSObject root, File file) throws PropertyListException, IOException {
+		if (file == null)
+			throw new NullPointerException("file");
+		final PropertyListFormat format = this.format == null && file.length() == 0 ? PropertyListWriter.DEFAULTFORMAT : getFormat(file);
+		final OutputStream stream = new FileOutputStream(file);
+		try {
+			withFormat(format).encode(root, stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Get the format used to decode a file.
+	 * When this codec has no format, the first bytes of the file are inspected.
+	 * @param file	the file
+	 * @return	the format
+	 * @throws IOException	when reading the file failed
+	 */
+	private PropertyListFormat getFormat(File file) throws IOException {
+		if (format != null)
+			return format;
+		return BinaryCodec.isBinary(file) ? PropertyListFormat.BINARY : PropertyListFormat.XML;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "PropertyListCodec[format="+format+", keyInterner="+keyInterner+", objectInterner="+objectInterner+", indent="+indent+", canonical="+canonical+"]";
+	}
+
+}
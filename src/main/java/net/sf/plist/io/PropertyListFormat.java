@@ -22,8 +22,8 @@ Project page on http://plist.sf.net/
 package net.sf.plist.io;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This ENUM represents the different property list formats. 
@@ -35,7 +35,7 @@ public enum PropertyListFormat {
 	/** Represents the binary property list format */
 	BINARY;
 	
-	/** A cache containing the file format for previously read files */
-	protected final static Map<File,PropertyListFormat> FORMATS = new HashMap<File,PropertyListFormat>();
+	/** A cache containing the file format for previously read files, used by {@link PropertyListParser} and {@link PropertyListWriter} */
+	protected final static Map<File,PropertyListFormat> FORMATS = new ConcurrentHashMap<File,PropertyListFormat>();
 	
 }
@@ -26,7 +26,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
+import net.sf.plist.KeyInterner;
 import net.sf.plist.NSObject;
+import net.sf.plist.NSObjectInterner;
 import net.sf.plist.io.bin.BinaryParser;
 import net.sf.plist.io.domxml.DOMXMLParser;
 
@@ -39,6 +41,10 @@ public abstract class PropertyListParser {
 	protected final File file;
 	/**	The {@link InputStream} being parsed */
 	protected final InputStream input;
+	/** The interner used for dictionary keys, or <code>null</code> if keys are not interned */
+	protected KeyInterner keyInterner;
+	/** The interner used for parsed objects, or <code>null</code> if objects are not interned */
+	protected NSObjectInterner objectInterner;
 	
 	/**
 	 * Construct a new PropertyListParser which will parse a InputStream
@@ -63,6 +69,41 @@ public abstract class PropertyListParser {
 	 */
 	public abstract NSObject parse() throws PropertyListException;
 	
+	/**
+	 * Set the interner used for dictionary keys.
+	 * When the same {@link KeyInterner} is used for many parsers,
+	 * equal keys in all parse results share a single {@link String} instance.
+	 * Must be called before {@link #parse()}.
+	 * @param keyInterner	the interner, or <code>null</code> to disable interning (default)
+	 */
+	public void setKeyInterner(KeyInterner keyInterner) {
+		this.keyInterner = keyInterner;
+	}
+	/**
+	 * Get the interner used for dictionary keys.
+	 * @return	the interner, or <code>null</code> if keys are not interned
+	 */
+	public KeyInterner getKeyInterner() {
+		return keyInterner;
+	}
+	/**
+	 * Set the interner used for parsed objects.
+	 * When the same {@link NSObjectInterner} is used for many parsers,
+	 * equal subtrees in all parse results share a single instance.
+	 * Must be called before {@link #parse()}.
+	 * @param objectInterner	the interner, or <code>null</code> to disable interning (default)
+	 */
+	public void setObjectInterner(NSObjectInterner objectInterner) {
+		this.objectInterner = objectInterner;
+	}
+	/**
+	 * Get the interner used for parsed objects.
+	 * @return	the interner, or <code>null</code> if objects are not interned
+	 */
+	public NSObjectInterner getObjectInterner() {
+		return objectInterner;
+	}
+	
 	/**
 	 * Get the format for a Property List file.
 	 * If the file has not been read before, it will be read to determine the format.
@@ -0,0 +1,125 @@
+/*
+Property List Validator - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import net.sf.plist.NSObject;
+import net.sf.plist.io.bin.BinaryValidator;
+import net.sf.plist.io.domxml.XMLValidator;
+
+/**
+ * <p>Checks whether a property list is well-formed, without building a tree of {@link NSObject}s.</p>
+ *
+ * <p>This is considerably cheaper than {@link PropertyListParser#parse(File)}
+ * and should be used when the contents of a property list are not needed,
+ * for example to reject malformed uploads.
+ * The format is determined by looking at the first bytes of the property list.</p>
+ * @see BinaryValidator
+ * @see XMLValidator
+ */
+public final class PropertyListValidator {
+
+	/** Bytes at the start of every binary property list */
+	private static final byte[] BINARYMAGIC = "bplist".getBytes();
+
+	/** This class only has static methods */
+	private PropertyListValidator() {}
+
+	/**
+	 * Validate a Property List file.
+	 * @param file	the file to validate
+	 * @return	the report
+	 * @throws IOException	when reading the file failed
+	 */
+	public static ValidationReport validate(final File file) throws IOException {
+		if (file == null)
+			throw new NullPointerException("file");
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() > Integer.MAX_VALUE)
+				throw new IOException("File is too large to be validated: "+file);
+			final byte[] data = new byte[(int) raf.length()];
+			raf.readFully(data);
+			return validate(data);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * <p>Validate a Property List InputStream.</p>
+	 * <p>Warning: This method will <b>not</b> explicitly close the {@link InputStream}.
+	 * The stream is consumed entirely.</p>
+	 * @param input	the InputStream to validate
+	 * @return	the report
+	 * @throws IOException	when reading the input failed
+	 */
+	public static ValidationReport validate(final InputStream input) throws IOException {
+		if (input == null)
+			throw new NullPointerException("input");
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final byte[] chunk = new byte[8192];
+		int read;
+		while((read = input.read(chunk)) >= 0)
+			buffer.write(chunk, 0, read);
+		return validate(buffer.toByteArray());
+	}
+
+	/**
+	 * Validate a Property List contained in a byte array.
+	 * @param data	the property list
+	 * @return	the report
+	 */
+	public static ValidationReport validate(final byte[] data) {
+		if (data == null)
+			throw new NullPointerException("data");
+		if (isBinary(data))
+			return BinaryValidator.validate(data);
+		try {
+			return XMLValidator.validate(new ByteArrayInputStream(data));
+		} catch (IOException e) {
+			// ByteArrayInputStream does not throw IOExceptions
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Check whether data starts like a binary property list.
+	 * @param data	the property list
+	 * @return	whether the data should be validated as binary property list
+	 */
+	private static boolean isBinary(final byte[] data) {
+		if (data.length < BINARYMAGIC.length)
+			return false;
+		for(int i=0;i<BINARYMAGIC.length;i++)
+			if (data[i] != BINARYMAGIC[i])
+				return false;
+		return true;
+	}
+
+}
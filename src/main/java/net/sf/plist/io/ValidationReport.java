@@ -0,0 +1,107 @@
+/*
+Property List Validation Report - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a {@link PropertyListValidator} run.
+ * The report states which format was detected,
+ * how many objects were encountered and which problems were found.
+ * A property list is well-formed if and only if no problems were found.
+ */
+public final class ValidationReport {
+
+	/** Maximum amount of problems recorded, validation stops after this amount */
+	public static final int MAXPROBLEMS = 100;
+
+	/** The detected format */
+	private final PropertyListFormat format;
+	/** The amount of objects encountered */
+	private final int objectCount;
+	/** The problems found */
+	private final List<String> problems;
+
+	/**
+	 * Construct a new report.
+	 * @param format	the detected format, or <code>null</code> if the format could not be determined
+	 * @param objectCount	the amount of objects encountered
+	 * @param problems	the problems found, an empty list if the property list is well-formed
+	 */
+	public ValidationReport(PropertyListFormat format, int objectCount, List<String> problems) {
+		this.format = format;
+		this.objectCount = objectCount;
+		this.problems = Collections.unmodifiableList(new ArrayList<String>(problems));
+	}
+
+	/**
+	 * Whether the validated property list is well-formed.
+	 * @return	true if no problems were found
+	 */
+	public boolean isValid() {
+		return problems.isEmpty();
+	}
+
+	/**
+	 * Get the format of the validated property list.
+	 * @return	the format, or <code>null</code> if the format could not be determined
+	 */
+	public PropertyListFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Get the amount of objects encountered while validating.
+	 * For binary property lists this is the amount of objects in the offset table,
+	 * for XML property lists this is the amount of value elements.
+	 * @return	the amount of objects
+	 */
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * Get a human-readable description of every problem found.
+	 * At most {@value #MAXPROBLEMS} problems are reported.
+	 * @return	unmodifiable list of problems
+	 */
+	public List<String> getProblems() {
+		return problems;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(format == null ? "Unknown format" : format.toString());
+		sb.append(", ").append(objectCount).append(" objects, ");
+		if (problems.isEmpty())
+			return sb.append("valid").toString();
+		sb.append(problems.size()).append(" problems:");
+		for(String problem : problems)
+			sb.append("\n\t").append(problem);
+		return sb.toString();
+	}
+
+}
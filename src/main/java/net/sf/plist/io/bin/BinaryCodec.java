@@ -0,0 +1,1268 @@
+/*
+Property List Binary Codec - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.io.bin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.plist.*;
+import net.sf.plist.io.PropertyListCodec;
+import net.sf.plist.io.PropertyListException;
+
+/**
+ * <p>Converts binary property lists from and to trees consisting of {@link NSObject}s.</p>
+ *
+ * <p>A codec holds no state between calls and can be used by multiple threads at once.
+ * All state needed during a single call is kept in a decoder or encoder object, which is discarded afterwards.
+ * The input of files and streams is read into a scratch buffer which is kept per thread,
+ * so decoding small property lists does not allocate a new buffer every time.</p>
+ *
+ * <p>Objects are written in depth-first order starting at the root,
+ * where the keys of a dictionary directly follow the dictionary itself.
+ * Every string, including dictionary keys, every number and every other object is written once,
+ * and later occurrences of an equal object refer to the first.
+ * With {@link PropertyListCodec#withCanonical(boolean) canonical} output,
+ * object references and offsets use the least amount of bytes possible,
+ * so the output is fully determined by the content of the tree.</p>
+ * @see PropertyListCodec
+ */
+public final class BinaryCodec implements BinaryFields {
+
+	/** Amount of bytes needed to recognize a binary property list */
+	public static final int MAGICLENGTH = STARTMAGIC.length;
+	/** Initial size of the scratch buffers */
+	private static final int SCRATCHSIZE = 8192;
+	/** Largest scratch buffer which is kept for the next call */
+	private static final int MAXPOOLED = 1<<20;
+	/** Per thread buffer used to read input */
+	private static final ThreadLocal<byte[]> READBUFFER = new ThreadLocal<byte[]>();
+	/** Per thread buffer used to collect output */
+	private static final ThreadLocal<byte[]> WRITEBUFFER = new ThreadLocal<byte[]>();
+
+	/** The options */
+	private final PropertyListCodec options;
+
+	/**
+	 * Construct a new codec.
+	 * Usually, {@link PropertyListCodec} should be used instead.
+	 * @param options	the codec holding the options
+	 */
+	public BinaryCodec(PropertyListCodec options) {
+		if (options == null)
+			throw new NullPointerException("options");
+		this.options = options;
+	}
+
+	/**
+	 * Check whether a buffer starts like a binary property list.
+	 * The position of the buffer is not modified.
+	 * @param buffer	the buffer
+	 * @return	whether the remaining bytes start with the magic bytes of a binary property list
+	 */
+	public static boolean isBinary(ByteBuffer buffer) {
+		if (buffer.remaining() < MAGICLENGTH)
+			return false;
+		for(int i=0;i<MAGICLENGTH;i++)
+			if (buffer.get(buffer.position()+i) != STARTMAGIC[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Check whether a file starts like a binary property list.
+	 * @param file	the file
+	 * @return	whether the file starts with the magic bytes of a binary property list
+	 * @throws IOException	when reading the file failed
+	 */
+	public static boolean isBinary(File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final byte[] magic = new byte[MAGICLENGTH];
+			final int read = raf.read(magic);
+			return read == MAGICLENGTH && isBinary(ByteBuffer.wrap(magic));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * <p>Check whether a buffer contains a canonical binary property list,
+	 * as written by a codec with {@link PropertyListCodec#withCanonical(boolean) canonical} output.</p>
+	 * <p>There is no structural shortcut: the whole property list is decoded into a tree of objects
+	 * and encoded again, including the sorting and deduplication canonical output requires.
+	 * The check therefore costs as much time and memory as a full decode followed by a canonical encode.
+	 * Only the encoded output is not kept, because it is compared with the buffer as it is written,
+	 * which stops the encoder at the first difference.
+	 * The position and limit of the buffer are not modified.</p>
+	 * @param buffer	the buffer
+	 * @return	whether the remaining bytes are a canonical binary property list,
+	 * <code>false</code> if they are not a valid binary property list or cannot be decoded for any other reason
+	 */
+	public static boolean isCanonical(ByteBuffer buffer) {
+		if (!isBinary(buffer))
+			return false;
+		final BinaryCodec codec = new BinaryCodec(PropertyListCodec.BINARY.withCanonical(true));
+		final byte[] scratch = takeScratch(WRITEBUFFER, SCRATCHSIZE);
+		try {
+			final CompareStream stream = new CompareStream(buffer);
+			codec.new Encoder(stream, scratch).encode(codec.new Decoder(buffer, true).decode());
+			return stream.isComplete();
+		} catch (PropertyListException e) {
+			return false;
+		} catch (IOException e) {
+			// Thrown by the stream at the first difference
+			return false;
+		} catch (RuntimeException e) {
+			// Malformed data the decoder does not report as a PropertyListException
+			return false;
+		} finally {
+			releaseScratch(WRITEBUFFER, scratch);
+		}
+	}
+
+	/**
+	 * Check whether a file contains a canonical binary property list.
+	 * @param file	the file
+	 * @return	whether the file is a canonical binary property list
+	 * @throws IOException	when reading the file failed
+	 * @see #isCanonical(ByteBuffer)
+	 */
+	public static boolean isCanonical(File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() > Integer.MAX_VALUE)
+				return false;
+			final int length = (int) raf.length();
+			final byte[] buffer = takeScratch(READBUFFER, length);
+			raf.readFully(buffer, 0, length);
+			try {
+				return isCanonical(ByteBuffer.wrap(buffer, 0, length));
+			} finally {
+				releaseScratch(READBUFFER, buffer);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Get a scratch buffer.
+	 * @param pool	the pool
+	 * @param minSize	the minimum size of the buffer
+	 * @return	the buffer
+	 */
+	private static byte[] takeScratch(ThreadLocal<byte[]> pool, int minSize) {
+		final byte[] result = pool.get();
+		if (result != null && result.length >= minSize)
+			return result;
+		return new byte[Math.max(minSize, SCRATCHSIZE)];
+	}
+
+	/**
+	 * Return a scratch buffer to the pool, unless it is too large to keep around.
+	 * @param pool	the pool
+	 * @param buffer	the buffer
+	 */
+	private static void releaseScratch(ThreadLocal<byte[]> pool, byte[] buffer) {
+		if (buffer.length <= MAXPOOLED)
+			pool.set(buffer);
+	}
+
+	/**
+	 * Decode a binary property list file.
+	 * @param file	the file
+	 * @return	the root {@link NSObject}
+	 * @throws PropertyListException	when the file is not a valid binary property list
+	 * @throws IOException	when reading the file failed
+	 */
+	public NSObject decode(File file) throws PropertyListException, IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() > Integer.MAX_VALUE)
+				throw new PropertyListException("File is too large to be parsed: "+file);
+			final int length = (int) raf.length();
+			final byte[] buffer = takeScratch(READBUFFER, length);
+			raf.readFully(buffer, 0, length);
+			try {
+				return new Decoder(ByteBuffer.wrap(buffer, 0, length), false).decode();
+			} finally {
+				releaseScratch(READBUFFER, buffer);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * <p>Decode a binary property list stream.</p>
+	 * <p>Warning: This method will <b>not</b> explicitly close the {@link InputStream}.
+	 * The stream is consumed entirely.</p>
+	 * @param input	the stream
+	 * @return	the root {@link NSObject}
+	 * @throws PropertyListException	when the input is not a valid binary property list
+	 * @throws IOException	when reading the input failed
+	 */
+	public NSObject decode(InputStream input) throws PropertyListException, IOException {
+		byte[] buffer = takeScratch(READBUFFER, 0);
+		int length = 0, read;
+		while((read = input.read(buffer, length, buffer.length-length)) >= 0) {
+			length += read;
+			if (length == buffer.length) {
+				if (length > Integer.MAX_VALUE/2)
+					throw new PropertyListException("Input is too large to be parsed.");
+				buffer = Arrays.copyOf(buffer, 2*length);
+			}
+		}
+		try {
+			return new Decoder(ByteBuffer.wrap(buffer, 0, length), false).decode();
+		} finally {
+			releaseScratch(READBUFFER, buffer);
+		}
+	}
+
+	/**
+	 * Decode a binary property list contained in a byte array.
+	 * The result does not share any content with the array.
+	 * @param data	the property list
+	 * @return	the root {@link NSObject}
+	 * @throws PropertyListException	when the data is not a valid binary property list
+	 */
+	public NSObject decode(byte[] data) throws PropertyListException {
+		return new Decoder(ByteBuffer.wrap(data), false).decode();
+	}
+
+	/**
+	 * <p>Decode the remaining bytes of a buffer, for example a memory mapped file.</p>
+	 * <p>Data objects in the result are slices of this buffer instead of copies,
+	 * so the content of the buffer must not be modified while the result is in use.
+	 * The position and limit of the buffer are not modified.</p>
+	 * @param buffer	the buffer
+	 * @return	the root {@link NSObject}
+	 * @throws PropertyListException	when the buffer does not contain a valid binary property list
+	 */
+	public NSObject decode(ByteBuffer buffer) throws PropertyListException {
+		return new Decoder(buffer, true).decode();
+	}
+
+	/**
+	 * <p>Encode a tree to a binary property list.</p>
+	 * <p>The stream is <b>not</b> closed.</p>
+	 * @param root	the root of the tree
+	 * @param stream	the stream to write the property list to
+	 * @throws PropertyListException	when the tree contains objects that cannot be written
+	 * @throws IOException	when writing to the stream fails
+	 */
+	public void encode(NSObject root, OutputStream stream) throws PropertyListException, IOException {
+		final byte[] buffer = takeScratch(WRITEBUFFER, SCRATCHSIZE);
+		try {
+			new Encoder(stream, buffer).encode(root);
+		} finally {
+			releaseScratch(WRITEBUFFER, buffer);
+		}
+	}
+
+	/**
+	 * Get amount of bytes required to represent a long
+	 * @param l the long
+	 * @return the amount of bytes required
+	 */
+	static byte getLongLength(long l) {
+		if (l == 0)
+			return 1;
+		if (l < 0)
+			return 8;
+		byte result = 0;
+		while(l != 0) {
+			l >>= 8;
+			result++;
+		}
+		return result;
+	}
+
+	/**
+	 * Calculate the 2log of a long, rounded up to the nearest integer or minimal result
+	 * @param l the long
+	 * @return the 2log
+	 */
+	static byte log2ceil(long l) {
+		for(byte i=0;i<63;i++)
+			if (l <= 1L<<i)
+				return i;
+		return 64;
+	}
+
+	/** State of a single decode call */
+	private final class Decoder {
+
+		/** The property list, starting at index 0 */
+		private final ByteBuffer data;
+		/** View on the data used to copy ranges */
+		private final ByteBuffer reader;
+		/** Whether data objects share their content with the input */
+		private final boolean share;
+		/** Size of object references in bytes */
+		private int objRefSize;
+		/** The offset table */
+		private int[] offsetTable;
+		/** Decoded dictionary keys, indexed by object reference */
+		private String[] keyCache;
+		/** Whether an object is a collection on {@link #stack}, indexed by object reference */
+		private boolean[] pending;
+		/** The collections which are being parsed, the outermost first */
+		private final List<Frame> stack = new ArrayList<Frame>();
+		/** Start address of the content of the object which length was read last */
+		private int contentAddr;
+
+		/**
+		 * Construct a new decoder.
+		 * @param data	the property list
+		 * @param share	whether data objects share their content with the input
+		 */
+		Decoder(ByteBuffer data, boolean share) {
+			this.data = data.slice();
+			this.reader = this.data.duplicate();
+			this.share = share;
+		}
+
+		/**
+		 * Decode the property list.
+		 * @return	the root {@link NSObject}
+		 * @throws PropertyListException	when the data is not a valid binary property list
+		 */
+		NSObject decode() throws PropertyListException {
+			try {
+				final int size = data.limit();
+				if (size < MAGICLENGTH+TRAILERSIZE || !isBinary(data))
+					throw new PropertyListException("File is not a binary property list.");
+				final int trailer = size-TRAILERSIZE;
+				for(int i=0;i<ENDMAGIC.length;i++)
+					if (data.get(trailer+i) != ENDMAGIC[i])
+						throw new PropertyListException("File is not a binary property list.");
+
+				// Read metadata
+				final int offsetEntrySize = data.get(trailer+6)&0xFF;
+				objRefSize = data.get(trailer+7)&0xFF;
+				final long numObjects = readLong(trailer+8, 8);
+				final long topObject = readLong(trailer+16, 8);
+				final long offsetTableOffset = readLong(trailer+24, 8);
+				if (offsetEntrySize < 1 || offsetEntrySize > 8 || objRefSize < 1 || objRefSize > 8
+						|| numObjects < 1 || numObjects > trailer || topObject < 0 || topObject >= numObjects
+						|| offsetTableOffset < MAGICLENGTH || offsetTableOffset+numObjects*offsetEntrySize > trailer)
+					throw new PropertyListException("Invalid trailer in binary property list.");
+
+				// Read offset table
+				offsetTable = new int[(int) numObjects];
+				for(int i=0;i<offsetTable.length;i++) {
+					final long offset = readLong((int) offsetTableOffset+i*offsetEntrySize, offsetEntrySize);
+					if (offset < MAGICLENGTH || offset >= offsetTableOffset)
+						throw new PropertyListException("Invalid offset for object "+i+": "+offset);
+					offsetTable[i] = (int) offset;
+				}
+				keyCache = new String[offsetTable.length];
+				pending = new boolean[offsetTable.length];
+				return parseObject((int) topObject);
+			} catch (IndexOutOfBoundsException e) {
+				throw new PropertyListException("Unable to parse binary property list", e);
+			}
+		}
+
+		/**
+		 * Read a big endian number.
+		 * Numbers of less than 8 bytes are unsigned.
+		 * @param addr	the address
+		 * @param size	the amount of bytes, at most 8
+		 * @return	the number
+		 */
+		private long readLong(int addr, int size) {
+			long l = 0;
+			for(int i=0;i<size;i++)
+				l = (l << 8) | (data.get(addr+i)&0xFFL);
+			return l;
+		}
+
+		/**
+		 * Read an object reference.
+		 * @param addr	the address
+		 * @return	the object reference
+		 * @throws PropertyListException	when the reference is out of range
+		 */
+		private int readRef(int addr) throws PropertyListException {
+			final long ref = readLong(addr, objRefSize);
+			if (ref < 0 || ref >= offsetTable.length)
+				throw new PropertyListException("Invalid object reference: "+ref);
+			return (int) ref;
+		}
+
+		/**
+		 * Copy a range of the data.
+		 * @param addr	the start address
+		 * @param length	the amount of bytes
+		 * @return	the copy
+		 */
+		private byte[] copy(int addr, int length) throws PropertyListException {
+			checkRange(addr, length);
+			final byte[] result = new byte[length];
+			reader.position(addr);
+			reader.get(result);
+			return result;
+		}
+
+		/**
+		 * Check whether a range lies within the data.
+		 * @param addr	the start address
+		 * @param length	the amount of bytes
+		 * @throws PropertyListException	when the range exceeds the data
+		 */
+		private void checkRange(int addr, long length) throws PropertyListException {
+			if (length < 0 || addr+length > data.limit())
+				throw new PropertyListException("Premature end of file.");
+		}
+
+		/**
+		 * <p>Parse the object with a given object reference.</p>
+		 * <p>Collections are not parsed recursively: each array or dictionary is pushed on {@link #stack}
+		 * with the references to its values, which are parsed one by one.
+		 * A collection is completed and added to its parent when all of its values have been parsed,
+		 * so the depth of the tree is only limited by the heap.</p>
+		 * @param ref	the object reference
+		 * @return	the NSObject
+		 * @throws PropertyListException	when parsing fails
+		 */
+		private NSObject parseObject(int ref) throws PropertyListException {
+			NSObject result = startObject(ref);
+			while(!stack.isEmpty()) {
+				final Frame top = stack.get(stack.size()-1);
+				if (top.index == top.length) {
+					stack.remove(stack.size()-1);
+					pending[top.ref] = false;
+					final NSObject done = intern(top.freeze());
+					if (stack.isEmpty())
+						result = done;
+					else
+						stack.get(stack.size()-1).add(done);
+					continue;
+				}
+				final int child = top.nextRef();
+				if (top.array != null && top.addNumber(offsetTable[child]))
+					continue;
+				final int depth = stack.size();
+				final NSObject value = startObject(child);
+				if (stack.size() == depth)
+					top.add(value);
+			}
+			return result;
+		}
+
+		/**
+		 * Parse an object, or push it on {@link #stack} if it is a collection.
+		 * @param ref	the object reference
+		 * @return	the NSObject, or <code>null</code> if a collection was pushed
+		 * @throws PropertyListException	when parsing fails, or the collection contains itself
+		 */
+		private NSObject startObject(int ref) throws PropertyListException {
+			final int addr = offsetTable[ref];
+			final int identifier = data.get(addr)&0xFF;
+			final int type = identifier>>4;
+			if (type != ARRAY && type != DICT)
+				return intern(parseNode(addr));
+			if (pending[ref])
+				throw new PropertyListException("Collection "+ref+" contains itself.");
+			final int length = getLength(addr, identifier&LENMASK);
+			stack.add(new Frame(ref, type == DICT, length, contentAddr));
+			pending[ref] = true;
+			return null;
+		}
+
+		/**
+		 * Intern a parsed object if the options contain an {@link NSObjectInterner}.
+		 * @param obj	the object
+		 * @return	the canonical instance, or <code>obj</code> if objects are not interned
+		 */
+		private NSObject intern(NSObject obj) {
+			final NSObjectInterner objectInterner = options.getObjectInterner();
+			return objectInterner == null ? obj : objectInterner.intern(obj);
+		}
+
+		/**
+		 * Parse a node which is not a collection to a NSObject on a given start address
+		 * @param addr the start address
+		 * @return the NSObject
+		 * @throws PropertyListException when parsing fails
+		 */
+		private NSObject parseNode(int addr) throws PropertyListException {
+			final int identifier = data.get(addr)&0xFF;
+			final int length = identifier&LENMASK;
+			final int type = identifier>>4;
+
+			if (type == NULL) switch(length) { // In this case, length is the actual value
+				case NULL: return null;
+				case BOOLTRUE: return NSBoolean.TRUE;
+				case BOOLFALSE: return NSBoolean.FALSE;
+			}
+			switch(type) {
+				case INT: return NSInteger.valueOf(readNumber(addr+1, length));
+				case REAL: return new NSReal(readReal(addr+1, length));
+				case DATE: return new NSDate(Double.longBitsToDouble(readLong(addr+1, 8)));
+				case DATA: return parseData(getLength(addr, length));
+				case ASCIISTRING: return parseString(getLength(addr, length), false);
+				case UNICODESTRING: return parseString(getLength(addr, length), true);
+				case UID: return parseUid(addr+1, length);
+				case SET: throw new PropertyListException("Unsupported objectclass NSSet: "+Integer.toString(identifier, 16).toUpperCase());
+			}
+			throw new PropertyListException("Invalid objectclass: "+Integer.toString(identifier, 16).toUpperCase());
+		}
+
+		/**
+		 * Read an integer of 2^length bytes.
+		 * Integers of 16 bytes are truncated to their lowest 8 bytes.
+		 * @param addr	the address
+		 * @param length	the length bits
+		 * @return	the integer
+		 * @throws PropertyListException	when the length is invalid
+		 */
+		private long readNumber(int addr, int length) throws PropertyListException {
+			if (length > 4)
+				throw new PropertyListException("Integers cannot be longer than 16 bytes (max length value: 4, given: "+length+")");
+			final int size = 1<<length;
+			return size > 8 ? readLong(addr+size-8, 8) : readLong(addr, size);
+		}
+
+		/**
+		 * Read a real of 2^length bytes.
+		 * 4 byte reals are single precision floats;
+		 * 1 and 2 byte reals are truncated doubles as written by earlier versions of this library.
+		 * @param addr	the address
+		 * @param length	the length bits
+		 * @return	the real
+		 * @throws PropertyListException	when the length is invalid
+		 */
+		private double readReal(int addr, int length) throws PropertyListException {
+			if (length > 3)
+				throw new PropertyListException("Reals cannot be longer than 8 bytes (max length value: 3, given: "+length+")");
+			if (length == 2)
+				return Float.intBitsToFloat((int) readLong(addr, 4));
+			return Double.longBitsToDouble(readLong(addr, 1<<length));
+		}
+
+		/**
+		 * Parse a data object.
+		 * @param length	the length of the data, the data starts at {@link #contentAddr}
+		 * @return	the NSData
+		 */
+		private NSData parseData(int length) throws PropertyListException {
+			checkRange(contentAddr, length);
+			if (length == 0)
+				return NSData.EMPTY;
+			if (!share)
+				return new NSData(copy(contentAddr, length));
+			final ByteBuffer slice = data.duplicate();
+			slice.limit(contentAddr+length).position(contentAddr);
+			return new NSData(slice);
+		}
+
+		/**
+		 * Parse a string.
+		 * @param length	the amount of characters, the characters start at {@link #contentAddr}
+		 * @param unicode	whether the string is encoded as UTF-16 instead of ASCII
+		 * @return	the NSString
+		 * @throws PropertyListException	when the string exceeds the data
+		 */
+		private NSString parseString(int length, boolean unicode) throws PropertyListException {
+			if (unicode)
+				return NSString.fromUTF16(copy(contentAddr, 2*length));
+			return NSString.fromASCII(copy(contentAddr, length));
+		}
+
+		/**
+		 * Parse a NSUID. No documentation has been found on how to parse these.
+		 * By generating a couple of files with a binary editor and checking them with Apple Quicklook,
+		 * it appears that the length bits are equal to the amount of bytes minus one.
+		 * @param addr	the address of the value
+		 * @param length	the length bits
+		 * @return	the NSUID
+		 * @throws PropertyListException	when the length is invalid
+		 */
+		private NSUID parseUid(int addr, int length) throws PropertyListException {
+			if (length > 3)
+				throw new PropertyListException("An NSUID cannot be longer than 4 bytes (max length value: 3, given: "+length+")");
+			return new NSUID(readLong(addr, length+1));
+		}
+
+		/**
+		 * Parse a dictionary key.
+		 * Keys are usually shared between dictionaries,
+		 * so every key object is decoded only once.
+		 * @param keyRef the object reference of the key
+		 * @return the key
+		 * @throws PropertyListException when parsing fails
+		 */
+		private String parseKey(int keyRef) throws PropertyListException {
+			String key = keyCache[keyRef];
+			if (key == null) {
+				final int type = (data.get(offsetTable[keyRef])&0xFF)>>4;
+				if (type == ARRAY || type == DICT)
+					throw new PropertyListException("Dictionary key cannot be a collection.");
+				final NSObject node = parseNode(offsetTable[keyRef]);
+				final KeyInterner keyInterner = options.getKeyInterner();
+				if (keyInterner != null && node instanceof NSString)
+					key = keyInterner.intern((NSString) node);
+				else if (node != null)
+					key = node.toString();
+				else
+					throw new PropertyListException("Dictionary key cannot be null.");
+				keyCache[keyRef] = key;
+			}
+			return key;
+		}
+
+		/**
+		 * <p>Read the length of an object and set {@link #contentAddr} to the start of its content.</p>
+		 * <p>When the lengthMask is 0xF (0000 1111), an integer follows containing the actual length</p>
+		 * @param addr the start address of the object
+		 * @param lengthMask the length bits
+		 * @return the actual length (equal to lengthMask if lengthMask != 0xF)
+		 * @throws PropertyListException when the length is invalid
+		 */
+		private int getLength(int addr, int lengthMask) throws PropertyListException {
+			if (lengthMask != LENMASK) {
+				contentAddr = addr+1;
+				return lengthMask;
+			}
+			final int marker = data.get(addr+1)&0xFF;
+			if (marker>>4 != INT)
+				throw new PropertyListException("Expecting object length to be integer.");
+			final int intLen = 1<<(marker&LENMASK);
+			if (intLen > 8)
+				throw new PropertyListException("Object length cannot be longer than 8 bytes.");
+			final long length = readLong(addr+2, intLen);
+			if (length < 0 || length > data.limit())
+				throw new PropertyListException("Invalid object length: "+length);
+			contentAddr = addr+2+intLen;
+			return (int) length;
+		}
+
+		/**
+		 * An array or dictionary whose values are being parsed.
+		 * Integers and reals in arrays are read without creating objects,
+		 * so the builder can pack arrays containing only integers or only reals.
+		 */
+		private final class Frame {
+			/** The object reference of the collection */
+			final int ref;
+			/** The amount of values */
+			final int length;
+			/** Address of the first value reference */
+			private final int refs;
+			/** Address of the first key reference, if the collection is a dictionary */
+			private final int keyRefs;
+			/** The builder, if the collection is an array */
+			final NSMutableArray array;
+			/** The builder, if the collection is a dictionary */
+			private final NSMutableDictionary dict;
+			/** The index of the next value */
+			int index = 0;
+			/** The key of the value returned by {@link #nextRef()} */
+			private String key;
+
+			/**
+			 * Constructor.
+			 * @param ref	the object reference of the collection
+			 * @param dictionary	whether the collection is a dictionary
+			 * @param length	the amount of values
+			 * @param contentAddr	the address of the references
+			 * @throws PropertyListException	when the references exceed the data
+			 */
+			Frame(int ref, boolean dictionary, int length, int contentAddr) throws PropertyListException {
+				this.ref = ref;
+				this.length = length;
+				if (dictionary) {
+					checkRange(contentAddr, 2L*length*objRefSize);
+					keyRefs = contentAddr;
+					refs = contentAddr+length*objRefSize;
+					array = null;
+					dict = new NSMutableDictionary(length);
+				} else {
+					checkRange(contentAddr, (long) length*objRefSize);
+					keyRefs = -1;
+					refs = contentAddr;
+					array = new NSMutableArray(length);
+					dict = null;
+				}
+			}
+
+			/**
+			 * Get the reference of the next value, and parse its key if the collection is a dictionary.
+			 * @return	the object reference
+			 * @throws PropertyListException	when parsing fails
+			 */
+			int nextRef() throws PropertyListException {
+				if (dict != null)
+					key = parseKey(readRef(keyRefs+index*objRefSize));
+				return readRef(refs+(index++)*objRefSize);
+			}
+
+			/**
+			 * Add an integer or real to the array without creating an object.
+			 * @param addr	the start address of the value
+			 * @return	whether the value was a number
+			 * @throws PropertyListException	when the number is invalid
+			 */
+			boolean addNumber(int addr) throws PropertyListException {
+				final int identifier = data.get(addr)&0xFF;
+				switch(identifier>>4) {
+					case INT: array.add(readNumber(addr+1, identifier&LENMASK)); return true;
+					case REAL: array.add(readReal(addr+1, identifier&LENMASK)); return true;
+				}
+				return false;
+			}
+
+			/**
+			 * Add the value of the reference returned by {@link #nextRef()}.
+			 * @param value	the value
+			 */
+			void add(NSObject value) {
+				if (dict == null)
+					array.add(value);
+				else
+					dict.put(key, value);
+			}
+
+			/**
+			 * Get the parsed collection.
+			 * @return	the NSArray or NSDictionary
+			 */
+			NSCollection freeze() {
+				return dict == null ? array.freeze() : dict.freeze();
+			}
+		}
+
+	}
+
+	/** State of a single encode call */
+	private final class Encoder implements PlistVisitor<RuntimeException> {
+
+		/** The stream */
+		private final OutputStream stream;
+		/** Output which is not yet written to the stream */
+		private final byte[] buffer;
+		/** Amount of bytes in the buffer */
+		private int count = 0;
+		/** Amount of bytes written, including the buffer */
+		private long pointer = 0;
+		/** Numbered list containing all objects */
+		private final List<NSObject> objects = new ArrayList<NSObject>();
+		/** Object reference of every object which is not a string */
+		private final Map<NSObject,Integer> index = new HashMap<NSObject,Integer>();
+		/** Object reference of every string and dictionary key */
+		private final Map<String,Integer> strings = new HashMap<String,Integer>();
+		/** Object reference of every integer */
+		private final LongIndex integers = new LongIndex();
+		/** Object reference of every real, by its bits */
+		private final LongIndex reals = new LongIndex();
+		/** Size of object references in bytes */
+		private int objRefSize;
+
+		/**
+		 * Construct a new encoder.
+		 * @param stream	the stream
+		 * @param buffer	the scratch buffer
+		 */
+		Encoder(OutputStream stream, byte[] buffer) {
+			this.stream = stream;
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Encode a tree.
+		 * @param root	the root of the tree
+		 * @throws PropertyListException	when the tree contains objects that cannot be written
+		 * @throws IOException	when writing to the stream fails
+		 */
+		void encode(NSObject root) throws PropertyListException, IOException {
+			addObject(root);
+			final int numObjects = objects.size();
+			final boolean canonical = options.isCanonical();
+			objRefSize = getLongLength(canonical ? numObjects-1 : numObjects);
+			final long[] offsetTable = new long[numObjects];
+			write(STARTMAGIC, 0, STARTMAGIC.length);
+			for(int i=0;i<numObjects;i++) {
+				offsetTable[i] = pointer;
+				writeObject(objects.get(i));
+			}
+			final long offsetTableOffset = pointer;
+			final int offsetEntrySize = getLongLength(canonical ? offsetTable[numObjects-1] : offsetTableOffset);
+
+			// write offset table
+			for(long offset : offsetTable)
+				writeLong(offset, offsetEntrySize);
+
+			// write metadata
+			write(ENDMAGIC, 0, ENDMAGIC.length); // padding
+			write(offsetEntrySize);
+			write(objRefSize);
+			writeLong(numObjects, 8);
+			writeLong(0, 8); // root object, always the first in this implementation
+			writeLong(offsetTableOffset, 8);
+			flush();
+		}
+
+		/**
+		 * Write a byte.
+		 * @param b	the byte
+		 * @throws IOException	when writing to the stream fails
+		 */
+		private void write(int b) throws IOException {
+			if (count == buffer.length)
+				flush();
+			buffer[count++] = (byte) b;
+			pointer++;
+		}
+
+		/**
+		 * Write bytes.
+		 * @param b	the bytes
+		 * @param off	the offset
+		 * @param len	the amount of bytes
+		 * @throws IOException	when writing to the stream fails
+		 */
+		private void write(byte[] b, int off, int len) throws IOException {
+			if (len > buffer.length-count) {
+				flush();
+				if (len > buffer.length) {
+					stream.write(b, off, len);
+					pointer += len;
+					return;
+				}
+			}
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+			pointer += len;
+		}
+
+		/**
+		 * Write a big endian number.
+		 * @param l	the number
+		 * @param size	the amount of bytes to output
+		 * @throws IOException	when writing to the stream fails
+		 */
+		private void writeLong(long l, int size) throws IOException {
+			for(int i=size-1;i>=0;i--)
+				write((int) (l >> 8*i));
+		}
+
+		/**
+		 * Write the buffer to the stream.
+		 * @throws IOException	when writing to the stream fails
+		 */
+		private void flush() throws IOException {
+			stream.write(buffer, 0, count);
+			count = 0;
+		}
+
+		/**
+		 * Add an object and all its children to the object list, unless an equal object was added before.
+		 * Dictionary keys are added before the values.
+		 * @param obj	the object
+		 */
+		private void addObject(NSObject obj) {
+			PlistWalker.walk(obj, this);
+		}
+
+		/**
+		 * Add an object to the object list; its children are visited next
+		 * unless an equal object was added before.
+		 * Dictionary keys and the values of packed arrays are added at once.
+		 * {@inheritDoc}
+		 */
+		public Result preVisit(Object key, NSObject obj) {
+			if (obj instanceof NSString) {
+				addString(((NSString) obj).getValue(), (NSString) obj);
+				return Result.CONTINUE;
+			}
+			if (obj instanceof NSInteger) {
+				addInteger(obj.toLong(), obj);
+				return Result.CONTINUE;
+			}
+			if (obj instanceof NSReal) {
+				addReal(obj.toDouble(), obj);
+				return Result.CONTINUE;
+			}
+			if (index.containsKey(obj))
+				return Result.SKIP_SUBTREE;
+			index.put(obj, objects.size());
+			objects.add(obj);
+			if (obj instanceof NSDictionary) {
+				for(String dictKey : ((NSDictionary) obj).keys())
+					addString(dictKey, null);
+			} else if (obj instanceof NSArray) {
+				final NSArray array = (NSArray) obj;
+				final Class<? extends NSNumber> packedType = array.getPackedType();
+				if (packedType == NSInteger.class) {
+					for(int i=0;i<array.size();i++)
+						addInteger(array.getLong(i), null);
+					return Result.SKIP_SUBTREE;
+				} else if (packedType == NSReal.class) {
+					for(int i=0;i<array.size();i++)
+						addReal(array.getDouble(i), null);
+					return Result.SKIP_SUBTREE;
+				}
+			}
+			return Result.CONTINUE;
+		}
+
+		/** {@inheritDoc} */
+		public Result postVisit(Object key, NSCollection node) {
+			return Result.CONTINUE;
+		}
+
+		/**
+		 * Add an integer to the object list, unless an equal integer was added before.
+		 * @param l	the integer
+		 * @param obj	the integer as object, or <code>null</code> to create one if needed
+		 */
+		private void addInteger(long l, NSObject obj) {
+			if (integers.get(l) >= 0)
+				return;
+			integers.put(l, objects.size());
+			objects.add(obj == null ? NSInteger.valueOf(l) : obj);
+		}
+
+		/**
+		 * Add a real to the object list, unless an equal real was added before.
+		 * @param d	the real
+		 * @param obj	the real as object, or <code>null</code> to create one if needed
+		 */
+		private void addReal(double d, NSObject obj) {
+			final long bits = Double.doubleToLongBits(d);
+			if (reals.get(bits) >= 0)
+				return;
+			reals.put(bits, objects.size());
+			objects.add(obj == null ? new NSReal(d) : obj);
+		}
+
+		/**
+		 * Add a string to the object list, unless an equal string was added before.
+		 * @param string	the string
+		 * @param obj	the string as object, or <code>null</code> to create one
+		 */
+		private void addString(String string, NSString obj) {
+			if (strings.containsKey(string))
+				return;
+			strings.put(string, objects.size());
+			objects.add(obj == null ? new NSString(string) : obj);
+		}
+
+		/**
+		 * Get the object reference of an object.
+		 * @param obj	the object
+		 * @return	the object reference
+		 */
+		private int getRef(NSObject obj) {
+			if (obj instanceof NSString)
+				return strings.get(((NSString) obj).getValue());
+			if (obj instanceof NSInteger)
+				return integers.get(obj.toLong());
+			if (obj instanceof NSReal)
+				return reals.get(Double.doubleToLongBits(obj.toDouble()));
+			return index.get(obj);
+		}
+
+		/**
+		 * Write an object
+		 * @param obj the object to write
+		 * @throws PropertyListException if the object could not be converted to binary data
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeObject(NSObject obj) throws PropertyListException, IOException {
+			if (obj instanceof NSArray)
+				writeArray((NSArray) obj);
+			else if (obj instanceof NSBoolean)
+				write(((NSBoolean) obj).isTrue() ? BOOLTRUE : BOOLFALSE);
+			else if (obj instanceof NSData)
+				writeData((NSData) obj);
+			else if (obj instanceof NSDate)
+				writeDate((NSDate) obj);
+			else if (obj instanceof NSDictionary)
+				writeDictionary((NSDictionary) obj);
+			else if (obj instanceof NSInteger)
+				writeInteger((NSInteger) obj);
+			else if (obj instanceof NSReal)
+				writeReal((NSReal) obj);
+			else if (obj instanceof NSString)
+				writeString((NSString) obj);
+			else if (obj instanceof NSUID)
+				writeUID((NSUID) obj);
+			else throw new PropertyListException("Unknown NSObjecttype; "+(obj == null ? null : obj.getClass().getSimpleName()));
+		}
+
+		/**
+		 * Write the object header consisting of the type and length
+		 * @param length the length of the object (units differ between objects)
+		 * @param type the 4 bits determining the type of the object
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeObjectHeader(long length, byte type) throws IOException {
+			if (length < LENMASK) {
+				write((int) length | (type << 4));
+				return;
+			}
+			final byte longLen = getLongLength(length);
+			final byte lengthByte = log2ceil(longLen);
+			write(LENMASK | (type << 4));
+			write(lengthByte | (INT << 4));
+			writeLong(length, 1<<lengthByte);
+		}
+
+		/**
+		 * Write an array
+		 * @param obj the array
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeArray(NSArray obj) throws IOException {
+			writeObjectHeader(obj.size(), ARRAY);
+			final Class<? extends NSNumber> packedType = obj.getPackedType();
+			if (packedType == NSInteger.class) {
+				for(int i=0;i<obj.size();i++)
+					writeLong(integers.get(obj.getLong(i)), objRefSize);
+			} else if (packedType == NSReal.class) {
+				for(int i=0;i<obj.size();i++)
+					writeLong(reals.get(Double.doubleToLongBits(obj.getDouble(i))), objRefSize);
+			} else {
+				for(NSObject o : obj.values())
+					writeLong(getRef(o), objRefSize);
+			}
+		}
+
+		/**
+		 * Write a data object.
+		 * Large objects are written directly to the stream, without copying them to the buffer.
+		 * @param obj the data object
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeData(NSData obj) throws IOException {
+			final int length = obj.length();
+			writeObjectHeader(length, DATA);
+			if (length > buffer.length-count) {
+				flush();
+				obj.writeTo(stream);
+			} else {
+				obj.asReadOnlyBuffer().get(buffer, count, length);
+				count += length;
+			}
+			pointer += length;
+		}
+
+		/**
+		 * Write a date
+		 * @param obj the date
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeDate(NSDate obj) throws IOException {
+			write(3 | (DATE << 4)); // 3 is 2log(8)
+			writeLong(Double.doubleToLongBits(obj.toDouble()), 8);
+		}
+
+		/**
+		 * Write a dictionary
+		 * @param obj the dictionary
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeDictionary(NSDictionary obj) throws IOException {
+			writeObjectHeader(obj.size(), DICT);
+			for(String key : obj.keys())
+				writeLong(strings.get(key), objRefSize);
+			for(NSObject value : obj.values())
+				writeLong(getRef(value), objRefSize);
+		}
+
+		/**
+		 * Write an integer
+		 * @param obj the integer
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeInteger(NSInteger obj) throws IOException {
+			final long l = obj.toLong();
+			final byte lengthByte = log2ceil(getLongLength(l));
+			write(lengthByte | (INT << 4));
+			writeLong(l, 1<<lengthByte);
+		}
+
+		/**
+		 * Write a real as double precision float
+		 * @param obj the real
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeReal(NSReal obj) throws IOException {
+			write(3 | (REAL << 4)); // 3 is 2log(8)
+			writeLong(Double.doubleToLongBits(obj.toDouble()), 8);
+		}
+
+		/**
+		 * Write a string, as ASCII if possible and as UTF-16 otherwise
+		 * @param obj the string
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeString(NSString obj) throws IOException {
+			final String str = obj.getValue();
+			final int length = str.length();
+			boolean isAscii = true;
+			for(int i=0;i<length && isAscii;i++)
+				isAscii = str.charAt(i) < 0x80;
+			writeObjectHeader(length, isAscii ? ASCIISTRING : UNICODESTRING);
+			for(int i=0;i<length;i++) {
+				final char c = str.charAt(i);
+				if (!isAscii)
+					write(c >> 8);
+				write(c);
+			}
+		}
+
+		/**
+		 * Write a CF$UID
+		 * @param obj	the NSUID containing the CF$UID
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeUID(NSUID obj) throws IOException {
+			final long cfUid = obj.getCfUid();
+			final byte length = getLongLength(cfUid);
+			write(UID << 4 | length-1);
+			writeLong(cfUid, length);
+		}
+
+	}
+
+	/** Stream which compares its input with a buffer, failing at the first difference */
+	private static final class CompareStream extends OutputStream {
+
+		/** The expected bytes which were not compared yet */
+		private final ByteBuffer expected;
+
+		/**
+		 * Constructor.
+		 * @param expected	the buffer whose remaining bytes are expected
+		 */
+		CompareStream(ByteBuffer expected) {
+			this.expected = expected.slice();
+		}
+
+		/**
+		 * Check whether all expected bytes were written.
+		 * @return	whether the input equals the expected bytes
+		 */
+		boolean isComplete() {
+			return !expected.hasRemaining();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void write(int b) throws IOException {
+			if (!expected.hasRemaining() || expected.get() != (byte) b)
+				throw new IOException("Output differs at "+expected.position());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len > expected.remaining())
+				throw new IOException("Output is longer than "+expected.limit()+" bytes");
+			for(int i=0;i<len;i++)
+				if (expected.get() != b[off+i])
+					throw new IOException("Output differs at "+(expected.position()-1));
+		}
+
+	}
+
+	/**
+	 * Open-addressing hash map from <code>long</code> to non-negative <code>int</code>,
+	 * used to deduplicate numbers without creating an object per number.
+	 */
+	private static final class LongIndex {
+
+		/** The keys */
+		private long[] keys = new long[16];
+		/** The values plus one, or zero for empty slots */
+		private int[] values = new int[16];
+		/** The amount of entries */
+		private int size = 0;
+
+		/**
+		 * Get the slot of a key.
+		 * @param key	the key
+		 * @param keys	the keys
+		 * @param values	the values
+		 * @return	the slot which contains the key, or the empty slot where it belongs
+		 */
+		private static int slot(long key, long[] keys, int[] values) {
+			final int mask = keys.length-1;
+			final int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while(values[slot] != 0 && keys[slot] != key)
+				slot = (slot+1) & mask;
+			return slot;
+		}
+
+		/**
+		 * Get the value of a key.
+		 * @param key	the key
+		 * @return	the value, or -1 if the key is absent
+		 */
+		int get(long key) {
+			return values[slot(key, keys, values)]-1;
+		}
+
+		/**
+		 * Associate a value with a key which is absent.
+		 * @param key	the key
+		 * @param value	the value
+		 */
+		void put(long key, int value) {
+			if (2*(size+1) > keys.length) {
+				final long[] newKeys = new long[2*keys.length];
+				final int[] newValues = new int[2*values.length];
+				for(int i=0;i<keys.length;i++) {
+					if (values[i] != 0) {
+						final int slot = slot(keys[i], newKeys, newValues);
+						newKeys[slot] = keys[i];
+						newValues[slot] = values[i];
+					}
+				}
+				keys = newKeys;
+				values = newValues;
+			}
+			final int slot = slot(key, keys, values);
+			keys[slot] = key;
+			values[slot] = value+1;
+			size++;
+		}
+
+	}
+
+}
@@ -25,6 +25,13 @@ import java.nio.charset.Charset;
 
 interface BinaryFields {
 
+	/** Bytes expected at the start of the file */
+	static byte[] STARTMAGIC = "bplist00".getBytes();
+	/** Bytes expected at the start of the trailer */
+	static byte[] ENDMAGIC = new byte[6];
+	/** Size of the trailer in bytes */
+	static int TRAILERSIZE = 32;
+	
 	/** NULL byte */
 	static byte          NULL = 0x0;
 	
@@ -24,40 +24,27 @@ package net.sf.plist.io.bin;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.TreeMap;
+import java.nio.ByteBuffer;
 
-import net.sf.plist.*;
+import net.sf.plist.NSObject;
+import net.sf.plist.io.PropertyListCodec;
 import net.sf.plist.io.PropertyListException;
 import net.sf.plist.io.PropertyListParser;
 
 /**
- * Parses binary property list files to a tree consisting of {@link NSObject}s
+ * <p>Parses binary property list files to a tree consisting of {@link NSObject}s</p>
+ * <p>The parsing itself is done by {@link BinaryCodec}.
+ * Therefore this class no longer has the protected <code>parseNode</code>, <code>parseInteger</code>, <code>parseReal</code>,
+ * <code>parseDate</code>, <code>parseData</code>, <code>parseASCII</code>, <code>parseUnicode</code>, <code>parseUid</code>,
+ * <code>parseArray</code>, <code>parseSet</code>, <code>parseDictionary</code>, <code>parseKey</code> and <code>getLength</code> methods,
+ * nor the fields holding the trailer and the offset table;
+ * subclasses which override or use them must be changed to process the parsed tree instead.</p>
+ * @see BinaryCodec
  */
 public class BinaryParser extends PropertyListParser implements BinaryFields {
 
-	/** Bytes expected at the start of the file */
-	static final protected byte[] STARTMAGIC = "bplist00".getBytes();
-	/** Bytes expected near the end of the file */
-	static final protected byte[] ENDMAGIC = new byte[6];
-	
-	// The stream is private to keep the possibility open for a custom seekable object
-	/** The stream */
-	private Seekable stream;
-	
-	/** Size of offset entries in bytes */
-	protected byte offsetEntrySize;
-	/** Size of object references in bytes */
-	protected byte objRefSize;
-	/** Number of objects in stream */
-	protected int numObjects;
-	/** Starting address of the root object */
-	protected long rootAddr;
-	/** Starting address of the offset table */
-	protected long offsetTableOffset;
-	/** The offset table */
-	protected int[] offsetTable;
+	/** The buffer being parsed, if the parser was constructed with a buffer */
+	private final ByteBuffer buffer;
 	/** The parse result */
 	protected NSObject result;
 	/** The exception indicating why parsing failed */
@@ -67,7 +54,9 @@ public class BinaryParser extends PropertyListParser implements BinaryFields {
 	 * Convert an array of bytes to a long
 	 * @param bytes the byte array (8 bytes max)
 	 * @return the long
+	 * @deprecated parsing is done by {@link BinaryCodec}, which does not use this method
 	 */
+	@Deprecated
 	protected static long getLong(byte... bytes) { // Get a long, 64 bits
 		// bytes.length <= 8
 		// byte&0xFFL makes it a positive long
@@ -80,7 +69,9 @@ public class BinaryParser extends PropertyListParser implements BinaryFields {
 	 * Convert an array of bytes to a integer
 	 * @param bytes the byte array (4 bytes max)
 	 * @return the int
+	 * @deprecated parsing is done by {@link BinaryCodec}, which does not use this method
 	 */
+	@Deprecated
 	protected static int getInteger(byte... bytes) { // Get an int, 32 bits
 		// bytes.length <= 4
 		// byte&0xFF makes it a positive int
@@ -95,6 +86,7 @@ public class BinaryParser extends PropertyListParser implements BinaryFields {
 		super(file, null);
 		if (file == null)
 			throw new NullPointerException("file");
+		this.buffer = null;
 	}
 	
 	/** @see PropertyListParser#PropertyListParser(InputStream) */
@@ -102,269 +94,42 @@ public class BinaryParser extends PropertyListParser implements BinaryFields {
 		super(input);
 		if (input == null)
 			throw new NullPointerException("input");
+		this.buffer = null;
+	}
+	
+	/**
+	 * <p>Construct a new BinaryParser which will parse the remaining bytes of a buffer,
+	 * for example a memory mapped file obtained through {@link java.nio.channels.FileChannel#map}.</p>
+	 * <p>Data objects in the result are slices of this buffer instead of copies,
+	 * so the content of the buffer must not be modified while the result is in use.
+	 * The position and limit of the buffer are not modified.</p>
+	 * @param buffer the buffer to parse
+	 */
+	public BinaryParser(ByteBuffer buffer) {
+		super(null);
+		if (buffer == null)
+			throw new NullPointerException("buffer");
+		this.buffer = buffer;
 	}
 	
 	/** {@inheritDoc} */
 	@Override
 	public synchronized NSObject parse() throws PropertyListException {
 		if (result != null) return result;
+		if (pleResult != null) throw pleResult; // re-throw the exception of an earlier call
+		final BinaryCodec codec = new BinaryCodec(PropertyListCodec.BINARY.withKeyInterner(keyInterner).withObjectInterner(objectInterner));
 		try {
-			if (pleResult != null) throw pleResult;
-			byte[] magicStartTest = new byte[8];
-			byte[] magicEndTest = new byte[6];
-			byte[] metaData = new byte[26];
-			// Check if the stream contains a binary property list
-			if (file != null)
-				stream = new SeekableFile(file, "r");
-			else if (input != null)
-				stream = new SeekableInputStream(input);
+			if (buffer != null)
+				return result = codec.decode(buffer);
+			else if (file != null)
+				return result = codec.decode(file);
 			else
-				throw new NullPointerException("Both file and input are null, this should never happen. Please report it on http://plist.sf.net .");
-			stream.read(magicStartTest);
-			if (!Arrays.equals(STARTMAGIC, magicStartTest))
-				throw new PropertyListException("File is not a binary property list.");
-			stream.seek(this.stream.length()-32);
-			stream.read(magicEndTest);
-			if (!Arrays.equals(ENDMAGIC, magicEndTest))
-				throw new PropertyListException("File is not a binary property list.");
-			stream.read(metaData);
-			
-			// Read metadata
-			offsetEntrySize = metaData[0];
-			objRefSize = metaData[1];
-			numObjects = getInteger(metaData[6],metaData[7],metaData[8],metaData[9]);
-			rootAddr = 8L+getLong(metaData[10],metaData[11],metaData[12],metaData[13],metaData[14],metaData[15],metaData[16],metaData[17]);
-			offsetTableOffset = getLong(metaData[18],metaData[19],metaData[20],metaData[21],metaData[22],metaData[23],metaData[24],metaData[25]);
-			
-			// Read offset table
-			offsetTable = new int[numObjects];
-			byte[] offsetBytes = new byte[numObjects*offsetEntrySize];
-			stream.seek(offsetTableOffset);
-			stream.read(offsetBytes);
-			for (int i=0;i<numObjects; i++) {
-				byte[] offsetTableEntry = new byte[offsetEntrySize];
-				System.arraycopy(offsetBytes, i*offsetEntrySize, offsetTableEntry, 0, offsetEntrySize);
-				offsetTable[i] = getInteger(offsetTableEntry);
-			}
-			return result = parseNode(rootAddr);
+				return result = codec.decode(input);
 		} catch (IOException e) {
 			throw pleResult = new PropertyListException("Unable to parse binary property list", e);
 		} catch (PropertyListException ple) {
-			throw pleResult = ple; // store the exception so it can be re-thrown when parse is called again
-		}
-	}
-	
-	/**
-	 * Parse a node to a NSObject on a given start address
-	 * @param addr the start address
-	 * @return the NSObject
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSObject parseNode(long addr) throws IOException, PropertyListException {
-		stream.seek(addr);
-		final int identifier = stream.read();
-		if (identifier < 0)
-			throw new PropertyListException("Premature end of file.");
-		final byte length = (byte) (identifier&0xF);
-		final byte type = (byte) ((identifier>>4)&0xF);
-		
-		if (type == NULL) switch(length) { // In this case, length is the actual value
-			case NULL: return null;
-			case BOOLTRUE: return NSBoolean.TRUE;
-			case BOOLFALSE: return NSBoolean.FALSE;
-		}
-		switch(type) {
-			case INT: return parseInteger(length);
-			case REAL: return parseReal(length);
-			case DATE: return parseDate(length);
-			case DATA: return parseData(length);
-			case ASCIISTRING: return parseASCII(length);
-			case UNICODESTRING: return parseUnicode(length);
-			case UID: return parseUid(length);
-			case ARRAY: return parseArray(length);
-			case SET: return parseSet(length);
-			case DICT: return parseDictionary(length);
-		}
-		throw new PropertyListException("Invalid objectclass: "+Integer.toString(identifier|0, 16).toUpperCase());
-	}
-	
-	/**
-	 * Parse a node to a NSInteger on a given start address
-	 * @param length the length byte
-	 * @return the NSInteger
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSInteger parseInteger(byte length) throws IOException {
-		byte[] buffer = new byte[1<<length]; // 2^length
-		stream.read(buffer);
-		return new NSInteger(getLong(buffer));
-	}
-	
-	/**
-	 * Parse a node to a NSReal on a given start address
-	 * @param length the length byte
-	 * @return the NSReal
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSReal parseReal(byte length) throws IOException {
-		byte[] buffer = new byte[1<<length]; // 2^length
-		stream.read(buffer);
-		return new NSReal(Double.longBitsToDouble(getLong(buffer)));
-	}
-	
-	/**
-	 * Parse a node to a NSDate on a given start address
-	 * @param length the length byte
-	 * @return the NSDate
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSDate parseDate(byte length) throws IOException {
-		assert length == 8;
-		return new NSDate(Double.longBitsToDouble(stream.readLong()));
-	}
-	
-	/**
-	 * Parse a node to a NSData on a given start address
-	 * @param length the length byte
-	 * @return the NSData
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSData parseData(byte length) throws IOException, PropertyListException {
-		byte[] buffer = new byte[getLength(length)];
-		stream.read(buffer);
-		return new NSData(buffer);
-	}
-	
-	/**
-	 * Parse a node to a NSString on a given start address, parsing with an ASCII charset
-	 * @param length the length byte
-	 * @return the NSString
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSString parseASCII(byte length) throws IOException, PropertyListException {
-		byte[] buffer = new byte[getLength(length)];
-		stream.read(buffer);
-		return new NSString(new String(buffer, ASCIICHARSET.toString()));
-	}
-	
-	/**
-	 * Parse a node to a NSString on a given start address, parsing with an unicode charset
-	 * @param length the length byte
-	 * @return the NSString
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSString parseUnicode(byte length) throws IOException, PropertyListException {
-		byte[] buffer = new byte[2*getLength(length)];
-		stream.read(buffer);
-		return new NSString(new String(buffer, UNICODECHARSET.toString()));
-	}
-	
-	/**
-	 * Parse a NSUID. No documentation has been found on how to parse these.
-	 * By generating a couple of files with a binary editor and checking them with Apple Quicklook,
-	 * it appears that the length bits are equal 
-	 * 
-	 * @param length the length byte
-	 * @return null
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSObject parseUid(byte length) throws IOException, PropertyListException {
-		if (length > 3)
-			throw new PropertyListException("An NSUID cannot be longer than 4 bytes (max length value: 3, given: "+length+")");
-		byte[] buffer = new byte[length+1];
-		stream.read(buffer);
-		return new NSUID(getLong(buffer));
-	}
-	
-	/**
-	 * Parse a node to a NSArray on a given start address
-	 * @param length the length byte
-	 * @return the NSArray
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSArray parseArray(byte length) throws IOException, PropertyListException {
-		int length2 = getLength(length);
-		byte[] buffer = new byte[length2*objRefSize];
-		ArrayList<NSObject> result = new ArrayList<NSObject>(length2);
-		stream.read(buffer);
-		for(int i=0;i<length2;i++) {
-			byte[] objRefArr = new byte[objRefSize];
-			System.arraycopy(buffer, objRefSize*i, objRefArr, 0, objRefSize);
-			int objRef = getInteger(objRefArr);
-			result.add(parseNode(offsetTable[objRef]));
-		}
-		return new NSArray(result);
-	}
-	
-	/**
-	 * Parse a NSSet (not implemented)
-	 * @param length the length byte
-	 * @return null
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSObject parseSet(byte length) throws IOException, PropertyListException {
-		//byte[] buffer = new byte[getLength(length)*objRefSize];
-		//file.read(buffer);
-		// TODO how should those be handled?
-		throw new UnsupportedOperationException("NSSet");
-	}
-	
-	/**
-	 * Parse a node to a NSDictionary on a given start address
-	 * @param length the length byte
-	 * @return the NSDictionary
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected NSDictionary parseDictionary(byte length) throws IOException, PropertyListException {
-		int length2 = getLength(length);
-		byte[] buffer = new byte[2*length2*objRefSize];
-		TreeMap<String,NSObject> result = new TreeMap<String,NSObject>();
-		stream.read(buffer);
-		for(int i=0;i<length2;i++) {
-			byte[] keyRefArr = new byte[objRefSize];
-			System.arraycopy(buffer, objRefSize*i, keyRefArr, 0, objRefSize);
-			int keyRef = getInteger(keyRefArr);
-			byte[] objRefArr = new byte[objRefSize];
-			System.arraycopy(buffer, length2*objRefSize+objRefSize*i, objRefArr, 0, objRefSize);
-			int objRef = getInteger(objRefArr);
-			result.put(parseNode(offsetTable[keyRef]).toString(), parseNode(offsetTable[objRef]));
+			throw pleResult = ple;
 		}
-		return new NSDictionary(result);
-	}
-	
-	/**
-	 * <p>Read the length</p>
-	 * <p>When the lengthMask is 0xF (0000 1111), an integer follows containing the actual length</p>
-	 * <p>lengthMask must be equal or smaller than LENMASK</p>
-	 * @param lengthMask the length mask
-	 * @return the actual length (equal to lengthMask if lengthMask != 0xF)
-	 * @throws IOException when reading the stream failed while parsing
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected int getLength(byte lengthMask) throws IOException, PropertyListException {
-		if (lengthMask==LENMASK) {
-			final int data = stream.read();
-			if (data == -1)
-				throw new PropertyListException("Unexpected EOF while reading object length.");
-			final byte type = (byte) ((data>>4)&0xF);
-			if (type != INT)
-				throw new PropertyListException("Expecting object length to be integer.");
-			final int intLen = 1<<(data&0xF);
-			final byte[] intData = new byte[intLen];
-			stream.read(intData);
-			return getInteger(intData);
-		} else return lengthMask;
 	}
 
 }
@@ -0,0 +1,373 @@
+/*
+Property List Binary Validator - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.io.bin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.plist.NSObject;
+import net.sf.plist.io.PropertyListFormat;
+import net.sf.plist.io.PropertyListValidator;
+import net.sf.plist.io.ValidationReport;
+
+/**
+ * <p>Checks whether a binary property list is well-formed without creating any {@link NSObject}s.</p>
+ *
+ * <p>The header, trailer and offset table are checked first.
+ * After that every object in the offset table is checked for a valid marker,
+ * a length that stays within the object area, valid object references
+ * and, for strings, valid content.
+ * Finally the object graph is walked from the root object to make sure it contains no cycles.</p>
+ * @see PropertyListValidator
+ */
+public final class BinaryValidator implements BinaryFields {
+
+	/** The property list */
+	private final byte[] data;
+	/** The problems found */
+	private final List<String> problems = new ArrayList<String>();
+	/** Size of offset entries in bytes */
+	private int offsetEntrySize;
+	/** Size of object references in bytes */
+	private int objRefSize;
+	/** Number of objects in the offset table */
+	private int numObjects;
+	/** Index of the root object */
+	private long topObject;
+	/** Starting address of the offset table, which is also the end of the object area */
+	private int offsetTableOffset;
+	/** Start address for every object, or -1 if the address is invalid */
+	private int[] offsets;
+	/** Address of the first child reference for collections, or -1 for other objects */
+	private int[] childRefs;
+	/** Amount of child references for collections */
+	private int[] childCounts;
+	/** Length read by {@link #readLength(int, int, int)} */
+	private int length;
+
+	/**
+	 * Validate a binary property list.
+	 * @param data	the complete property list
+	 * @return	the report
+	 */
+	public static ValidationReport validate(byte[] data) {
+		final BinaryValidator validator = new BinaryValidator(data);
+		validator.validate();
+		return new ValidationReport(PropertyListFormat.BINARY, validator.numObjects, validator.problems);
+	}
+
+	/**
+	 * Construct a new validator.
+	 * @param data	the property list
+	 */
+	private BinaryValidator(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * Record a problem.
+	 * @param problem	description of the problem
+	 * @return	whether validation may continue
+	 */
+	private boolean problem(String problem) {
+		problems.add(problem);
+		return problems.size() < ValidationReport.MAXPROBLEMS;
+	}
+
+	/**
+	 * Record a problem with an object.
+	 * @param objRef	the object
+	 * @param problem	description of the problem
+	 * @return	whether validation may continue
+	 */
+	private boolean problem(int objRef, String problem) {
+		return problem("Object "+objRef+" at offset 0x"+Integer.toHexString(offsets[objRef]).toUpperCase()+": "+problem);
+	}
+
+	/**
+	 * Read an unsigned big endian number.
+	 * @param pos	the start address
+	 * @param size	the amount of bytes (8 max)
+	 * @return	the number
+	 */
+	private long readUnsigned(int pos, int size) {
+		long l = 0;
+		for(int i=0;i<size;i++)
+			l = (l << 8) | (data[pos+i]&0xFFL);
+		return l;
+	}
+
+	/** Run all checks */
+	private void validate() {
+		if (!validateTrailer())
+			return;
+		offsets = new int[numObjects];
+		childRefs = new int[numObjects];
+		childCounts = new int[numObjects];
+		for(int i=0;i<numObjects;i++) {
+			long offset = readUnsigned(offsetTableOffset + i*offsetEntrySize, offsetEntrySize);
+			offsets[i] = offset < STARTMAGIC.length || offset >= offsetTableOffset ? -1 : (int) offset;
+			childRefs[i] = -1;
+			if (offsets[i] < 0 && !problem("Offset of object "+i+" points outside the object area: 0x"+Long.toHexString(offset).toUpperCase()))
+				return;
+		}
+		for(int i=0;i<numObjects;i++)
+			if (offsets[i] >= 0 && !validateObject(i))
+				return;
+		if (problems.isEmpty())
+			validateAcyclic();
+	}
+
+	/**
+	 * Check the header, the trailer and the bounds of the offset table.
+	 * @return	whether the remaining checks can be done
+	 */
+	private boolean validateTrailer() {
+		if (data.length < STARTMAGIC.length+TRAILERSIZE)
+			return !problem("File is too short to be a binary property list.");
+		for(int i=0;i<STARTMAGIC.length;i++)
+			if (data[i] != STARTMAGIC[i])
+				return !problem("File is not a binary property list.");
+		final int trailer = data.length-TRAILERSIZE;
+		for(int i=0;i<ENDMAGIC.length;i++)
+			if (data[trailer+i] != ENDMAGIC[i])
+				return !problem("Unexpected data in trailer padding.");
+		offsetEntrySize = data[trailer+6]&0xFF;
+		objRefSize = data[trailer+7]&0xFF;
+		final long numObjectsLong = readUnsigned(trailer+8, 8);
+		topObject = readUnsigned(trailer+16, 8);
+		final long offsetTableOffsetLong = readUnsigned(trailer+24, 8);
+		if (offsetEntrySize < 1 || offsetEntrySize > 8)
+			problem("Invalid offset entry size: "+offsetEntrySize);
+		if (objRefSize < 1 || objRefSize > 8)
+			problem("Invalid object reference size: "+objRefSize);
+		if (numObjectsLong < 1 || numObjectsLong > trailer)
+			problem("Invalid number of objects: "+numObjectsLong);
+		if (!problems.isEmpty())
+			return false;
+		numObjects = (int) numObjectsLong;
+		if (topObject < 0 || topObject >= numObjects)
+			problem("Root object "+topObject+" is not in the offset table.");
+		if (offsetTableOffsetLong < STARTMAGIC.length
+				|| offsetTableOffsetLong > trailer
+				|| trailer-offsetTableOffsetLong < (long) numObjects*offsetEntrySize) {
+			problem("Offset table does not fit between header and trailer.");
+			return false;
+		}
+		offsetTableOffset = (int) offsetTableOffsetLong;
+		return problems.isEmpty();
+	}
+
+	/**
+	 * Check whether an amount of bytes fits in the object area.
+	 * @param pos	the start address
+	 * @param size	the amount of bytes
+	 * @return	whether the bytes fit
+	 */
+	private boolean fits(int pos, long size) {
+		return size >= 0 && offsetTableOffset-pos >= size;
+	}
+
+	/**
+	 * Read the length of an object into {@link #length}.
+	 * When the length bits are 0xF, an integer object follows containing the actual length.
+	 * @param objRef	the object
+	 * @param pos	the address following the marker
+	 * @param info	the length bits of the marker
+	 * @return	the address following the length, or -1 if the length is invalid
+	 */
+	private int readLength(int objRef, int pos, int info) {
+		if (info != LENMASK) {
+			length = info;
+			return pos;
+		}
+		if (!fits(pos, 1)) {
+			problem(objRef, "Unexpected end of object area while reading length.");
+			return -1;
+		}
+		final int marker = data[pos]&0xFF;
+		if (marker>>4 != INT || (marker&LENMASK) > 3) {
+			problem(objRef, "Expecting object length to be an integer of at most 8 bytes.");
+			return -1;
+		}
+		final int intLen = 1<<(marker&LENMASK);
+		if (!fits(pos+1, intLen)) {
+			problem(objRef, "Unexpected end of object area while reading length.");
+			return -1;
+		}
+		final long l = readUnsigned(pos+1, intLen);
+		if (l < 0 || l > Integer.MAX_VALUE) {
+			problem(objRef, "Object length out of range: "+l);
+			return -1;
+		}
+		length = (int) l;
+		return pos+1+intLen;
+	}
+
+	/**
+	 * Check a single object.
+	 * @param objRef	the object
+	 * @return	whether validation may continue
+	 */
+	private boolean validateObject(int objRef) {
+		int pos = offsets[objRef];
+		final int marker = data[pos]&0xFF;
+		final int type = marker>>4;
+		final int info = marker&LENMASK;
+		pos++;
+		switch(type) {
+			case NULL:
+				if (info != NULL && info != BOOLFALSE && info != BOOLTRUE && info != FILL)
+					return problem(objRef, "Invalid object marker: 0x"+Integer.toHexString(marker).toUpperCase());
+				return true;
+			case INT:
+				if (info > 4)
+					return problem(objRef, "Invalid integer size: "+(1<<info)+" bytes");
+				return fits(pos, 1<<info) || problem(objRef, "Integer exceeds object area.");
+			case REAL:
+				// Reals are normally 4 or 8 bytes, but BinaryParser reads every size up to 8 bytes
+				if (info > 3)
+					return problem(objRef, "Invalid real size: "+(1<<info)+" bytes");
+				return fits(pos, 1<<info) || problem(objRef, "Real exceeds object area.");
+			case DATE:
+				if (info != 3)
+					return problem(objRef, "Invalid date size: "+(1<<info)+" bytes");
+				return fits(pos, 8) || problem(objRef, "Date exceeds object area.");
+			case UID:
+				if (info > 3)
+					return problem(objRef, "An NSUID cannot be longer than 4 bytes (max length value: 3, given: "+info+")");
+				return fits(pos, info+1) || problem(objRef, "UID exceeds object area.");
+			case DATA:
+				if ((pos = readLength(objRef, pos, info)) < 0)
+					return problems.size() < ValidationReport.MAXPROBLEMS;
+				return fits(pos, length) || problem(objRef, "Data of "+length+" bytes exceeds object area.");
+			case ASCIISTRING:
+				if ((pos = readLength(objRef, pos, info)) < 0)
+					return problems.size() < ValidationReport.MAXPROBLEMS;
+				if (!fits(pos, length))
+					return problem(objRef, "ASCII string of "+length+" bytes exceeds object area.");
+				for(int i=pos;i<pos+length;i++)
+					if (data[i] < 0)
+						return problem(objRef, "ASCII string contains non-ASCII byte at offset 0x"+Integer.toHexString(i).toUpperCase());
+				return true;
+			case UNICODESTRING:
+				if ((pos = readLength(objRef, pos, info)) < 0)
+					return problems.size() < ValidationReport.MAXPROBLEMS;
+				if (!fits(pos, 2L*length))
+					return problem(objRef, "UTF-16 string of "+length+" characters exceeds object area.");
+				return validateUTF16(objRef, pos, length);
+			case SET:
+				return problem(objRef, "Unsupported object marker for NSSet: 0x"+Integer.toHexString(marker).toUpperCase());
+			case ARRAY:
+				if ((pos = readLength(objRef, pos, info)) < 0)
+					return problems.size() < ValidationReport.MAXPROBLEMS;
+				if (!fits(pos, (long) length*objRefSize))
+					return problem(objRef, "Collection of "+length+" references exceeds object area.");
+				childRefs[objRef] = pos;
+				childCounts[objRef] = length;
+				return validateRefs(objRef, pos, length, false);
+			case DICT:
+				if ((pos = readLength(objRef, pos, info)) < 0)
+					return problems.size() < ValidationReport.MAXPROBLEMS;
+				if (!fits(pos, 2L*length*objRefSize))
+					return problem(objRef, "Dictionary of "+length+" entries exceeds object area.");
+				childRefs[objRef] = pos+length*objRefSize;
+				childCounts[objRef] = length;
+				return validateRefs(objRef, pos, length, true)
+						&& validateRefs(objRef, pos+length*objRefSize, length, false);
+		}
+		return problem(objRef, "Invalid object marker: 0x"+Integer.toHexString(marker).toUpperCase());
+	}
+
+	/**
+	 * Check that UTF-16 content contains no unpaired surrogates.
+	 * @param objRef	the object
+	 * @param pos	address of the first character
+	 * @param chars	amount of characters
+	 * @return	whether validation may continue
+	 */
+	private boolean validateUTF16(int objRef, int pos, int chars) {
+		boolean expectLow = false;
+		for(int i=0;i<chars;i++) {
+			final char c = (char) (((data[pos+2*i]&0xFF) << 8) | (data[pos+2*i+1]&0xFF));
+			if (expectLow != Character.isLowSurrogate(c))
+				return problem(objRef, "UTF-16 string contains an unpaired surrogate at character "+i);
+			expectLow = Character.isHighSurrogate(c);
+		}
+		return !expectLow || problem(objRef, "UTF-16 string ends with an unpaired surrogate.");
+	}
+
+	/**
+	 * Check that object references point into the offset table.
+	 * @param objRef	the object containing the references
+	 * @param pos	address of the first reference
+	 * @param count	amount of references
+	 * @param keys	whether the references must point to strings
+	 * @return	whether validation may continue
+	 */
+	private boolean validateRefs(int objRef, int pos, int count, boolean keys) {
+		for(int i=0;i<count;i++) {
+			final long ref = readUnsigned(pos+i*objRefSize, objRefSize);
+			if (ref < 0 || ref >= numObjects) {
+				if (!problem(objRef, "Reference "+i+" points outside the offset table: "+ref))
+					return false;
+			} else if (keys && offsets[(int) ref] >= 0) {
+				final int keyType = (data[offsets[(int) ref]]&0xFF)>>4;
+				if (keyType != ASCIISTRING && keyType != UNICODESTRING && !problem(objRef, "Key "+i+" is not a string."))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/** Walk the object graph from the root object using an explicit stack and report cycles */
+	private void validateAcyclic() {
+		// 0: not visited, 1: on the stack, 2: done
+		final byte[] state = new byte[numObjects];
+		final int[] stackRef = new int[numObjects];
+		final int[] stackChild = new int[numObjects];
+		int depth = 0;
+		stackRef[0] = (int) topObject;
+		state[(int) topObject] = 1;
+		while(depth >= 0) {
+			final int objRef = stackRef[depth];
+			if (childRefs[objRef] < 0 || stackChild[depth] == childCounts[objRef]) {
+				state[objRef] = 2;
+				depth--;
+				continue;
+			}
+			final int child = (int) readUnsigned(childRefs[objRef] + stackChild[depth]*objRefSize, objRefSize);
+			stackChild[depth]++;
+			if (state[child] == 1) {
+				problem(objRef, "Collection contains itself through object "+child+".");
+				return;
+			}
+			if (state[child] == 0) {
+				state[child] = 1;
+				depth++;
+				stackRef[depth] = child;
+				stackChild[depth] = 0;
+			}
+		}
+	}
+
+}
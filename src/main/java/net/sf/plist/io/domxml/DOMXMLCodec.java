@@ -0,0 +1,748 @@
+/*
+Property List DOM XML Codec - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.io.domxml;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import net.sf.plist.*;
+import net.sf.plist.io.PropertyListCodec;
+import net.sf.plist.io.PropertyListException;
+import net.sf.plist.util.Base64;
+import net.sf.plist.util.DateCodec;
+import net.sf.plist.util.NumberCodec;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * <p>Converts XML property lists from and to trees consisting of {@link NSObject}s, using DOM.</p>
+ *
+ * <p>A codec holds no state between calls and can be used by multiple threads at once.
+ * Creating a {@link DocumentBuilder} is expensive,
+ * so every thread keeps one and resets it before every call.</p>
+ *
+ * <p>Documents are converted from and to trees without recursion,
+ * and written by walking the sibling and parent links of the elements instead of using a
+ * {@link javax.xml.transform.Transformer}, which recurses for every level of the document.
+ * Deep trees therefore do not need a larger thread stack.</p>
+ * @see PropertyListCodec
+ */
+public final class DOMXMLCodec {
+
+	/** The DocumentBuilderFactory */
+	private static final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+	/** Per thread DocumentBuilder */
+	private static final ThreadLocal<DocumentBuilder> BUILDER = new ThreadLocal<DocumentBuilder>();
+	/** Resolves the property list DTD without accessing the network */
+	private static final EntityResolver RESOLVER = new EntityResolver() {
+		public InputSource resolveEntity(String publicId, String systemId) {
+			return new InputSource(new ByteArrayInputStream(DOMXMLParser.DTD.getBytes()));
+		}
+	};
+
+	/** Amount of spaces to indent every level of the document */
+	private static final int INDENT = 4;
+
+	/** The options */
+	private final PropertyListCodec options;
+
+	/**
+	 * Construct a new codec.
+	 * Usually, {@link PropertyListCodec} should be used instead.
+	 * @param options	the codec holding the options
+	 */
+	public DOMXMLCodec(PropertyListCodec options) {
+		if (options == null)
+			throw new NullPointerException("options");
+		this.options = options;
+	}
+
+	/**
+	 * Get the DocumentBuilder of the current thread.
+	 * @return	the DocumentBuilder, in its initial state
+	 */
+	private static DocumentBuilder getBuilder() {
+		DocumentBuilder result = BUILDER.get();
+		if (result == null) {
+			try {
+				synchronized(dbf) {
+					result = dbf.newDocumentBuilder();
+				}
+			} catch (ParserConfigurationException e) {
+				// This happens when the configuration of DocumentBuilderFactory is incorrect.
+				// Since we're not changing this configuration,
+				// i'll assume that it isn't our fault.
+				// If you think it is, please report it.
+				// https://sourceforge.net/p/plist/tickets/
+				throw new UnsupportedOperationException("ParserConfigurationException occurred, this should never happen. Please report it on http://plist.sf.net .", e);
+			}
+			BUILDER.set(result);
+		} else {
+			result.reset();
+		}
+		result.setEntityResolver(RESOLVER);
+		return result;
+	}
+
+	/**
+	 * Decode an XML property list file.
+	 * @param file	the file
+	 * @return	the root {@link NSObject}
+	 * @throws PropertyListException	when the file is not a valid XML property list
+	 * @throws IOException	when reading the file failed
+	 */
+	public NSObject decode(File file) throws PropertyListException, IOException {
+		try {
+			return new Decoder().parseDocument(getBuilder().parse(file));
+		} catch (SAXException e) {
+			throw new PropertyListException("The property list is not a valid XML document.", e);
+		}
+	}
+
+	/**
+	 * <p>Decode an XML property list stream.</p>
+	 * <p>Warning: This method will <b>not</b> explicitly close the {@link InputStream}.</p>
+	 * @param input	the stream
+	 * @return	the root {@link NSObject}
+	 * @throws PropertyListException	when the input is not a valid XML property list
+	 * @throws IOException	when reading the input failed
+	 */
+	public NSObject decode(InputStream input) throws PropertyListException, IOException {
+		try {
+			return new Decoder().parseDocument(getBuilder().parse(input));
+		} catch (SAXException e) {
+			throw new PropertyListException("The property list is not a valid XML document.", e);
+		}
+	}
+
+	/**
+	 * <p>Encode a tree to an XML property list.</p>
+	 * <p>The stream is <b>not</b> closed.</p>
+	 * @param root	the root of the tree
+	 * @param stream	the stream to write the property list to
+	 * @throws PropertyListException	when the tree contains objects that cannot be written
+	 * @throws IOException	when writing to the stream fails
+	 */
+	public void encode(NSObject root, OutputStream stream) throws PropertyListException, IOException {
+		final Document doc = new Encoder(getBuilder().newDocument()).generateDocument(root);
+		final Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+		if (options.isIndent())
+			out.write('\n');
+		out.write("<!DOCTYPE plist PUBLIC \""+DOMXMLWriter.DOCTYPE_PUBLIC+"\" \""+DOMXMLWriter.DOCTYPE_SYSTEM+"\">\n");
+		writeElements(doc.getDocumentElement(), out);
+		if (options.isIndent())
+			out.write('\n');
+		out.flush();
+	}
+
+	/**
+	 * <p>Write an element and its children.</p>
+	 * <p>The document is walked through the links between the nodes, without recursion.
+	 * Elements containing text are written on a single line, and elements without content are written as empty elements.
+	 * When the output is indented, every other element starts on a new line.</p>
+	 * @param root	the element
+	 * @param out	the writer
+	 * @throws IOException	when writing fails
+	 */
+	private void writeElements(Node root, Writer out) throws IOException {
+		final boolean indent = options.isIndent();
+		Node node = root;
+		int depth = 0;
+		for(;;) {
+			if (indent && depth > 0)
+				newLine(out, depth);
+			out.write('<');
+			out.write(node.getNodeName());
+			final NamedNodeMap attributes = node.getAttributes();
+			for(int i=0;i<attributes.getLength();i++) {
+				out.write(' ');
+				out.write(attributes.item(i).getNodeName());
+				out.write("=\"");
+				escape(attributes.item(i).getNodeValue(), true, out);
+				out.write('"');
+			}
+			final Node first = node.getFirstChild();
+			if (first != null && first.getNodeType() == Node.ELEMENT_NODE) {
+				out.write('>');
+				node = first;
+				depth++;
+				continue;
+			}
+			final String text = node.getTextContent();
+			if (text.length() == 0) {
+				out.write("/>");
+			} else {
+				out.write('>');
+				escape(text, false, out);
+				writeEnd(node, out);
+			}
+			// Continue with the next sibling, or close the parents which have no more children
+			for(;;) {
+				if (depth == 0)
+					return;
+				final Node sibling = node.getNextSibling();
+				if (sibling != null) {
+					node = sibling;
+					break;
+				}
+				node = node.getParentNode();
+				depth--;
+				if (indent)
+					newLine(out, depth);
+				writeEnd(node, out);
+			}
+		}
+	}
+
+	/**
+	 * Start a new line and indent it.
+	 * @param out	the writer
+	 * @param depth	the level of the next element
+	 * @throws IOException	when writing fails
+	 */
+	private static void newLine(Writer out, int depth) throws IOException {
+		out.write('\n');
+		for(int i=0;i<depth*INDENT;i++)
+			out.write(' ');
+	}
+
+	/**
+	 * Write the end tag of an element.
+	 * @param node	the element
+	 * @param out	the writer
+	 * @throws IOException	when writing fails
+	 */
+	private static void writeEnd(Node node, Writer out) throws IOException {
+		out.write("</");
+		out.write(node.getNodeName());
+		out.write('>');
+	}
+
+	/**
+	 * Write text, replacing the characters which cannot appear literally by references.
+	 * @param text	the text
+	 * @param attribute	whether the text is the value of an attribute, in which quotes are replaced as well
+	 * @param out	the writer
+	 * @throws IOException	when writing fails
+	 */
+	private static void escape(String text, boolean attribute, Writer out) throws IOException {
+		for(int i=0;i<text.length();i++) {
+			final char c = text.charAt(i);
+			switch(c) {
+				case '&': out.write("&amp;"); break;
+				case '<': out.write("&lt;"); break;
+				case '>': out.write("&gt;"); break;
+				case '"':
+					if (attribute)
+						out.write("&quot;");
+					else
+						out.write(c);
+					break;
+				default:
+					if (c < 0x20 && c != '\t' && c != '\n')
+						out.write("&#"+(int) c+";");
+					else
+						out.write(c);
+			}
+		}
+	}
+
+	/** State of a single decode call */
+	private final class Decoder {
+
+		/**
+		 * Convert a document to an NSObject
+		 * @param doc	the document
+		 * @return the root NSObject
+		 * @throws PropertyListException when parsing fails
+		 */
+		NSObject parseDocument(Document doc) throws PropertyListException {
+			final Element root = doc.getDocumentElement();
+			final NodeList children = root.getChildNodes();
+			Node childNode = null;
+			for(int i=0;i<children.getLength();i++) {
+				if (children.item(i).getNodeType() == Node.TEXT_NODE) {
+					if (children.item(i).getTextContent().trim().length() > 0)
+						throw new PropertyListException("Unexpected text content in root PList node.");
+				} else {
+					if (childNode != null)
+						throw new PropertyListException("The property list appears to contain more than one root NSObject.");
+					childNode = children.item(i);
+				}
+			}
+			if (childNode == null)
+				throw new PropertyListException("The property list contains no root NSObject.");
+			return parseTree(childNode);
+		}
+
+		/**
+		 * <p>Convert a node and its children to an NSObject.</p>
+		 * <p>Arrays and dictionaries are not parsed recursively: each one is pushed on a stack
+		 * and its child elements are parsed one by one.
+		 * A collection is completed and added to its parent after its last child element,
+		 * so the depth of the tree is only limited by the heap.</p>
+		 * @param root the node to parse
+		 * @return the NSObject
+		 * @throws PropertyListException when parsing fails
+		 */
+		private NSObject parseTree(Node root) throws PropertyListException {
+			final List<Frame> stack = new ArrayList<Frame>();
+			NSObject result = startNode(root, stack);
+			while(!stack.isEmpty()) {
+				final Frame top = stack.get(stack.size()-1);
+				final Node child = top.nextElement();
+				if (child == null) {
+					stack.remove(stack.size()-1);
+					final NSObject done = intern(top.finish());
+					if (stack.isEmpty())
+						result = done;
+					else
+						stack.get(stack.size()-1).add(done);
+				} else if (top.dict != null && top.key == null) {
+					top.key = parseKey(child);
+				} else {
+					final int depth = stack.size();
+					final NSObject value = startNode(child, stack);
+					if (stack.size() == depth)
+						top.add(value);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Convert a node to an NSObject, or push it on the stack if it is an array or dictionary.
+		 * @param node the node to parse
+		 * @param stack the collections which are being parsed
+		 * @return the NSObject, or <code>null</code> if a collection was pushed
+		 * @throws PropertyListException when parsing fails
+		 */
+		private NSObject startNode(Node node, List<Frame> stack) throws PropertyListException {
+			final String nodeName = node.getNodeName().toLowerCase();
+			if ("dict".equals(nodeName) || "array".equals(nodeName)) {
+				stack.add(new Frame(node, "dict".equals(nodeName)));
+				return null;
+			}
+			return intern(parseNode(node));
+		}
+
+		/**
+		 * Intern a parsed object if the options contain an {@link NSObjectInterner}.
+		 * @param obj	the object
+		 * @return	the canonical instance, or <code>obj</code> if objects are not interned
+		 */
+		private NSObject intern(NSObject obj) {
+			final NSObjectInterner objectInterner = options.getObjectInterner();
+			return objectInterner == null ? obj : objectInterner.intern(obj);
+		}
+
+		/**
+		 * Convert a node which is not a collection to an NSObject
+		 * @param node the node to parse
+		 * @return the NSObject
+		 * @throws PropertyListException when parsing fails
+		 */
+		private NSObject parseNode(Node node) throws PropertyListException {
+			final String nodeName = node.getNodeName().toLowerCase();
+			if ("string".equals(nodeName))
+				return NSString.valueOf(node.getTextContent());
+			if ("integer".equals(nodeName))
+				return parseInteger(node);
+			if ("real".equals(nodeName))
+				return parseReal(node);
+			if ("date".equals(nodeName))
+				return parseDate(node);
+			if ("data".equals(nodeName)) {
+				final byte[] bytes = Base64.decode(node.getTextContent());
+				return bytes.length == 0 ? NSData.EMPTY : new NSData(bytes);
+			}
+			if ("true".equals(nodeName) || "false".equals(nodeName))
+				return parseBoolean(node);
+			throw new PropertyListException("Unexpected node: "+node.getNodeName());
+		}
+
+		/**
+		 * Count the elements among nodes, so collections are not sized for whitespace between them.
+		 * @param nodes	the nodes
+		 * @return	the amount of elements
+		 */
+		private int countElements(NodeList nodes) {
+			int result = 0;
+			for(int i=0;i<nodes.getLength();i++)
+				if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE)
+					result++;
+			return result;
+		}
+
+		/**
+		 * Convert a node to an NSBoolean
+		 * @param node the node to parse
+		 * @return the NSBoolean
+		 * @throws PropertyListException when parsing fails
+		 */
+		private NSBoolean parseBoolean(Node node) throws PropertyListException {
+			if (node.getChildNodes().getLength() > 0)
+				throw new PropertyListException("Unexpected child nodes in NSBoolean node.");
+			if (node.getNodeName().toLowerCase().equals("true"))
+				return NSBoolean.TRUE;
+			return NSBoolean.FALSE;
+		}
+
+		/**
+		 * Convert a node to an NSDate
+		 * @param node the node to parse
+		 * @return the NSDate
+		 * @throws PropertyListException when parsing fails
+		 */
+		private NSDate parseDate(Node node) throws PropertyListException {
+			try {
+				return NSDate.fromEpochSecond(DateCodec.parse(node.getTextContent()), 0);
+			} catch (ParseException e) {
+				throw new PropertyListException("Invalid date", e);
+			}
+		}
+
+		/**
+		 * Convert a node to an NSInteger
+		 * @param node the node to parse
+		 * @return the NSInteger
+		 * @throws PropertyListException when parsing fails
+		 */
+		private NSInteger parseInteger(Node node) throws PropertyListException {
+			final String number = node.getTextContent();
+			try {
+				return NSInteger.valueOf(NumberCodec.parseLong(number));
+			} catch (NumberFormatException e) {
+				throw new PropertyListException("Expected integer but got "+number, e);
+			}
+		}
+
+		/**
+		 * Convert a node to an NSReal
+		 * @param node the node to parse
+		 * @return the NSReal
+		 * @throws PropertyListException when parsing fails
+		 */
+		private NSReal parseReal(Node node) throws PropertyListException {
+			final String number = node.getTextContent();
+			try {
+				return new NSReal(NumberCodec.parseDouble(number));
+			} catch (NumberFormatException e) {
+				throw new PropertyListException("Expected real but got "+number, e);
+			}
+		}
+
+		/**
+		 * Convert a node to a key
+		 * @param node the node to parse
+		 * @return the key name
+		 * @throws PropertyListException when parsing fails
+		 */
+		private String parseKey(Node node) throws PropertyListException {
+			if (node.getChildNodes().getLength() != 1)
+				throw new PropertyListException("Key got "+node.getChildNodes().getLength()+" children, expecting 1.");
+			final KeyInterner keyInterner = options.getKeyInterner();
+			return keyInterner == null ? node.getTextContent() : keyInterner.intern(node.getTextContent());
+		}
+
+		/** An array or dictionary whose child elements are being parsed */
+		private final class Frame {
+			/** The next child node to examine */
+			private Node next;
+			/** The builder, if the node is an array */
+			private final NSMutableArray array;
+			/** The builder, if the node is a dictionary */
+			final NSMutableDictionary dict;
+			/** The key of the next value, if the node is a dictionary */
+			String key;
+
+			/**
+			 * Constructor.
+			 * @param node	the node
+			 * @param dictionary	whether the node is a dictionary
+			 */
+			Frame(Node node, boolean dictionary) {
+				final int size = countElements(node.getChildNodes());
+				next = node.getFirstChild();
+				array = dictionary ? null : new NSMutableArray(size);
+				dict = dictionary ? new NSMutableDictionary(size/2) : null;
+			}
+
+			/**
+			 * Get the next child node which is not text.
+			 * @return	the node, or <code>null</code> after the last child
+			 * @throws PropertyListException	when a child contains text other than whitespace
+			 */
+			Node nextElement() throws PropertyListException {
+				for(;next != null;next = next.getNextSibling()) {
+					if (next.getNodeType() != Node.TEXT_NODE) {
+						final Node result = next;
+						next = next.getNextSibling();
+						return result;
+					}
+					if (next.getTextContent().trim().length() > 0)
+						throw new PropertyListException("Unexpected text content in "+(dict == null ? "NSArray" : "NSDictionary")+" node.");
+				}
+				return null;
+			}
+
+			/**
+			 * Add a parsed value, with the last parsed key if the node is a dictionary.
+			 * @param value	the value
+			 */
+			void add(NSObject value) {
+				if (dict == null) {
+					array.add(value);
+				} else {
+					dict.put(key, value);
+					key = null;
+				}
+			}
+
+			/**
+			 * <p>Get the parsed collection.</p>
+			 * <p>Since the NSUID is also represented as NSDictionary in XML files,
+			 * this function can also return an NSUID if the dictionary meets all of the following requirements:</p>
+			 * <ul>
+			 * <li>The dictionary contains one and only one element.</li>
+			 * <li>The only element in the dictionary has CF$UID as key.</li>
+			 * <li>The only element in the dictionary contains an NSInteger containing a positive value which can be represented with at most 4 bytes.</li>
+			 * </ul>
+			 * @return	the NSArray, NSDictionary or NSUID
+			 */
+			NSObject finish() {
+				if (dict == null)
+					return array.freeze();
+				if (dict.size() == 1
+						&& dict.containsKey(NSUID.CFUIDKEY)
+						&& dict.get(NSUID.CFUIDKEY) instanceof NSInteger
+						&& dict.get(NSUID.CFUIDKEY).toLong() >> 8*4 == 0)
+					return new NSUID(dict.get(NSUID.CFUIDKEY).toLong());
+				return dict.freeze();
+			}
+		}
+
+	}
+
+	/**
+	 * Convert a tree to an XML element without adding it to the document.
+	 * Used by {@link DOMXMLWriter}, which still offers this conversion to subclasses.
+	 * @param doc the document which creates the element
+	 * @param obj the root of the tree
+	 * @return the XML element
+	 * @throws PropertyListException when generating the property list fails
+	 */
+	static Element generateElement(Document doc, NSObject obj) throws PropertyListException {
+		final Element parent = doc.createElement("plist");
+		final Encoder encoder = new Encoder(doc);
+		encoder.stack.add(parent);
+		PlistWalker.walk(obj, encoder);
+		return (Element) parent.removeChild(parent.getFirstChild());
+	}
+
+	/**
+	 * Create the XML element of a dictionary key.
+	 * Used by {@link DOMXMLWriter}, which still offers this conversion to subclasses.
+	 * @param doc the document which creates the element
+	 * @param name the key
+	 * @return the XML element
+	 */
+	static Element generateKey(Document doc, String name) {
+		return new Encoder(doc).generateText("key", name);
+	}
+
+	/** State of a single encode call */
+	private static final class Encoder implements PlistVisitor<PropertyListException> {
+
+		/** The XML document */
+		private final Document doc;
+		/** Elements of the collections which are being generated, the root element first */
+		private final List<Element> stack = new ArrayList<Element>();
+
+		/**
+		 * @param doc the document which creates the elements
+		 */
+		Encoder(Document doc) {
+			this.doc = doc;
+		}
+
+		/**
+		 * Convert a tree to an XML document
+		 * @param root the root of the tree
+		 * @return the document
+		 * @throws PropertyListException when generating the property list fails
+		 */
+		Document generateDocument(NSObject root) throws PropertyListException {
+			final Element rootNode = doc.createElement("plist");
+			rootNode.setAttribute("version", DOMXMLWriter.VERSION);
+			stack.add(rootNode);
+			PlistWalker.walk(root, this);
+			doc.appendChild(rootNode);
+			return doc;
+		}
+
+		/**
+		 * Append the element of a node to the element of its parent,
+		 * preceded by its key if the parent is a dictionary.
+		 * Packed arrays are generated at once.
+		 * {@inheritDoc}
+		 */
+		public Result preVisit(Object key, NSObject node) throws PropertyListException {
+			final Element parent = stack.get(stack.size()-1);
+			if (key instanceof String)
+				parent.appendChild(generateText("key", (String) key));
+			if (node instanceof NSDictionary) {
+				stack.add((Element) parent.appendChild(doc.createElement("dict")));
+				return Result.CONTINUE;
+			}
+			if (node instanceof NSArray) {
+				final Element array = (Element) parent.appendChild(doc.createElement("array"));
+				if (generatePacked((NSArray) node, array))
+					return Result.SKIP_SUBTREE;
+				stack.add(array);
+				return Result.CONTINUE;
+			}
+			parent.appendChild(generateNode(node));
+			return Result.CONTINUE;
+		}
+
+		/** {@inheritDoc} */
+		public Result postVisit(Object key, NSCollection node) {
+			stack.remove(stack.size()-1);
+			return Result.CONTINUE;
+		}
+
+		/**
+		 * Convert an NSObject which is not a collection to an XML element
+		 * @param obj the NSObject to convert
+		 * @return the XML element
+		 * @throws PropertyListException when generating the property list fails
+		 */
+		private Element generateNode(NSObject obj) throws PropertyListException {
+			if (obj instanceof NSBoolean)
+				return doc.createElement(obj.isTrue()?"true":"false");
+			else if (obj instanceof NSData)
+				return generateText("data", Base64.encodeToString(((NSData) obj).toBytes(), true));
+			else if (obj instanceof NSDate)
+				return generateDate((NSDate) obj);
+			else if (obj instanceof NSInteger)
+				return generateText("integer", Long.toString(obj.toLong()));
+			else if (obj instanceof NSReal)
+				return generateReal(obj.toDouble());
+			else if (obj instanceof NSString)
+				return generateText("string", ((NSString) obj).getValue());
+			else if (obj instanceof NSUID)
+				// Use the same representation as Apple's QuickLook implementation
+				return generateDictionary(((NSUID) obj).toMap().entrySet());
+			else throw new PropertyListException("Unknown NSObjecttype; "+(obj == null ? null : obj.getClass().getSimpleName()));
+		}
+
+		/**
+		 * Create an XML element containing text
+		 * @param name the name of the element
+		 * @param text the text
+		 * @return the XML element
+		 */
+		private Element generateText(String name, String text) {
+			final Element result = doc.createElement(name);
+			result.appendChild(doc.createTextNode(text));
+			return result;
+		}
+
+		/**
+		 * Add the elements of a packed array to its XML element
+		 * @param array the array
+		 * @param element the XML element of the array
+		 * @return whether the array is packed
+		 */
+		private boolean generatePacked(NSArray array, Element element) {
+			final Class<? extends NSNumber> packedType = array.getPackedType();
+			if (packedType == NSInteger.class) {
+				for(int i=0;i<array.size();i++)
+					element.appendChild(generateText("integer", Long.toString(array.getLong(i))));
+			} else if (packedType == NSReal.class) {
+				for(int i=0;i<array.size();i++)
+					element.appendChild(generateReal(array.getDouble(i)));
+			} else {
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Convert the entries of a dictionary to an XML element
+		 * @param entries the entries of the dictionary
+		 * @return the XML element
+		 * @throws PropertyListException when generating the property list fails
+		 */
+		private Element generateDictionary(Iterable<? extends Entry<String, ? extends NSObject>> entries) throws PropertyListException {
+			final Element result = doc.createElement("dict");
+			for(Entry<String, ? extends NSObject> e : entries) {
+				result.appendChild(generateText("key", e.getKey()));
+				result.appendChild(generateNode(e.getValue()));
+			}
+			return result;
+		}
+
+		/**
+		 * Convert an NSDate to an XML element
+		 * @param date the NSDate to convert
+		 * @return the XML element
+		 */
+		private Element generateDate(NSDate date) {
+			return generateText("date", DateCodec.format(date.getEpochSecond()));
+		}
+
+		/**
+		 * Convert a real to an XML element
+		 * @param real the real to convert
+		 * @return the XML element
+		 */
+		private Element generateReal(double real) {
+			return generateText("real", NumberCodec.format(real));
+		}
+
+	}
+
+}
@@ -21,45 +21,22 @@ Project page on http://plist.sf.net/
 */
 package net.sf.plist.io.domxml;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.NumberFormat;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.Locale;
-import java.util.TreeMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import net.sf.plist.*;
+import net.sf.plist.NSObject;
+import net.sf.plist.io.PropertyListCodec;
 import net.sf.plist.io.PropertyListException;
 import net.sf.plist.io.PropertyListParser;
-import net.sf.plist.util.Base64;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 
 /**
  * Parses XML property list files to a tree consisting of {@link NSObject}s
+ * @see DOMXMLCodec
  */
 public final class DOMXMLParser extends PropertyListParser {
 
-	/** The XML document */
-	protected Document doc;
-	/** The DocumentBuilderFactory */
-	final static protected DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-	/** The DocumentBuilder */
-	final protected DocumentBuilder db;
 	/** The parse result */
 	protected NSObject result;
 	/** The exception indicating why parsing failed */
@@ -82,221 +59,30 @@ public final class DOMXMLParser extends PropertyListParser {
 	                               	
 	/** @see PropertyListParser#parse(File) */
 	public DOMXMLParser(File file) throws IOException, PropertyListException {
-		this(file, null);
+		super(file, null);
+		if (file == null)
+			throw new NullPointerException("file");
 	}
 	/** @see PropertyListParser#PropertyListParser(InputStream) */
 	public DOMXMLParser(InputStream input) throws IOException, PropertyListException {
-		this(null, input);
-	}
-	/** @see PropertyListParser#PropertyListParser(File,InputStream) */
-	private DOMXMLParser(File file, InputStream input) throws IOException, PropertyListException {
-		super(file, input);
-		try {
-			db = dbf.newDocumentBuilder();
-			db.setEntityResolver(new EntityResolver(){
-				public InputSource resolveEntity(String arg0, String arg1)
-						throws SAXException, IOException {
-					return new InputSource(new ByteArrayInputStream(DTD.getBytes()));
-				}});
-		} catch (ParserConfigurationException e) {
-			// This happens when the configuration of DocumentBuilderFactory is incorrect.
-			// Since we're not changing this configuration,
-			// i'll assume that it isn't our fault.
-			// If you think it is, please report it.
-			// https://sourceforge.net/p/plist/tickets/
-			throw new UnsupportedOperationException("ParserConfigurationException occurred, this should never happen. Please report it on http://plist.sf.net .", e);
-		}
-		try {
-			doc = file==null ? db.parse(input) : db.parse(file);
-		} catch (SAXException e) {
-			throw new PropertyListException("The property list is not a valid XML document.", e);
-		}
+		super(input);
+		if (input == null)
+			throw new NullPointerException("input");
 	}
 	
 	/** {@inheritDoc} */
 	@Override
-	public NSObject parse() throws PropertyListException {
+	public synchronized NSObject parse() throws PropertyListException {
 		if (result != null) return result;
+		if (pleResult != null) throw pleResult; // re-throw the exception of an earlier call
+		final DOMXMLCodec codec = new DOMXMLCodec(PropertyListCodec.XML.withKeyInterner(keyInterner).withObjectInterner(objectInterner));
 		try {
-			if (pleResult != null) throw pleResult;
-			final Element root = doc.getDocumentElement();
-			final NodeList children = root.getChildNodes();
-			Node childNode = null;
-			for(int i=0;i<children.getLength();i++) {
-				if (children.item(i).getNodeType() == Node.TEXT_NODE) {
-					if (children.item(i).getTextContent().trim().length() > 0)
-						throw new PropertyListException("Unexpected text content in root PList node.");
-				} else {
-					if (childNode != null)
-						throw new PropertyListException("The property list appears to contain more than one root NSObject.");
-					childNode = children.item(i);
-				}
-			}
-			return result = parseNode(childNode);
+			return result = file == null ? codec.decode(input) : codec.decode(file);
+		} catch (IOException e) {
+			throw pleResult = new PropertyListException("Unable to parse XML property list", e);
 		} catch (PropertyListException ple) {
-			throw pleResult = ple; // store the exception so it can be re-thrown when parse is called again
-		}
-	}
-	
-	/**
-	 * Convert a node to an NSObject
-	 * @param node the node to parse
-	 * @return the NSObject
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static NSObject parseNode(Node node) throws PropertyListException {
-		final String nodeName = node.getNodeName().toLowerCase();
-		if ("string".equals(nodeName))
-			return parseString(node);
-		if ("integer".equals(nodeName) || "real".equals(nodeName))
-			return parseNumber(node);
-		if ("date".equals(nodeName))
-			return parseDate(node);
-		if ("data".equals(nodeName))
-			return parseData(node);
-		if ("true".equals(nodeName) || "false".equals(nodeName))
-			return parseBoolean(node);
-		if ("dict".equals(nodeName))
-			return parseDictionary(node);
-		if ("array".equals(nodeName))
-			return parseArray(node);
-		throw new PropertyListException("Unexpected node: "+node.getNodeName());
-	}
-	
-	/**
-	 * Convert a node to an NSArray
-	 * @param node the node to parse
-	 * @return the NSArray
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static NSArray parseArray(Node node) throws PropertyListException {
-		final NodeList children = node.getChildNodes();
-		final ArrayList<NSObject> result = new ArrayList<NSObject>();
-		for(int i=0;i<children.getLength();i++) {
-			if (children.item(i).getNodeType() == Node.TEXT_NODE) {
-				if (children.item(i).getTextContent().trim().length() > 0)
-					throw new PropertyListException("Unexpected text content in NSArray node.");
-			} else {
-				result.add(parseNode(children.item(i)));
-			}
+			throw pleResult = ple;
 		}
-		return new NSArray(result);
-	}
-	
-	/**
-	 * Convert a node to an NSDictionary.
-	 * 
-	 * Since the NSUID is also represented as NSDictionary in XML files,
-	 * this function can also return an NSUID if the dictionary meets all of the following requirements:
-	 * <ul>
-	 * <li>The dictionary contains one and only one element.</li>
-	 * <li>The only element in the dictionary has CF$UID as key.</li>
-	 * <li>The only element in the dictionary contains an NSInteger containing a positive value which can be represented with at most 4 bytes.</li>
-	 * </ul>
-	 * @param node the node to parse
-	 * @return the NSDictionary
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static NSObject parseDictionary(Node node) throws PropertyListException {
-		final NodeList children = node.getChildNodes();
-		final TreeMap<String,NSObject> result = new TreeMap<String,NSObject>();
-		String key = null;
-		for(int i=0;i<children.getLength();i++) {
-			if (children.item(i).getNodeType() == Node.TEXT_NODE) {
-				if (children.item(i).getTextContent().trim().length() > 0)
-						throw new PropertyListException("Unexpected text content in NSDictionary node.");
-			} else {
-				if (key == null)
-					key = parseKey(children.item(i));
-				else {
-					result.put(key, parseNode(children.item(i)));
-					key = null;
-				}
-			}
-		}
-		if (result.size() == 1
-				&& result.containsKey(NSUID.CFUIDKEY)
-				&& result.get(NSUID.CFUIDKEY) instanceof NSInteger
-				&& result.get(NSUID.CFUIDKEY).toLong() >> 8*4 == 0)
-			return new NSUID(result.get(NSUID.CFUIDKEY).toLong());
-		return new NSDictionary(result);
-	}
-	
-	/**
-	 * Convert a node to an NSDictionary
-	 * @param node the node to parse
-	 * @return the NSDictionary
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static NSBoolean parseBoolean(Node node) throws PropertyListException {
-		if (node.getChildNodes().getLength() > 0)
-			throw new PropertyListException("Unexpected child nodes in NSBoolean node.");
-		if (node.getNodeName().toLowerCase().equals("true"))
-			return NSBoolean.TRUE;
-		if (node.getNodeName().toLowerCase().equals("false"))
-			return NSBoolean.FALSE;
-		throw new PropertyListException("Expected true or false, got "+node.getNodeName());
-	}
-	
-	/**
-	 * Convert a node to an NSDictionary
-	 * @param node the node to parse
-	 * @return the NSDictionary
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static NSData parseData(Node node) throws PropertyListException {
-		return new NSData(Base64.decode(node.getTextContent()));
-	}
-	
-	/**
-	 * Convert a node to an NSDictionary
-	 * @param node the node to parse
-	 * @return the NSDictionary
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static NSDate parseDate(Node node) throws PropertyListException {
-		try {
-			return new NSDate(NSDate.getFormatter().parse(node.getTextContent()));
-		} catch (ParseException e) {
-			throw new PropertyListException("Invalid date", e);
-		}
-	}
-	
-	/**
-	 * Convert a node to an NSNumber
-	 * @param node the node to parse
-	 * @return the NSNumber
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static NSNumber parseNumber(Node node) throws PropertyListException {
-		final String number = node.getTextContent();
-		try {
-			return NSNumber.createInstance(NumberFormat.getNumberInstance(new Locale("", "", "")).parse(number));
-		} catch (ParseException pe) {
-			throw new PropertyListException("Expected number but got "+number, pe);
-		}
-	}
-	
-	/**
-	 * Convert a node to a key
-	 * @param node the node to parse
-	 * @return the key name
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static String parseKey(Node node) throws PropertyListException {
-		if (node.getChildNodes().getLength() != 1)
-			throw new PropertyListException("Key got "+node.getChildNodes().getLength()+" children, expecting 1.");
-		return node.getTextContent();
-	}
-	
-	/**
-	 * Convert a node to an NSString
-	 * @param node the node to parse
-	 * @return the NSString
-	 * @throws PropertyListException when parsing fails
-	 */
-	protected static NSString parseString(Node node) {
-		return new NSString(node.getTextContent());
 	}
 
 }
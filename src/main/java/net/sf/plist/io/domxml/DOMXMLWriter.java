@@ -23,25 +23,15 @@ package net.sf.plist.io.domxml;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.text.NumberFormat;
-import java.util.Locale;
-import java.util.Map.Entry;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import net.sf.plist.*;
+import net.sf.plist.io.PropertyListCodec;
 import net.sf.plist.io.PropertyListException;
 import net.sf.plist.io.PropertyListWriter;
-import net.sf.plist.util.Base64;
 
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
@@ -49,15 +39,36 @@ import org.w3c.dom.Element;
 
 
 /**
- * Serializes a tree consisting of {@link NSObject}s to an XML property list
+ * <p>Serializes a tree consisting of {@link NSObject}s to an XML property list</p>
+ * <p>The serialization itself is done by {@link DOMXMLCodec}.
+ * The protected <code>generate</code> methods and the <code>doc</code>, <code>dbf</code> and <code>db</code> fields are kept
+ * for subclasses, but are deprecated: the methods delegate to {@link DOMXMLCodec}
+ * and {@link #write(OutputStream, boolean)} no longer calls them or writes {@link #doc}.
+ * Overriding <code>generateNode</code>, <code>generateArray</code>, <code>generateBoolean</code>, <code>generateData</code>,
+ * <code>generateDate</code>, <code>generateDictionary</code>, <code>generateReal</code>, <code>generateInteger</code>,
+ * <code>generateString</code>, <code>generateUID</code> or <code>generateKey</code> therefore no longer changes the output;
+ * subclasses which do so must prepare the tree before writing it instead.</p>
+ * @see DOMXMLCodec
  */
 public class DOMXMLWriter extends PropertyListWriter {
 
-	/** The XML document */
+	/**
+	 * The XML document
+	 * @deprecated not written by {@link #write(OutputStream, boolean)}; only the deprecated <code>generate</code> methods use it
+	 */
+	@Deprecated
 	final protected Document doc;
-	/** The DocumentBuilderFactory */
+	/**
+	 * The DocumentBuilderFactory
+	 * @deprecated {@link DOMXMLCodec} keeps its own factory
+	 */
+	@Deprecated
 	final protected static DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-	/** The DocumentBuilder */
+	/**
+	 * The DocumentBuilder
+	 * @deprecated {@link DOMXMLCodec} keeps a builder for every thread
+	 */
+	@Deprecated
 	final protected DocumentBuilder db;
 	
 	/** The public declaration of the document type */
@@ -71,7 +82,9 @@ public class DOMXMLWriter extends PropertyListWriter {
 	public DOMXMLWriter(NSObject root) {
 		super(root);
 		try {
-			db = dbf.newDocumentBuilder();
+			synchronized(dbf) {
+				db = dbf.newDocumentBuilder();
+			}
 			doc = db.newDocument();
 		} catch (ParserConfigurationException e) {
 			// This happens when the configuration of DocumentBuilderFactory is incorrect.
@@ -85,41 +98,19 @@ public class DOMXMLWriter extends PropertyListWriter {
 	
 	/** {@inheritDoc} */
 	@Override
-	public void write(OutputStream stream) throws DOMException, PropertyListException, IOException {
+	public void write(OutputStream stream) throws PropertyListException, IOException {
 		write(stream,true);
 	}
 	/**
 	 * Convert a tree to a XML property list and write it to a stream
 	 * @param stream the stream to write the property list to 
 	 * @param indent whether the resulting XML file should be indented
-	 * @throws DOMException when an error occurred generating the XML document
 	 * @throws PropertyListException when generating the property list fails
 	 * @throws IOException if an I/O error occurs
 	 */
-	public void write(OutputStream stream, boolean indent) throws DOMException, PropertyListException, IOException {
-		Element rootNode = doc.createElement("plist");
-		rootNode.setAttribute("version", VERSION);
-		rootNode.appendChild(generateNode(root));
-
-		doc.appendChild(rootNode);
-		TransformerFactory transformerFactory = 
-		TransformerFactory.newInstance();
-		Transformer transformer;
+	public void write(OutputStream stream, boolean indent) throws PropertyListException, IOException {
 		try {
-			transformer = transformerFactory.newTransformer();
-			DOMSource source = new DOMSource(doc);
-			StreamResult result =  new StreamResult(stream);
-			transformer.setOutputProperty(OutputKeys.INDENT, indent?"yes":"no");
-			transformer.setOutputProperty(OutputKeys.STANDALONE, "no");
-			transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, DOCTYPE_PUBLIC);
-			transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, DOCTYPE_SYSTEM);
-			transformer.transform(source, result);
-		} catch (TransformerConfigurationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (TransformerException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			new DOMXMLCodec(PropertyListCodec.XML.withIndent(indent)).encode(root, stream);
 		} finally {
 			stream.close();
 		}
@@ -130,27 +121,25 @@ public class DOMXMLWriter extends PropertyListWriter {
 	 * @param obj the NSObject to convert
 	 * @return the XML element
 	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateNode(NSObject obj) throws PropertyListException {
-		if (obj instanceof NSArray)
-			return generateArray((NSArray) obj);
-		else if (obj instanceof NSBoolean)
-			return generateBoolean((NSBoolean) obj);
-		else if (obj instanceof NSData)
-			return generateData((NSData) obj);
-		else if (obj instanceof NSDate)
-			return generateDate((NSDate) obj);
-		else if (obj instanceof NSDictionary)
-			return generateDictionary((NSDictionary) obj);
-		else if (obj instanceof NSInteger)
-			return generateInteger((NSInteger) obj);
-		else if (obj instanceof NSReal)
-			return generateReal((NSReal) obj);
-		else if (obj instanceof NSString)
-			return generateString((NSString) obj);
-		else if (obj instanceof NSUID)
-			return generateUID((NSUID) obj);
-		else throw new PropertyListException("Unknown NSObjecttype; "+obj.getClass().getSimpleName());
+		return DOMXMLCodec.generateElement(doc, obj);
+	}
+	
+	/**
+	 * Convert an NSObject which cannot contain an unknown type to an XML element
+	 * @param obj the NSObject to convert
+	 * @return the XML element
+	 */
+	private Element generateValue(NSObject obj) {
+		try {
+			return DOMXMLCodec.generateElement(doc, obj);
+		} catch (PropertyListException e) {
+			// Only thrown for objects of an unknown type
+			throw new IllegalArgumentException(e);
+		}
 	}
 	
 	/**
@@ -158,46 +147,44 @@ public class DOMXMLWriter extends PropertyListWriter {
 	 * @param array the NSArray to convert
 	 * @return the XML element
 	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateArray(NSArray array) throws DOMException, PropertyListException {
-		Element root = doc.createElement("array");
-		for(NSObject obj : array.toList())
-			root.appendChild(generateNode(obj));
-		return root;
+		return generateNode(array);
 	}
 	
 	/**
 	 * Convert an NSBoolean to an XML element
 	 * @param bool the NSBoolean to convert
 	 * @return the XML element
-	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateBoolean(NSBoolean bool) {
-		return doc.createElement(bool.isTrue()?"true":"false");
+		return generateValue(bool);
 	}
 	
 	/**
 	 * Convert an NSData to an XML element
 	 * @param data the NSData to convert
 	 * @return the XML element
-	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateData(NSData data) {
-		Element root = doc.createElement("data");
-		root.appendChild(doc.createTextNode(Base64.encodeToString(data.toBytes(), true)));
-		return root;
+		return generateValue(data);
 	}
 	
 	/**
 	 * Convert an NSDate to an XML element
 	 * @param date the NSDate to convert
 	 * @return the XML element
-	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateDate(NSDate date) {
-		Element root = doc.createElement("date");
-		root.appendChild(doc.createTextNode(NSDate.getFormatter().format(date.getValue())));
-		return root;
+		return generateValue(date);
 	}
 	
 	/**
@@ -205,76 +192,69 @@ public class DOMXMLWriter extends PropertyListWriter {
 	 * @param dictionary the NSDictionary to convert
 	 * @return the XML element
 	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateDictionary(NSDictionary dictionary) throws DOMException, PropertyListException {
-		Element root = doc.createElement("dict");
-		for(Entry<String, NSObject> e : dictionary.entrySet()) {
-			root.appendChild(generateKey(e.getKey()));
-			root.appendChild(generateNode(e.getValue()));
-		}
-		return root;
+		return generateNode(dictionary);
 	}
 	
 	/**
 	 * Convert an NSReal to an XML element
 	 * @param real the NSReal to convert
 	 * @return the XML element
-	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateReal(NSReal real) {
-		Element root = doc.createElement("real");
-		root.appendChild(doc.createTextNode(NumberFormat.getInstance(new Locale("", "", "")).format(real.toDouble())));
-		return root;
+		return generateValue(real);
 	}
 	
 	/**
 	 * Convert an NSInteger to an XML element
 	 * @param integer the NSInteger to convert
 	 * @return the XML element
-	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateInteger(NSInteger integer) {
-		Element root = doc.createElement("integer");
-		root.appendChild(doc.createTextNode(integer.getValue().toString()));
-		return root;
+		return generateValue(integer);
 	}
 	
 	/**
 	 * Convert an NSString to an XML element
 	 * @param string the NSString to convert
 	 * @return the XML element
-	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateString(NSString string) {
-		Element root = doc.createElement("string");
-		root.appendChild(doc.createTextNode(string.getValue()));
-		return root;
+		return generateValue(string);
 	}
 	
 	/**
 	 * Convert an NSUID to an XML element.
-	 * This will use the same method used by Apple's QuickLook implementation.
-	 * In technical terms, this method will call {@link #generateDictionary(NSDictionary)}
-	 * with {@link NSUID#toMap()} as the argument.
-	 * WARNING: THIS METHOD WILL CONVERT THE {@link NSUID} TO AN {@link NSDictionary}!
+	 * This will use the same method used by Apple's QuickLook implementation,
+	 * which writes the {@link NSUID} as the dictionary returned by {@link NSUID#toMap()}.
 	 * @param uid the NSUID to convert
 	 * @return the XML element
 	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateUID(NSUID uid) throws DOMException, PropertyListException {
-		return generateDictionary(new NSDictionary(uid.toMap()));
+		return generateNode(uid);
 	}
 	
 	/**
 	 * Creates a key XML element
 	 * @param name the name of the key
 	 * @return the XML element
-	 * @throws PropertyListException when generating the property list fails
+	 * @deprecated serialization is done by {@link DOMXMLCodec}, which does not call this method
 	 */
+	@Deprecated
 	protected Element generateKey(String name) {
-		Element root = doc.createElement("key");
-		root.appendChild(doc.createTextNode(name));
-		return root;
+		return DOMXMLCodec.generateKey(doc, name);
 	}
 
 }
@@ -0,0 +1,324 @@
+/*
+Property List XML Validator - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.io.domxml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import net.sf.plist.NSObject;
+import net.sf.plist.io.PropertyListFormat;
+import net.sf.plist.io.PropertyListValidator;
+import net.sf.plist.io.ValidationReport;
+import net.sf.plist.util.DateCodec;
+import net.sf.plist.util.NumberCodec;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * <p>Checks whether an XML property list is well-formed without creating any {@link NSObject}s.</p>
+ *
+ * <p>Opposed to {@link DOMXMLParser}, the document is streamed through a SAX parser,
+ * so no DOM tree is built either.
+ * Besides XML well-formedness, the structure of the property list is checked:
+ * a single root object, known element names, alternating keys and values in dictionaries,
+ * no nested elements in leaf values and a valid textual representation of
+ * integers, reals, dates and data.</p>
+ * @see PropertyListValidator
+ */
+public final class XMLValidator extends DefaultHandler {
+
+	/** The SAXParserFactory */
+	private static final SAXParserFactory spf = SAXParserFactory.newInstance();
+
+	// Element kinds
+	/** Kind of an element containing no value */
+	private static final byte NONE = 0;
+	/** Kind of the plist element */
+	private static final byte PLIST = 1;
+	/** Kind of the array element */
+	private static final byte ARRAY = 2;
+	/** Kind of the dict element */
+	private static final byte DICT = 3;
+	/** Kind of the key element */
+	private static final byte KEY = 4;
+	/** Kind of the string element */
+	private static final byte STRING = 5;
+	/** Kind of the integer element */
+	private static final byte INTEGER = 6;
+	/** Kind of the real element */
+	private static final byte REAL = 7;
+	/** Kind of the date element */
+	private static final byte DATE = 8;
+	/** Kind of the data element */
+	private static final byte DATA = 9;
+	/** Kind of the true and false elements */
+	private static final byte BOOLEAN = 10;
+
+	/** The problems found */
+	private final List<String> problems = new ArrayList<String>();
+	/** Kind of every open element */
+	private byte[] kinds = new byte[16];
+	/** Amount of children of every open element */
+	private int[] children = new int[16];
+	/** Amount of open elements */
+	private int depth = 0;
+	/** Text content of the current leaf element */
+	private final StringBuilder text = new StringBuilder();
+	/** The amount of value elements */
+	private int objectCount = 0;
+
+	/**
+	 * Validate an XML property list.
+	 * @param input	the property list
+	 * @return	the report
+	 * @throws IOException	when reading the input fails
+	 */
+	public static ValidationReport validate(InputStream input) throws IOException {
+		final XMLValidator validator = new XMLValidator();
+		try {
+			final SAXParser parser;
+			synchronized(spf) {
+				parser = spf.newSAXParser();
+			}
+			parser.parse(input, validator);
+		} catch (ParserConfigurationException e) {
+			throw new UnsupportedOperationException("ParserConfigurationException occurred, this should never happen. Please report it on http://plist.sf.net .", e);
+		} catch (SAXException e) {
+			if (validator.problems.size() < ValidationReport.MAXPROBLEMS)
+				validator.problems.add("The property list is not a valid XML document: "+e.getMessage());
+		}
+		return new ValidationReport(PropertyListFormat.XML, validator.objectCount, validator.problems);
+	}
+
+	/** Construct a new validator */
+	private XMLValidator() {}
+
+	/**
+	 * Record a problem.
+	 * @param problem	description of the problem
+	 * @throws SAXException	when the maximum amount of problems is reached
+	 */
+	private void problem(String problem) throws SAXException {
+		problems.add(problem);
+		if (problems.size() >= ValidationReport.MAXPROBLEMS)
+			throw new SAXException("Too many problems.");
+	}
+
+	/**
+	 * Get the kind of an element
+	 * @param name	the element name
+	 * @return	the kind
+	 */
+	private static byte getKind(String name) {
+		final String lowerName = name.toLowerCase();
+		if ("plist".equals(lowerName)) return PLIST;
+		if ("array".equals(lowerName)) return ARRAY;
+		if ("dict".equals(lowerName)) return DICT;
+		if ("key".equals(lowerName)) return KEY;
+		if ("string".equals(lowerName)) return STRING;
+		if ("integer".equals(lowerName)) return INTEGER;
+		if ("real".equals(lowerName)) return REAL;
+		if ("date".equals(lowerName)) return DATE;
+		if ("data".equals(lowerName)) return DATA;
+		if ("true".equals(lowerName) || "false".equals(lowerName)) return BOOLEAN;
+		return NONE;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public InputSource resolveEntity(String publicId, String systemId) {
+		return new InputSource(new ByteArrayInputStream(DOMXMLParser.DTD.getBytes()));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		final byte kind = getKind(qName);
+		if (depth == 0) {
+			if (kind != PLIST)
+				problem("Expected plist as root element, got "+qName);
+		} else {
+			final byte parent = kinds[depth-1];
+			final int index = children[depth-1]++;
+			if (kind == NONE || kind == PLIST)
+				problem("Unexpected node: "+qName);
+			else if (parent == PLIST && index > 0)
+				problem("The property list appears to contain more than one root NSObject.");
+			else if (parent == DICT && (index % 2 == 0) != (kind == KEY))
+				problem(kind == KEY ? "Expected a value in NSDictionary node, got a key." : "Expected a key in NSDictionary node, got "+qName);
+			else if (parent != PLIST && parent != ARRAY && parent != DICT)
+				problem("Unexpected child node "+qName+" in leaf node.");
+			else if (parent != DICT && kind == KEY)
+				problem("Unexpected key outside NSDictionary node.");
+			if (kind != KEY && kind != PLIST)
+				objectCount++;
+		}
+		if (depth == kinds.length) {
+			final byte[] newKinds = new byte[2*depth];
+			final int[] newChildren = new int[2*depth];
+			System.arraycopy(kinds, 0, newKinds, 0, depth);
+			System.arraycopy(children, 0, newChildren, 0, depth);
+			kinds = newKinds;
+			children = newChildren;
+		}
+		kinds[depth] = kind;
+		children[depth] = 0;
+		depth++;
+		text.setLength(0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (depth == 0)
+			return;
+		switch(kinds[depth-1]) {
+			case INTEGER:
+			case REAL:
+			case DATE:
+			case DATA:
+				text.append(ch, start, length);
+				return;
+			case KEY:
+			case STRING:
+				return;
+		}
+		for(int i=start;i<start+length;i++)
+			if (!Character.isWhitespace(ch[i])) {
+				problem("Unexpected text content in "+describe(kinds[depth-1])+" node.");
+				return;
+			}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		depth--;
+		final byte kind = kinds[depth];
+		if (kind == DICT && children[depth] % 2 != 0)
+			problem("Key without value in NSDictionary node.");
+		else if (kind == PLIST && children[depth] == 0)
+			problem("The property list contains no root NSObject.");
+		else if (kind == INTEGER && !isInteger(text))
+			problem("Expected integer but got "+text);
+		else if (kind == REAL && !isReal(text))
+			problem("Expected real but got "+text);
+		else if (kind == DATE && !isDate(text))
+			problem("Invalid date: "+text);
+		else if (kind == DATA && !isBase64(text))
+			problem("Invalid base64 data.");
+		text.setLength(0);
+	}
+
+	/**
+	 * Get a description of an element kind, used in problem descriptions.
+	 * @param kind	the kind
+	 * @return	the description
+	 */
+	private static String describe(byte kind) {
+		switch(kind) {
+			case PLIST: return "root PList";
+			case ARRAY: return "NSArray";
+			case DICT: return "NSDictionary";
+			case BOOLEAN: return "NSBoolean";
+		}
+		return "unknown";
+	}
+
+	/**
+	 * Check whether text represents a decimal or hexadecimal integer.
+	 * @param s	the text
+	 * @return	whether the text is an integer
+	 * @see NumberCodec#parseLong(CharSequence)
+	 */
+	private static boolean isInteger(CharSequence s) {
+		try {
+			NumberCodec.parseLong(s);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Check whether text represents a real number.
+	 * @param s	the text
+	 * @return	whether the text is a real number
+	 * @see NumberCodec#parseDouble(CharSequence)
+	 */
+	private static boolean isReal(CharSequence s) {
+		try {
+			NumberCodec.parseDouble(s);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Check whether text matches yyyy-MM-dd'T'HH:mm:ss'Z'.
+	 * @param s	the text
+	 * @return	whether the text is a date
+	 * @see DateCodec#parse(CharSequence)
+	 */
+	private static boolean isDate(CharSequence s) {
+		try {
+			DateCodec.parse(s);
+			return true;
+		} catch (ParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Check whether text contains only base64 characters, whitespace and correct padding.
+	 * @param s	the text
+	 * @return	whether the text is base64 data
+	 */
+	private static boolean isBase64(CharSequence s) {
+		int count = 0, padding = 0;
+		for(int i=0;i<s.length();i++) {
+			final char c = s.charAt(i);
+			if (Character.isWhitespace(c))
+				continue;
+			if (c == '=') {
+				padding++;
+			} else if (padding > 0 || !((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/')) {
+				return false;
+			}
+			count++;
+		}
+		return padding <= 2 && count % 4 == 0;
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+Property List Date Codec - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.util;
+
+import java.text.ParseException;
+
+/**
+ * <p>Parses and formats the dates of XML property lists, which have the layout <code>yyyy-MM-dd'T'HH:mm:ss'Z'</code>.</p>
+ *
+ * <p>Opposed to {@link java.text.SimpleDateFormat}, this class has no state and is safe to use by multiple threads;
+ * it creates no calendars or other intermediate objects.
+ * Dates are in UTC, using the Gregorian calendar for all dates, including those before 1582.
+ * Like a lenient {@link java.text.SimpleDateFormat}, fields which are out of range overflow into the next field,
+ * so <code>2012-02-30T00:00:00Z</code> is the first of March.
+ * Whitespace around the date is ignored.</p>
+ * @see net.sf.plist.NSDate
+ */
+public final class DateCodec {
+
+	/** Length of a formatted date */
+	public static final int LENGTH = 20;
+	/** The layout, where every <code>d</code> is a digit */
+	private static final String LAYOUT = "dddd-dd-ddTdd:dd:ddZ";
+	/** Seconds in a day */
+	private static final long DAY = 86400;
+
+	/** Utility class */
+	private DateCodec() {}
+
+	/**
+	 * Parse a date.
+	 * @param text	the text
+	 * @return	the seconds since 1970-01-01T00:00:00Z
+	 * @throws ParseException	when the text is not a date
+	 */
+	public static long parse(CharSequence text) throws ParseException {
+		return parse(text, null, 0, text.length());
+	}
+
+	/**
+	 * Parse a date contained in a part of an array.
+	 * @param chars	the array
+	 * @param offset	the first character of the date
+	 * @param length	the amount of characters
+	 * @return	the seconds since 1970-01-01T00:00:00Z
+	 * @throws ParseException	when the characters are not a date; the error offset is relative to <code>offset</code>
+	 */
+	public static long parse(char[] chars, int offset, int length) throws ParseException {
+		if (offset < 0 || length < 0 || offset > chars.length-length)
+			throw new IndexOutOfBoundsException("offset "+offset+", length "+length+", array length "+chars.length);
+		return parse(null, chars, offset, offset+length);
+	}
+
+	/**
+	 * Parse a date from either a character sequence or an array.
+	 * @param text	the text, or <code>null</code> to read from <code>chars</code>
+	 * @param chars	the array, used when <code>text</code> is <code>null</code>
+	 * @param start	the first character, inclusive
+	 * @param end	the last character, exclusive
+	 * @return	the seconds since 1970-01-01T00:00:00Z
+	 * @throws ParseException	when the text is not a date
+	 */
+	private static long parse(CharSequence text, char[] chars, int start, int end) throws ParseException {
+		final int offset = start;
+		while(start < end && Character.isWhitespace(charAt(text, chars, start)))
+			start++;
+		while(end > start && Character.isWhitespace(charAt(text, chars, end-1)))
+			end--;
+		if (end-start != LENGTH)
+			throw new ParseException("Date must have the layout yyyy-MM-dd'T'HH:mm:ss'Z'", start-offset);
+		for(int i=0;i<LENGTH;i++) {
+			final char expected = LAYOUT.charAt(i), c = charAt(text, chars, start+i);
+			if (expected == 'd' ? (c < '0' || c > '9') : c != expected)
+				throw new ParseException("Unexpected character '"+c+"' in date", start-offset+i);
+		}
+		long year = digits(text, chars, start, 4);
+		int month = digits(text, chars, start+5, 2)-1;
+		if (month < 0) {
+			year--;
+			month = 11;
+		} else {
+			year += month/12;
+			month %= 12;
+		}
+		final long days = daysFromCivil(year, month+1, 1) + digits(text, chars, start+8, 2)-1;
+		return days*DAY + digits(text, chars, start+11, 2)*3600L
+				+ digits(text, chars, start+14, 2)*60L + digits(text, chars, start+17, 2);
+	}
+
+	/**
+	 * Get a character from either a character sequence or an array.
+	 * @param text	the text, or <code>null</code> to read from <code>chars</code>
+	 * @param chars	the array, used when <code>text</code> is <code>null</code>
+	 * @param index	the index
+	 * @return	the character
+	 */
+	private static char charAt(CharSequence text, char[] chars, int index) {
+		return text == null ? chars[index] : text.charAt(index);
+	}
+
+	/**
+	 * Read a decimal number which is known to consist of digits.
+	 * @param text	the text, or <code>null</code> to read from <code>chars</code>
+	 * @param chars	the array, used when <code>text</code> is <code>null</code>
+	 * @param start	the first digit
+	 * @param count	the amount of digits
+	 * @return	the number
+	 */
+	private static int digits(CharSequence text, char[] chars, int start, int count) {
+		int result = 0;
+		for(int i=start;i<start+count;i++)
+			result = 10*result + charAt(text, chars, i)-'0';
+		return result;
+	}
+
+	/**
+	 * Format a date.
+	 * @param epochSecond	the seconds since 1970-01-01T00:00:00Z
+	 * @return	the formatted date
+	 * @throws IllegalArgumentException	when the year is before 0 or after 9999
+	 */
+	public static String format(long epochSecond) {
+		final char[] result = new char[LENGTH];
+		format(epochSecond, result, 0);
+		return new String(result);
+	}
+
+	/**
+	 * Format a date into an array.
+	 * @param epochSecond	the seconds since 1970-01-01T00:00:00Z
+	 * @param dest	the array
+	 * @param offset	the index of the first character to write; {@link #LENGTH} characters are written
+	 * @throws IllegalArgumentException	when the year is before 0 or after 9999
+	 */
+	public static void format(long epochSecond, char[] dest, int offset) {
+		if (offset < 0 || offset > dest.length-LENGTH)
+			throw new IndexOutOfBoundsException("offset "+offset+", array length "+dest.length);
+		long days = epochSecond / DAY, seconds = epochSecond % DAY;
+		if (seconds < 0) {
+			days--;
+			seconds += DAY;
+		}
+		// Civil date of the days since 1970, see http://howardhinnant.github.io/date_algorithms.html
+		final long z = days + 719468;
+		final long era = (z >= 0 ? z : z-146096) / 146097;
+		final long dayOfEra = z - era*146097;
+		final long yearOfEra = (dayOfEra - dayOfEra/1460 + dayOfEra/36524 - dayOfEra/146096) / 365;
+		final long dayOfYear = dayOfEra - (365*yearOfEra + yearOfEra/4 - yearOfEra/100);
+		final long mp = (5*dayOfYear + 2)/153;
+		final int day = (int) (dayOfYear - (153*mp + 2)/5 + 1);
+		final int month = (int) (mp < 10 ? mp+3 : mp-9);
+		final long year = yearOfEra + era*400 + (month <= 2 ? 1 : 0);
+		if (year < 0 || year > 9999)
+			throw new IllegalArgumentException("Year "+year+" cannot be written as yyyy");
+		writeDigits((int) year, 4, dest, offset);
+		dest[offset+4] = '-';
+		writeDigits(month, 2, dest, offset+5);
+		dest[offset+7] = '-';
+		writeDigits(day, 2, dest, offset+8);
+		dest[offset+10] = 'T';
+		writeDigits((int) (seconds/3600), 2, dest, offset+11);
+		dest[offset+13] = ':';
+		writeDigits((int) (seconds/60%60), 2, dest, offset+14);
+		dest[offset+16] = ':';
+		writeDigits((int) (seconds%60), 2, dest, offset+17);
+		dest[offset+19] = 'Z';
+	}
+
+	/**
+	 * Write a non-negative number as a fixed amount of decimal digits.
+	 * @param n	the number
+	 * @param count	the amount of digits
+	 * @param dest	the array
+	 * @param offset	the index of the first digit
+	 */
+	private static void writeDigits(int n, int count, char[] dest, int offset) {
+		for(int i=offset+count-1;i>=offset;i--) {
+			dest[i] = (char) ('0' + n%10);
+			n /= 10;
+		}
+	}
+
+	/**
+	 * Get the days since 1970-01-01 of a date in the Gregorian calendar.
+	 * @param year	the year
+	 * @param month	the month, from 1 to 12
+	 * @param day	the day of the month, which may be beyond the end of the month
+	 * @return	the days since 1970
+	 */
+	private static long daysFromCivil(long year, int month, int day) {
+		if (month <= 2)
+			year--;
+		final long era = (year >= 0 ? year : year-399) / 400;
+		final long yearOfEra = year - era*400;
+		final long dayOfYear = (153*(month > 2 ? month-3 : month+9) + 2)/5 + day-1;
+		final long dayOfEra = yearOfEra*365 + yearOfEra/4 - yearOfEra/100 + dayOfYear;
+		return era*146097 + dayOfEra - 719468;
+	}
+
+}
@@ -0,0 +1,325 @@
+/*
+Property List Number Codec - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.util;
+
+/**
+ * <p>Parses and formats the text of <code>&lt;integer&gt;</code> and <code>&lt;real&gt;</code> elements in XML property lists.</p>
+ *
+ * <p>Integers are decimal or hexadecimal with a <code>0x</code> prefix, optionally signed,
+ * and must fit in a <code>long</code>.
+ * Reals are decimal numbers with an optional exponent, hexadecimal integers or floating point numbers,
+ * or <code>nan</code>, <code>inf</code> and <code>infinity</code> (case insensitive, optionally signed).
+ * Whitespace around a number is ignored.
+ * Opposed to {@link java.text.NumberFormat}, this class does not depend on the locale,
+ * has no state, is safe to use by multiple threads and does not box its results.</p>
+ *
+ * <p>Reals with at most 15 significant digits and a small exponent, which covers most reals in property lists,
+ * are parsed exactly without {@link Double#parseDouble(String)}.
+ * Reals are formatted with the least amount of digits which parse to the same value.</p>
+ */
+public final class NumberCodec {
+
+	/** Powers of ten which are exact doubles */
+	private static final double[] POW10 = {
+		1E0, 1E1, 1E2, 1E3, 1E4, 1E5, 1E6, 1E7, 1E8, 1E9, 1E10,
+		1E11, 1E12, 1E13, 1E14, 1E15, 1E16, 1E17, 1E18, 1E19, 1E20, 1E21, 1E22
+	};
+	/** Largest mantissa for which every value is an exact double */
+	private static final long MAXEXACT = 1L<<53;
+
+	/** Utility class */
+	private NumberCodec() {}
+
+	/**
+	 * Parse an integer.
+	 * @param text	the text
+	 * @return	the integer
+	 * @throws NumberFormatException	when the text is not an integer or does not fit in a <code>long</code>
+	 */
+	public static long parseLong(CharSequence text) throws NumberFormatException {
+		int start = 0, end = text.length();
+		while(start < end && Character.isWhitespace(text.charAt(start)))
+			start++;
+		while(end > start && Character.isWhitespace(text.charAt(end-1)))
+			end--;
+		return parseLong(text, start, end);
+	}
+
+	/**
+	 * Parse an integer without surrounding whitespace.
+	 * @param text	the text
+	 * @param start	the first character, inclusive
+	 * @param end	the last character, exclusive
+	 * @return	the integer
+	 * @throws NumberFormatException	when the text is not an integer or does not fit in a <code>long</code>
+	 */
+	private static long parseLong(CharSequence text, int start, int end) throws NumberFormatException {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+			negative = text.charAt(i++) == '-';
+		final int radix = isHex(text, i, end) ? 16 : 10;
+		if (radix == 16)
+			i += 2;
+		if (i == end)
+			throw invalid(text, start, end);
+		// Accumulate negatively, so Long.MIN_VALUE can be parsed
+		final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		final long multmin = limit / radix;
+		long result = 0;
+		for(;i<end;i++) {
+			final int digit = Character.digit(text.charAt(i), radix);
+			if (digit < 0)
+				throw invalid(text, start, end);
+			if (result < multmin || result*radix < limit+digit)
+				throw new NumberFormatException("Integer out of range: "+text.subSequence(start, end));
+			result = result*radix - digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parse a real.
+	 * @param text	the text
+	 * @return	the real
+	 * @throws NumberFormatException	when the text is not a real
+	 */
+	public static double parseDouble(CharSequence text) throws NumberFormatException {
+		int start = 0, end = text.length();
+		while(start < end && Character.isWhitespace(text.charAt(start)))
+			start++;
+		while(end > start && Character.isWhitespace(text.charAt(end-1)))
+			end--;
+		int i = start;
+		boolean negative = false;
+		if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+			negative = text.charAt(i++) == '-';
+		if (equalsIgnoreCase(text, i, end, "nan"))
+			return Double.NaN;
+		if (equalsIgnoreCase(text, i, end, "inf") || equalsIgnoreCase(text, i, end, "infinity"))
+			return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		if (isHex(text, i, end)) {
+			for(int j=i;j<end;j++)
+				if (text.charAt(j) == 'p' || text.charAt(j) == 'P' || text.charAt(j) == '.')
+					return Double.parseDouble(text.subSequence(start, end).toString());
+			return parseLong(text, start, end);
+		}
+
+		long mantissa = 0;
+		int significant = 0, exponent = 0;
+		boolean digits = false, exact = true;
+		for(boolean fraction = false;i<end;i++) {
+			final char c = text.charAt(i);
+			if (c == '.' && !fraction) {
+				fraction = true;
+				continue;
+			}
+			if (c < '0' || c > '9')
+				break;
+			digits = true;
+			if (significant < 18) {
+				if (mantissa != 0 || c != '0')
+					significant++;
+				mantissa = 10*mantissa + c-'0';
+				if (fraction)
+					exponent--;
+			} else {
+				exact &= c == '0';
+				if (!fraction)
+					exponent++;
+			}
+		}
+		if (!digits)
+			throw invalid(text, start, end);
+		if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+				negativeExponent = text.charAt(i++) == '-';
+			if (i == end)
+				throw invalid(text, start, end);
+			int e = 0;
+			for(;i<end && text.charAt(i) >= '0' && text.charAt(i) <= '9';i++)
+				e = Math.min(10*e + text.charAt(i)-'0', 100000);
+			exponent += negativeExponent ? -e : e;
+		}
+		if (i != end)
+			throw invalid(text, start, end);
+
+		final double result;
+		if (mantissa == 0)
+			result = 0;
+		else if (exact && mantissa <= MAXEXACT && exponent >= -22 && exponent <= 22)
+			result = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+		else
+			return Double.parseDouble(text.subSequence(start, end).toString());
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Format a real with the least amount of digits which parse to the same value.
+	 * Numbers from 10<sup>-6</sup> to 10<sup>17</sup> are written without exponent,
+	 * and integral values without fraction.
+	 * @param d	the real
+	 * @return	the text
+	 */
+	public static String format(double d) {
+		if (Double.isNaN(d))
+			return "nan";
+		if (Double.isInfinite(d))
+			return d > 0 ? "+infinity" : "-infinity";
+		if (d == 0)
+			return 1/d < 0 ? "-0" : "0";
+
+		// Split the output of Double.toString into significant digits and the position of the point
+		final String s = Double.toString(Math.abs(d));
+		final int e = s.indexOf('E');
+		final int mantissaEnd = e < 0 ? s.length() : e;
+		final char[] digits = new char[mantissaEnd];
+		int length = 0, point = -1, leadingZeros = 0;
+		for(int i=0;i<mantissaEnd;i++) {
+			final char c = s.charAt(i);
+			if (c == '.')
+				point = length+leadingZeros;
+			else if (length > 0 || c != '0')
+				digits[length++] = c;
+			else
+				leadingZeros++;
+		}
+		point = (point < 0 ? length+leadingZeros : point) - leadingZeros;
+		if (e >= 0)
+			point += Integer.parseInt(s.substring(e+1));
+		while(digits[length-1] == '0')
+			length--;
+
+		// Double.toString does not always produce the shortest digits
+		for(int n=15;n<length;n++) {
+			final char[] rounded = new char[n];
+			final int roundedPoint = round(digits, n, point, rounded);
+			int roundedLength = n;
+			while(rounded[roundedLength-1] == '0')
+				roundedLength--;
+			final String candidate = render(d < 0, rounded, roundedLength, roundedPoint);
+			if (Double.parseDouble(candidate) == d)
+				return candidate;
+		}
+		return render(d < 0, digits, length, point);
+	}
+
+	/**
+	 * Round significant digits to fewer digits, half up.
+	 * @param digits	the digits
+	 * @param n	the amount of digits to keep
+	 * @param point	the position of the decimal point in <code>digits</code>
+	 * @param result	array to store the <code>n</code> rounded digits in
+	 * @return	the position of the decimal point in the result
+	 */
+	private static int round(char[] digits, int n, int point, char[] result) {
+		System.arraycopy(digits, 0, result, 0, n);
+		if (digits[n] < '5')
+			return point;
+		for(int i=n-1;i>=0;i--) {
+			if (result[i] != '9') {
+				result[i]++;
+				return point;
+			}
+			result[i] = '0';
+		}
+		// All digits were nines
+		result[0] = '1';
+		return point+1;
+	}
+
+	/**
+	 * Write significant digits as a number.
+	 * @param negative	whether the number is negative
+	 * @param digits	the significant digits, without leading or trailing zeros
+	 * @param length	the amount of digits
+	 * @param point	the position of the decimal point in the digits, may be negative or beyond the digits
+	 * @return	the number
+	 */
+	private static String render(boolean negative, char[] digits, int length, int point) {
+		final StringBuilder result = new StringBuilder(length+8);
+		if (negative)
+			result.append('-');
+		if (point > -6 && point <= 17) {
+			if (point <= 0) {
+				result.append("0.");
+				for(int i=point;i<0;i++)
+					result.append('0');
+				result.append(digits, 0, length);
+			} else if (point >= length) {
+				result.append(digits, 0, length);
+				for(int i=length;i<point;i++)
+					result.append('0');
+			} else {
+				result.append(digits, 0, point).append('.').append(digits, point, length-point);
+			}
+		} else {
+			result.append(digits[0]);
+			if (length > 1)
+				result.append('.').append(digits, 1, length-1);
+			result.append('E').append(point-1);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Check whether text starts with a hexadecimal prefix followed by at least one character.
+	 * @param text	the text
+	 * @param start	the first character, inclusive
+	 * @param end	the last character, exclusive
+	 * @return	whether the text is hexadecimal
+	 */
+	private static boolean isHex(CharSequence text, int start, int end) {
+		return end-start > 2 && text.charAt(start) == '0' && (text.charAt(start+1) == 'x' || text.charAt(start+1) == 'X');
+	}
+
+	/**
+	 * Compare a part of a text with a lower case word, ignoring case.
+	 * @param text	the text
+	 * @param start	the first character, inclusive
+	 * @param end	the last character, exclusive
+	 * @param word	the word in lower case
+	 * @return	whether the part equals the word
+	 */
+	private static boolean equalsIgnoreCase(CharSequence text, int start, int end, String word) {
+		if (end-start != word.length())
+			return false;
+		for(int i=0;i<word.length();i++)
+			if (Character.toLowerCase(text.charAt(start+i)) != word.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Create the exception for text which is not a number.
+	 * @param text	the text
+	 * @param start	the first character, inclusive
+	 * @param end	the last character, exclusive
+	 * @return	the exception
+	 */
+	private static NumberFormatException invalid(CharSequence text, int start, int end) {
+		return new NumberFormatException("Not a number: "+text.subSequence(start, end));
+	}
+
+}
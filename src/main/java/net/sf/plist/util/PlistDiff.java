@@ -0,0 +1,367 @@
+/*
+Property List Diff - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import net.sf.plist.NSArray;
+import net.sf.plist.NSCollection;
+import net.sf.plist.NSDictionary;
+import net.sf.plist.NSObject;
+
+/**
+ * <p>Patch which transforms one tree of {@link NSObject}s into another.</p>
+ *
+ * <p>{@link #diff(NSObject, NSObject)} compares two trees and describes their differences
+ * as a list of {@link Operation}s, each of which adds, removes or replaces a single value.
+ * Values are addressed by a path of keys and indexes,
+ * in the same format as {@link net.sf.plist.NSCollection#assocIn(List, NSObject)}.</p>
+ *
+ * <p>Subtrees which are the same instance, for example because they were interned
+ * or left untouched by {@link NSDictionary#with(String, NSObject)}, are skipped without visiting them.
+ * Subtrees with different hash codes are known to be different, so the diff descends into them at once.
+ * Dictionaries and arrays with equal hash codes are compared by their {@link NSObject#contentDigest() content digests}
+ * instead of {@link Object#equals(Object)}, so equal subtrees which are different instances are not visited either.
+ * Hash codes and digests are cached, but computing them visits the whole subtree,
+ * so the first diff of a newly built tree takes time proportional to its size.
+ * After that, on large trees which share most of their subtrees,
+ * a diff only visits the dictionaries and arrays on the paths to the changes.</p>
+ *
+ * <p>{@link #apply(NSObject, PlistDiff)} applies a patch with the persistent updates of
+ * {@link NSDictionary} and {@link NSArray}, so the result shares all untouched subtrees with the original.
+ * Patches are immutable.</p>
+ */
+public final class PlistDiff {
+
+	/**
+	 * Single change in a {@link PlistDiff}.
+	 */
+	public static final class Operation {
+
+		/** The kind of change */
+		public enum Type {
+			/** Insert a value into an array, or add a key to a dictionary */
+			ADD,
+			/** Remove a value from an array or dictionary */
+			REMOVE,
+			/** Replace a value, or the root if the path is empty */
+			REPLACE
+		}
+
+		/** The kind of change */
+		private final Type type;
+		/** The path of the value, consisting of {@link String} keys and {@link Integer} indexes */
+		private final List<Object> path;
+		/** The new value, or <code>null</code> for {@link Type#REMOVE} */
+		private final NSObject value;
+
+		/**
+		 * Constructor.
+		 * @param type	the kind of change
+		 * @param path	the path of the value, consisting of {@link String} keys and {@link Integer} indexes
+		 * @param value	the new value, or <code>null</code> for {@link Type#REMOVE}
+		 */
+		public Operation(Type type, List<?> path, NSObject value) {
+			if (type == null)
+				throw new NullPointerException("type");
+			if ((value == null) != (type == Type.REMOVE))
+				throw new IllegalArgumentException(type+" operations "+(value == null ? "require" : "do not take")+" a value");
+			if (path.isEmpty() && type != Type.REPLACE)
+				throw new IllegalArgumentException(type+" operations require a non-empty path");
+			this.type = type;
+			this.path = Collections.unmodifiableList(Arrays.asList(path.toArray()));
+			this.value = value;
+		}
+
+		/**
+		 * Get the kind of change.
+		 * @return	the type
+		 */
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * Get the path of the value which is changed.
+		 * For arrays, the indexes refer to the array as changed by all preceding operations.
+		 * @return	the unmodifiable path, consisting of {@link String} keys and {@link Integer} indexes
+		 */
+		public List<Object> getPath() {
+			return path;
+		}
+
+		/**
+		 * Get the new value.
+		 * @return	the value, or <code>null</code> for {@link Type#REMOVE}
+		 */
+		public NSObject getValue() {
+			return value;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String toString() {
+			return type+" "+path+(value == null ? "" : " "+value);
+		}
+
+	}
+
+	/** The empty patch */
+	private static final PlistDiff EMPTY = new PlistDiff(Collections.<Operation>emptyList());
+
+	/** The operations, in the order in which they are applied */
+	private final List<Operation> operations;
+
+	/**
+	 * Constructor.
+	 * @param operations	the operations, which must not be modified afterwards
+	 */
+	private PlistDiff(List<Operation> operations) {
+		this.operations = Collections.unmodifiableList(operations);
+	}
+
+	/**
+	 * Create a patch from a list of operations.
+	 * @param operations	the operations, in the order in which they are applied
+	 * @return	the patch
+	 */
+	public static PlistDiff of(List<Operation> operations) {
+		return new PlistDiff(new ArrayList<Operation>(operations));
+	}
+
+	/**
+	 * Compute the changes which transform <code>a</code> into <code>b</code>.
+	 * @param a	the original tree
+	 * @param b	the changed tree
+	 * @return	the patch, which is empty if the trees are equal
+	 */
+	public static PlistDiff diff(NSObject a, NSObject b) {
+		if (b == null)
+			throw new NullPointerException("b");
+		final List<Operation> operations = new ArrayList<Operation>();
+		diff(a, b, new ArrayList<Object>(), operations);
+		return operations.isEmpty() ? EMPTY : new PlistDiff(operations);
+	}
+
+	/**
+	 * Apply a patch.
+	 * @param root	the original tree, which is not modified
+	 * @param patch	the patch
+	 * @return	the changed tree, which shares all unchanged subtrees with <code>root</code>
+	 * @throws IllegalArgumentException	when an operation does not fit the tree
+	 */
+	public static NSObject apply(NSObject root, PlistDiff patch) {
+		NSObject result = root;
+		for(Operation operation : patch.operations)
+			result = apply(result, operation, 0);
+		return result;
+	}
+
+	/**
+	 * Get the operations of this patch.
+	 * @return	the unmodifiable list of operations, in the order in which they are applied
+	 */
+	public List<Operation> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Check whether this patch has no operations.
+	 * @return	whether this patch is empty
+	 */
+	public boolean isEmpty() {
+		return operations.isEmpty();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "PlistDiff"+operations;
+	}
+
+	/**
+	 * Check whether two subtrees are equal, using identity, cached hash codes and cached digests.
+	 * Only values which are not collections are compared with {@link Object#equals(Object)}.
+	 * @param a	the first subtree
+	 * @param b	the second subtree
+	 * @return	whether the subtrees are equal
+	 */
+	private static boolean same(NSObject a, NSObject b) {
+		if (a == b)
+			return true;
+		if (a == null || b == null || a.hashCode() != b.hashCode())
+			return false;
+		if (a instanceof NSCollection && b instanceof NSCollection)
+			return Arrays.equals(a.contentDigest(), b.contentDigest());
+		return a.equals(b);
+	}
+
+	/**
+	 * Add the operations which transform <code>a</code> into <code>b</code>.
+	 * @param a	the original subtree
+	 * @param b	the changed subtree
+	 * @param path	the path of both subtrees, which is restored afterwards
+	 * @param operations	the operations
+	 */
+	private static void diff(NSObject a, NSObject b, List<Object> path, List<Operation> operations) {
+		if (same(a, b))
+			return;
+		if (a instanceof NSDictionary && b instanceof NSDictionary)
+			diffDictionaries((NSDictionary) a, (NSDictionary) b, path, operations);
+		else if (a instanceof NSArray && b instanceof NSArray)
+			diffArrays((NSArray) a, (NSArray) b, path, operations);
+		else
+			operations.add(new Operation(Operation.Type.REPLACE, path, b));
+	}
+
+	/**
+	 * Add the operations which transform one dictionary into another, by merging their sorted keys.
+	 * @param a	the original dictionary
+	 * @param b	the changed dictionary
+	 * @param path	the path of both dictionaries, which is restored afterwards
+	 * @param operations	the operations
+	 */
+	private static void diffDictionaries(NSDictionary a, NSDictionary b, List<Object> path, List<Operation> operations) {
+		final Iterator<Entry<String,NSObject>> ia = a.entrySet().iterator();
+		final Iterator<Entry<String,NSObject>> ib = b.entrySet().iterator();
+		Entry<String,NSObject> ea = ia.hasNext() ? ia.next() : null;
+		Entry<String,NSObject> eb = ib.hasNext() ? ib.next() : null;
+		while(ea != null || eb != null) {
+			final int comparison = ea == null ? 1 : eb == null ? -1 : ea.getKey().compareTo(eb.getKey());
+			if (comparison < 0) {
+				path.add(ea.getKey());
+				operations.add(new Operation(Operation.Type.REMOVE, path, null));
+				path.remove(path.size()-1);
+				ea = ia.hasNext() ? ia.next() : null;
+			} else if (comparison > 0) {
+				path.add(eb.getKey());
+				operations.add(new Operation(Operation.Type.ADD, path, eb.getValue()));
+				path.remove(path.size()-1);
+				eb = ib.hasNext() ? ib.next() : null;
+			} else {
+				if (!same(ea.getValue(), eb.getValue())) {
+					path.add(ea.getKey());
+					diffValues(ea.getValue(), eb.getValue(), path, operations);
+					path.remove(path.size()-1);
+				}
+				ea = ia.hasNext() ? ia.next() : null;
+				eb = ib.hasNext() ? ib.next() : null;
+			}
+		}
+	}
+
+	/**
+	 * Add the operations which transform one array into another.
+	 * The common prefix and suffix are skipped; the remaining values are compared pairwise,
+	 * and the surplus is added or removed at the end of the remaining range.
+	 * @param a	the original array
+	 * @param b	the changed array
+	 * @param path	the path of both arrays, which is restored afterwards
+	 * @param operations	the operations
+	 */
+	private static void diffArrays(NSArray a, NSArray b, List<Object> path, List<Operation> operations) {
+		final int sizeA = a.size(), sizeB = b.size();
+		int prefix = 0;
+		while(prefix < sizeA && prefix < sizeB && same(a.get(prefix), b.get(prefix)))
+			prefix++;
+		int suffix = 0;
+		while(suffix < sizeA-prefix && suffix < sizeB-prefix && same(a.get(sizeA-1-suffix), b.get(sizeB-1-suffix)))
+			suffix++;
+		final int middleA = sizeA-prefix-suffix, middleB = sizeB-prefix-suffix;
+		final int common = Math.min(middleA, middleB);
+		for(int i=prefix;i<prefix+common;i++) {
+			path.add(Integer.valueOf(i));
+			diffValues(a.get(i), b.get(i), path, operations);
+			path.remove(path.size()-1);
+		}
+		// Remove from the back, so the indexes of the operations do not affect each other
+		for(int i=prefix+middleA-1;i>=prefix+common;i--) {
+			path.add(Integer.valueOf(i));
+			operations.add(new Operation(Operation.Type.REMOVE, path, null));
+			path.remove(path.size()-1);
+		}
+		for(int i=prefix+common;i<prefix+middleB;i++) {
+			path.add(Integer.valueOf(i));
+			operations.add(new Operation(Operation.Type.ADD, path, b.get(i)));
+			path.remove(path.size()-1);
+		}
+	}
+
+	/**
+	 * Add the operations which transform a value of a collection into another.
+	 * Missing values (<code>null</code>) are replaced by removals and additions.
+	 * @param a	the original value
+	 * @param b	the changed value
+	 * @param path	the path of both values
+	 * @param operations	the operations
+	 */
+	private static void diffValues(NSObject a, NSObject b, List<Object> path, List<Operation> operations) {
+		if (b == null)
+			operations.add(new Operation(Operation.Type.REMOVE, path, null));
+		else if (a == null)
+			operations.add(new Operation(Operation.Type.REPLACE, path, b));
+		else
+			diff(a, b, path, operations);
+	}
+
+	/**
+	 * Apply an operation to a subtree.
+	 * @param node	the subtree
+	 * @param operation	the operation
+	 * @param depth	the position of the subtree in the path of the operation
+	 * @return	the changed subtree
+	 */
+	private static NSObject apply(NSObject node, Operation operation, int depth) {
+		final List<Object> path = operation.getPath();
+		if (depth == path.size())
+			return operation.getValue();
+		final Object step = path.get(depth);
+		final boolean last = depth == path.size()-1;
+		if (node instanceof NSDictionary && step instanceof String) {
+			final NSDictionary dict = (NSDictionary) node;
+			final String key = (String) step;
+			if (last && operation.getType() == Operation.Type.REMOVE)
+				return dict.without(key);
+			if (!last && !dict.containsKey(key))
+				throw new IllegalArgumentException("Path "+path+" does not exist");
+			return dict.with(key, apply(dict.get(key), operation, depth+1));
+		}
+		if (node instanceof NSArray && step instanceof Integer) {
+			final NSArray array = (NSArray) node;
+			final int index = ((Integer) step).intValue();
+			if (last && operation.getType() == Operation.Type.ADD)
+				return array.withInserted(index, operation.getValue());
+			if (last && operation.getType() == Operation.Type.REMOVE)
+				return array.without(index);
+			if (index < 0 || index >= array.size())
+				throw new IllegalArgumentException("Path "+path+" does not exist");
+			return array.with(index, apply(array.get(index), operation, depth+1));
+		}
+		throw new IllegalArgumentException("Step "+depth+" of the path "+path+" does not lead into a collection");
+	}
+
+}
@@ -0,0 +1,570 @@
+/*
+Property List Path - LGPL 3.0 licensed
+Copyright (C) 2012  Yørn de Jong
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+File is part of the Property List project.
+Project page on http://plist.sf.net/
+*/
+package net.sf.plist.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.plist.NSArray;
+import net.sf.plist.NSBoolean;
+import net.sf.plist.NSDictionary;
+import net.sf.plist.NSInteger;
+import net.sf.plist.NSNumber;
+import net.sf.plist.NSObject;
+import net.sf.plist.NSReal;
+import net.sf.plist.NSString;
+
+/**
+ * <p>Compiled query which selects objects from a tree of {@link NSObject}s.</p>
+ *
+ * <p>A path consists of steps, which are evaluated from left to right:</p>
+ * <ul>
+ * <li><code>.Name</code> or <code>['Name']</code> selects the value of a key in a {@link NSDictionary};
+ * the first key may be given without the dot, as in <code>Items.Name</code>.</li>
+ * <li><code>[2]</code> selects an element of a {@link NSArray}; negative indexes count from the end.</li>
+ * <li><code>.*</code> or <code>[*]</code> selects all elements of an array or all values of a dictionary.</li>
+ * <li><code>[?Attributes.Size &gt; 10]</code> selects the elements or values for which the
+ * relative path selects an object that compares to the literal.
+ * The operators are <code>==</code>, <code>!=</code>, <code>&lt;</code>, <code>&lt;=</code>,
+ * <code>&gt;</code> and <code>&gt;=</code>; literals are quoted strings, numbers, <code>true</code> or <code>false</code>.
+ * Without operator, as in <code>[?Enabled]</code>, the relative path only has to select an object.
+ * The element itself is written <code>@</code>, as in <code>[?@ != 'none']</code>.</li>
+ * <li><code>[?]</code> selects the elements or values which match the next {@link Predicate}
+ * passed to {@link #compile(String, Predicate...)}.</li>
+ * </ul>
+ *
+ * <p>For example, <code>PlistPath.compile("Items[*].Attributes.Name")</code>
+ * selects the name of every item.
+ * The tree is navigated with {@link NSDictionary#get(String)} and {@link NSArray#get(int)},
+ * so no collections are copied.
+ * Filters are tested before a subtree is entered, so subtrees which cannot match are never traversed,
+ * and {@link #selectFirst(NSObject)} stops at the first match.</p>
+ *
+ * <p>Compiled paths are immutable and can be shared between threads,
+ * provided the {@link Predicate}s are thread-safe.</p>
+ */
+public final class PlistPath {
+
+	/**
+	 * Condition which an object must match to be selected by a filter step.
+	 * @see PlistPath#compile(String, Predicate...)
+	 */
+	public interface Predicate {
+		/**
+		 * Test an object.
+		 * @param object	the element of an array or value of a dictionary, never <code>null</code>
+		 * @return	whether the object is selected
+		 */
+		boolean matches(NSObject object);
+	}
+
+	/** Receiver of the selected objects */
+	private interface Sink {
+		/**
+		 * Receive a selected object.
+		 * @param object	the object
+		 * @return	whether evaluation should continue
+		 */
+		boolean accept(NSObject object);
+	}
+
+	/** A single step of a path */
+	private static abstract class Step {
+		/**
+		 * Pass the objects selected from <code>node</code> to the next steps.
+		 * @param node	the current node, never <code>null</code>
+		 * @param path	the path
+		 * @param next	the index of the next step
+		 * @param sink	the receiver of the results
+		 * @return	whether evaluation should continue
+		 */
+		abstract boolean evaluate(NSObject node, PlistPath path, int next, Sink sink);
+
+		/**
+		 * Pass all children of a collection which match a predicate to the next steps.
+		 * @param node	the current node
+		 * @param predicate	the predicate, or <code>null</code> to select all children
+		 * @param path	the path
+		 * @param next	the index of the next step
+		 * @param sink	the receiver of the results
+		 * @return	whether evaluation should continue
+		 */
+		static boolean children(NSObject node, Predicate predicate, PlistPath path, int next, Sink sink) {
+			if (node instanceof NSArray) {
+				final NSArray array = (NSArray) node;
+				final int size = array.size();
+				for(int i=0;i<size;i++)
+					if (!select(array.get(i), predicate, path, next, sink))
+						return false;
+			} else if (node instanceof NSDictionary) {
+				for(NSObject value : ((NSDictionary) node).values())
+					if (!select(value, predicate, path, next, sink))
+						return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Pass a child to the next steps if it matches a predicate.
+		 * @param child	the child, or <code>null</code>
+		 * @param predicate	the predicate, or <code>null</code> to select all children
+		 * @param path	the path
+		 * @param next	the index of the next step
+		 * @param sink	the receiver of the results
+		 * @return	whether evaluation should continue
+		 */
+		private static boolean select(NSObject child, Predicate predicate, PlistPath path, int next, Sink sink) {
+			if (child == null || (predicate != null && !predicate.matches(child)))
+				return true;
+			return path.evaluate(child, next, sink);
+		}
+	}
+
+	/** Step which selects the value of a key */
+	private static final class KeyStep extends Step {
+		/** The key */
+		private final String key;
+		/**
+		 * Constructor.
+		 * @param key	the key
+		 */
+		KeyStep(String key) {
+			this.key = key;
+		}
+		/** {@inheritDoc} */
+		@Override
+		boolean evaluate(NSObject node, PlistPath path, int next, Sink sink) {
+			if (!(node instanceof NSDictionary))
+				return true;
+			final NSObject child = ((NSDictionary) node).get(key);
+			return child == null || path.evaluate(child, next, sink);
+		}
+	}
+
+	/** Step which selects an element of an array */
+	private static final class IndexStep extends Step {
+		/** The index, negative to count from the end */
+		private final int index;
+		/**
+		 * Constructor.
+		 * @param index	the index, negative to count from the end
+		 */
+		IndexStep(int index) {
+			this.index = index;
+		}
+		/** {@inheritDoc} */
+		@Override
+		boolean evaluate(NSObject node, PlistPath path, int next, Sink sink) {
+			if (!(node instanceof NSArray))
+				return true;
+			final NSArray array = (NSArray) node;
+			final int i = index < 0 ? array.size()+index : index;
+			if (i < 0 || i >= array.size())
+				return true;
+			final NSObject child = array.get(i);
+			return child == null || path.evaluate(child, next, sink);
+		}
+	}
+
+	/** Step which selects the children of a collection, optionally filtered */
+	private static final class ChildrenStep extends Step {
+		/** The filter, or <code>null</code> to select all children */
+		private final Predicate predicate;
+		/**
+		 * Constructor.
+		 * @param predicate	the filter, or <code>null</code> to select all children
+		 */
+		ChildrenStep(Predicate predicate) {
+			this.predicate = predicate;
+		}
+		/** {@inheritDoc} */
+		@Override
+		boolean evaluate(NSObject node, PlistPath path, int next, Sink sink) {
+			return children(node, predicate, path, next, sink);
+		}
+	}
+
+	/** Predicate which compares the objects selected by a relative path with a literal */
+	private static final class Comparison implements Predicate {
+		/** The relative path */
+		private final PlistPath path;
+		/** The operator, or <code>null</code> if the path only has to select an object */
+		private final String operator;
+		/** The literal, or <code>null</code> if there is no operator */
+		private final NSObject literal;
+		/**
+		 * Constructor.
+		 * @param path	the relative path
+		 * @param operator	the operator, or <code>null</code> if the path only has to select an object
+		 * @param literal	the literal, or <code>null</code> if there is no operator
+		 */
+		Comparison(PlistPath path, String operator, NSObject literal) {
+			this.path = path;
+			this.operator = operator;
+			this.literal = literal;
+		}
+		/** {@inheritDoc} */
+		public boolean matches(NSObject object) {
+			if (operator == null)
+				return path.selectFirst(object) != null;
+			final boolean[] result = new boolean[1];
+			path.evaluate(object, 0, new Sink() {
+				public boolean accept(NSObject selected) {
+					result[0] = compare(selected);
+					return !result[0];
+				}
+			});
+			return result[0];
+		}
+		/**
+		 * Compare a selected object with the literal.
+		 * @param selected	the object
+		 * @return	whether the comparison holds
+		 */
+		private boolean compare(NSObject selected) {
+			final int comparison;
+			if (selected instanceof NSNumber && literal instanceof NSNumber)
+				comparison = selected instanceof NSInteger && literal instanceof NSInteger
+						? compareLongs(selected.toLong(), literal.toLong())
+						: Double.compare(selected.toDouble(), literal.toDouble());
+			else if (selected instanceof NSString && literal instanceof NSString)
+				comparison = ((NSString) selected).getValue().compareTo(((NSString) literal).getValue());
+			else if ("==".equals(operator))
+				return selected.equals(literal);
+			else if ("!=".equals(operator))
+				return !selected.equals(literal);
+			else
+				return false;
+			if ("==".equals(operator)) return comparison == 0;
+			if ("!=".equals(operator)) return comparison != 0;
+			if ("<".equals(operator)) return comparison < 0;
+			if ("<=".equals(operator)) return comparison <= 0;
+			if (">".equals(operator)) return comparison > 0;
+			return comparison >= 0;
+		}
+		/**
+		 * Compare two longs.
+		 * @param a	the first long
+		 * @param b	the second long
+		 * @return	a negative number, zero or a positive number
+		 */
+		private static int compareLongs(long a, long b) {
+			return a < b ? -1 : a == b ? 0 : 1;
+		}
+	}
+
+	/** The source of this path */
+	private final String source;
+	/** The steps */
+	private final Step[] steps;
+
+	/**
+	 * Constructor.
+	 * @param source	the source of this path
+	 * @param steps	the steps
+	 */
+	private PlistPath(String source, Step[] steps) {
+		this.source = source;
+		this.steps = steps;
+	}
+
+	/**
+	 * Compile a path.
+	 * @param path	the path
+	 * @param predicates	the predicates for the <code>[?]</code> steps, in order of appearance
+	 * @return	the compiled path
+	 * @throws IllegalArgumentException	when the path is invalid or the amount of predicates does not match
+	 */
+	public static PlistPath compile(String path, Predicate... predicates) {
+		final Parser parser = new Parser(path, predicates);
+		final PlistPath result = parser.parsePath(false);
+		if (parser.pos != path.length())
+			throw parser.error("Unexpected character");
+		if (parser.nextPredicate != predicates.length)
+			throw new IllegalArgumentException("Path "+path+" uses "+parser.nextPredicate+" predicates, "+predicates.length+" given");
+		return result;
+	}
+
+	/**
+	 * Select all objects matching this path.
+	 * @param root	the object to evaluate this path against
+	 * @return	the selected objects in the order of the tree
+	 */
+	public List<NSObject> select(NSObject root) {
+		if (root == null)
+			return Collections.emptyList();
+		final List<NSObject> result = new ArrayList<NSObject>();
+		evaluate(root, 0, new Sink() {
+			public boolean accept(NSObject object) {
+				result.add(object);
+				return true;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Select the first object matching this path.
+	 * The rest of the tree is not traversed.
+	 * @param root	the object to evaluate this path against
+	 * @return	the first selected object, or <code>null</code> if there is none
+	 */
+	public NSObject selectFirst(NSObject root) {
+		if (root == null)
+			return null;
+		final NSObject[] result = new NSObject[1];
+		evaluate(root, 0, new Sink() {
+			public boolean accept(NSObject object) {
+				result[0] = object;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Evaluate the steps from <code>step</code> onwards.
+	 * @param node	the current node, never <code>null</code>
+	 * @param step	the index of the step
+	 * @param sink	the receiver of the results
+	 * @return	whether evaluation should continue
+	 */
+	boolean evaluate(NSObject node, int step, Sink sink) {
+		if (step == steps.length)
+			return sink.accept(node);
+		return steps[step].evaluate(node, this, step+1, sink);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	/** Recursive descent parser for paths */
+	private static final class Parser {
+		/** Characters which end a key outside brackets */
+		private static final String KEYEND = ".[]";
+		/** Characters which end a key in a filter expression */
+		private static final String FILTERKEYEND = ".[]=!<> \t";
+
+		/** The path */
+		private final String path;
+		/** The predicates for <code>[?]</code> steps */
+		private final Predicate[] predicates;
+		/** The current position */
+		int pos = 0;
+		/** The index of the next predicate */
+		int nextPredicate = 0;
+
+		/**
+		 * Constructor.
+		 * @param path	the path
+		 * @param predicates	the predicates for <code>[?]</code> steps
+		 */
+		Parser(String path, Predicate[] predicates) {
+			this.path = path;
+			this.predicates = predicates;
+		}
+
+		/**
+		 * Create an exception for the current position.
+		 * @param message	the message
+		 * @return	the exception
+		 */
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message+" at position "+pos+" of path "+path);
+		}
+
+		/**
+		 * Parse steps until the end of the path, or the end of a filter expression.
+		 * @param filter	whether the path is part of a filter expression
+		 * @return	the path
+		 */
+		PlistPath parsePath(boolean filter) {
+			final int start = pos;
+			final String keyEnd = filter ? FILTERKEYEND : KEYEND;
+			final List<Step> steps = new ArrayList<Step>();
+			if (filter && peek() == '@')
+				pos++;
+			else if (pos < path.length() && peek() != '[')
+				steps.add(parseKey(keyEnd));
+			while(pos < path.length()) {
+				final char c = peek();
+				if (c == '.') {
+					pos++;
+					steps.add(parseKey(keyEnd));
+				} else if (c == '[') {
+					pos++;
+					steps.add(parseBracket());
+				} else if (filter) {
+					break;
+				} else {
+					throw error("Unexpected character");
+				}
+			}
+			return new PlistPath(path.substring(start, pos), steps.toArray(new Step[steps.size()]));
+		}
+
+		/**
+		 * Parse a key outside brackets.
+		 * @param keyEnd	the characters which end the key
+		 * @return	the step
+		 */
+		private Step parseKey(String keyEnd) {
+			final int start = pos;
+			while(pos < path.length() && keyEnd.indexOf(peek()) < 0)
+				pos++;
+			if (start == pos)
+				throw error("Expected key");
+			final String key = path.substring(start, pos);
+			return "*".equals(key) ? new ChildrenStep(null) : new KeyStep(key);
+		}
+
+		/**
+		 * Parse the contents of brackets, after the opening bracket.
+		 * @return	the step
+		 */
+		private Step parseBracket() {
+			final Step result;
+			final char c = peek();
+			if (c == '*') {
+				pos++;
+				result = new ChildrenStep(null);
+			} else if (c == '\'' || c == '"') {
+				result = new KeyStep(parseQuoted());
+			} else if (c == '?') {
+				pos++;
+				result = new ChildrenStep(parseFilter());
+			} else {
+				final int start = pos;
+				if (c == '-')
+					pos++;
+				while(pos < path.length() && Character.isDigit(peek()))
+					pos++;
+				try {
+					result = new IndexStep(Integer.parseInt(path.substring(start, pos)));
+				} catch (NumberFormatException e) {
+					throw error("Expected index");
+				}
+			}
+			expect(']');
+			return result;
+		}
+
+		/**
+		 * Parse a filter, after the question mark.
+		 * @return	the predicate
+		 */
+		private Predicate parseFilter() {
+			if (peek() == ']') {
+				if (nextPredicate == predicates.length)
+					throw error("No predicate given");
+				return predicates[nextPredicate++];
+			}
+			final PlistPath relative = parsePath(true);
+			skipWhitespace();
+			if (peek() == ']')
+				return new Comparison(relative, null, null);
+			final int start = pos;
+			while(pos < path.length() && "=!<>".indexOf(peek()) >= 0)
+				pos++;
+			final String operator = path.substring(start, pos);
+			if (!"==".equals(operator) && !"!=".equals(operator) && !"<".equals(operator)
+					&& !"<=".equals(operator) && !">".equals(operator) && !">=".equals(operator))
+				throw error("Invalid operator "+operator);
+			skipWhitespace();
+			final NSObject literal = parseLiteral();
+			skipWhitespace();
+			return new Comparison(relative, operator, literal);
+		}
+
+		/**
+		 * Parse a literal.
+		 * @return	the literal as object
+		 */
+		private NSObject parseLiteral() {
+			final char c = peek();
+			if (c == '\'' || c == '"')
+				return NSString.valueOf(parseQuoted());
+			final int start = pos;
+			while(pos < path.length() && peek() != ']' && !Character.isWhitespace(peek()))
+				pos++;
+			final String literal = path.substring(start, pos);
+			if ("true".equals(literal))
+				return NSBoolean.TRUE;
+			if ("false".equals(literal))
+				return NSBoolean.FALSE;
+			try {
+				if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0)
+					return NSInteger.valueOf(Long.parseLong(literal));
+				return new NSReal(Double.parseDouble(literal));
+			} catch (NumberFormatException e) {
+				pos = start;
+				throw error("Invalid literal "+literal);
+			}
+		}
+
+		/**
+		 * Parse a quoted string; a backslash escapes the next character.
+		 * @return	the string without quotes
+		 */
+		private String parseQuoted() {
+			final char quote = path.charAt(pos++);
+			final StringBuilder result = new StringBuilder();
+			while(pos < path.length() && peek() != quote) {
+				if (peek() == '\\')
+					pos++;
+				if (pos < path.length())
+					result.append(path.charAt(pos++));
+			}
+			expect(quote);
+			return result.toString();
+		}
+
+		/** Skip whitespace */
+		private void skipWhitespace() {
+			while(pos < path.length() && Character.isWhitespace(peek()))
+				pos++;
+		}
+
+		/**
+		 * Skip an expected character.
+		 * @param c	the character
+		 */
+		private void expect(char c) {
+			if (peek() != c)
+				throw error("Expected "+c);
+			pos++;
+		}
+
+		/**
+		 * Get the current character.
+		 * @return	the character, or <code>0</code> at the end of the path
+		 */
+		private char peek() {
+			return pos < path.length() ? path.charAt(pos) : 0;
+		}
+	}
+
+}
@@ -1,12 +1,35 @@
 package net.sf.plist;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
 import java.text.Collator;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sf.plist.util.DateCodec;
+import net.sf.plist.util.NumberCodec;
+import net.sf.plist.util.PlistDiff;
+import net.sf.plist.util.PlistPath;
 
 import org.junit.Test;
 
@@ -76,6 +99,286 @@ public final class PropertyListTest {
 			);
 	}
 	
+	@Test
+	public void lazyStringTest() throws Exception {
+		NSString ascii = NSString.fromASCII("String".getBytes("US-ASCII"));
+		NSString unicode = NSString.fromUTF16("String".getBytes("UTF-16BE"));
+		NSString utf = NSString.fromUTF16("⌘⇧⇪⌥".getBytes("UTF-16BE"));
+		assertEquals(new NSString("String").hashCode(), ascii.hashCode());
+		assertEquals(new NSString("String").hashCode(), unicode.hashCode());
+		assertEquals(ascii, unicode);
+		assertTrue(ascii.contentEquals("String"));
+		assertFalse(utf.contentEquals("String"));
+		assertEquals(4, utf.length());
+		assertEquals(new NSString("⌘⇧⇪⌥"), utf);
+		assertEquals("⌘⇧⇪⌥", utf.getValue());
+		assertEquals(new NSString("String"), unicode);
+
+		NSString high = NSString.fromASCII(new byte[]{(byte) 0xE9});
+		int hash = high.hashCode();
+		assertEquals(NSString.valueOf("\u00e9"), high);
+		assertEquals(hash, NSString.valueOf("\u00e9").hashCode());
+		assertEquals("\u00e9", high.getValue());
+		assertEquals(NSString.valueOf("\u00e9"), high);
+		assertEquals(hash, high.hashCode());
+		assertEquals("\u00e9".hashCode(), NSString.fromASCII(new byte[]{(byte) 0xE9}).contentHashCode());
+	}
+	
+	@Test
+	public void keyInternerTest() throws Exception {
+		KeyInterner interner = new KeyInterner(64);
+		TreeMap<String,Object> first = new TreeMap<String,Object>();
+		first.put(new String("CFBundleIdentifier"), "a");
+		TreeMap<String,Object> second = new TreeMap<String,Object>();
+		second.put(new String("CFBundleIdentifier"), "b");
+		String firstKey = NSDictionary.fromMap(first, interner).getValue().firstKey();
+		String secondKey = NSDictionary.fromMap(second, interner).getValue().firstKey();
+		assertSame(firstKey, secondKey);
+		assertSame(firstKey, interner.intern(NSString.fromASCII("CFBundleIdentifier".getBytes("US-ASCII"))));
+		assertEquals(2, interner.getHits());
+		assertEquals(1, interner.size());
+		assertTrue(interner.getFootprint() > 0);
+	}
+	
+	@Test
+	public void viewTest() {
+		NSDictionary dict = new NSDictionary(TESTMAP);
+		assertEquals(TESTMAP.size(), dict.size());
+		assertEquals(TESTMAP.keySet(), dict.keys());
+		assertTrue(dict.containsKey(TESTMAP.firstKey()));
+		assertFalse(dict.containsKey("no such key"));
+		assertSame(dict.values(), dict.values());
+		NSArray array = new NSArray(dict.values());
+		assertEquals(dict.size(), array.size());
+		assertSame(array.values(), array.getValue());
+		assertSame(dict.get(TESTMAP.firstKey()), array.get(0));
+	}
+	
+	@Test
+	public void builderTest() {
+		NSMutableDictionary dictBuilder = new NSMutableDictionary();
+		dictBuilder.put("b", new NSInteger(1)).put("a", new NSInteger(2)).put("b", new NSInteger(3));
+		assertEquals(2, dictBuilder.size());
+		NSDictionary dict = dictBuilder.freeze();
+		assertSame(dict, dictBuilder.freeze());
+		assertEquals("a", dict.getValue().firstKey());
+		assertEquals(new NSInteger(3), dict.get("b"));
+		TreeMap<String,NSObject> expected = new TreeMap<String,NSObject>();
+		expected.put("a", new NSInteger(2));
+		expected.put("b", new NSInteger(3));
+		assertEquals(new NSDictionary(expected), dict);
+		assertEquals(new NSDictionary(expected).hashCode(), dict.hashCode());
+		assertEquals(new NSMutableDictionary(2).put("a", new NSInteger(2)).put("b", new NSInteger(3)).freeze().estimateRetainedSize(),
+				dict.estimateRetainedSize());
+		Random random = new Random(42);
+		NSMutableDictionary shuffled = new NSMutableDictionary();
+		expected.clear();
+		for(int i=0;i<1000;i++) {
+			String key = "key "+random.nextInt(300);
+			NSInteger value = NSInteger.valueOf(i);
+			shuffled.put(key, value);
+			expected.put(key, value);
+		}
+		assertEquals(new NSDictionary(expected), shuffled.freeze());
+		try {
+			dictBuilder.put("c", NSBoolean.TRUE);
+			fail("Frozen builder was modified");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		
+		NSMutableArray arrayBuilder = new NSMutableArray(2);
+		arrayBuilder.add(dict).add(NSBoolean.FALSE).add(NSBoolean.TRUE);
+		arrayBuilder.remove(1);
+		NSArray array = arrayBuilder.freeze();
+		assertEquals(2, array.size());
+		assertSame(dict, array.get(0));
+		try {
+			arrayBuilder.add(NSBoolean.FALSE);
+			fail("Frozen builder was modified");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void compactTest() {
+		NSMutableDictionary builder = new NSMutableDictionary();
+		for(int i=999;i>=0;i--)
+			builder.put("key "+i, new NSInteger(i));
+		NSDictionary dict = builder.freeze();
+		assertEquals(1000, dict.size());
+		for(int i=0;i<1000;i++)
+			assertEquals(new NSInteger(i), dict.get(new String("key "+i)));
+		assertFalse(dict.containsKey("key 1000"));
+		assertEquals("key 0", dict.getValue().firstKey());
+		assertEquals(new NSInteger(500), dict.getValue().tailMap("key 5").get("key 500"));
+		assertFalse(dict.getValue().headMap("key 5").containsKey("key 500"));
+		assertEquals(new TreeMap<String,NSObject>(dict.getValue()), dict.getValue());
+	}
+	
+	@Test
+	public void hashTest() {
+		NSDictionary dict = new NSDictionary(TESTMAP);
+		NSDictionary copy = new NSDictionary(TESTMAP);
+		assertEquals(dict.hashCode(), copy.hashCode());
+		assertEquals(dict, copy);
+		NSDictionary other = dict.with("Integer", new NSInteger(43));
+		assertTrue(dict.hashCode() != other.hashCode());
+		assertFalse(dict.equals(other));
+		ByteBuffer buffer = ByteBuffer.allocateDirect(DATA.length + 2);
+		buffer.position(1);
+		buffer.put(DATA);
+		buffer.position(1);
+		buffer.limit(DATA.length + 1);
+		NSData direct = new NSData(buffer);
+		assertEquals(new NSData(DATA), direct);
+		assertEquals(new NSData(DATA).hashCode(), direct.hashCode());
+		assertFalse(new NSData(new byte[]{1}).equals(new NSData(new byte[]{2})));
+	}
+	
+	@Test
+	public void flyweightTest() {
+		assertSame(NSInteger.valueOf(1), NSInteger.valueOf(1));
+		assertSame(NSInteger.valueOf(-1), NSNumber.createInstance(Integer.valueOf(-1)));
+		assertEquals(new NSInteger(1L<<40), NSInteger.valueOf(1L<<40));
+		assertSame(NSBoolean.TRUE, NSObject.fromObject(Boolean.TRUE));
+		assertSame(NSString.EMPTY, NSObject.fromObject(""));
+		assertSame(NSString.EMPTY, NSString.fromASCII(new byte[0]));
+		assertSame(NSData.EMPTY, NSObject.fromObject(new byte[0]));
+		assertSame(NSDictionary.EMPTY, new NSMutableDictionary().freeze());
+		assertSame(NSArray.EMPTY, new NSMutableArray().freeze());
+		assertSame(NSArray.EMPTY, NSObject.fromObject(new ArrayList<Object>()));
+		assertEquals(new NSDictionary(new TreeMap<String,NSObject>()), NSDictionary.EMPTY);
+		NSMutableArray packed = new NSMutableArray();
+		packed.add(7L);
+		assertSame(NSInteger.valueOf(7), packed.freeze().get(0));
+	}
+
+	@Test
+	public void pathTest() {
+		NSMutableArray items = new NSMutableArray();
+		for(int i=0;i<5;i++) {
+			NSMutableDictionary attributes = new NSMutableDictionary();
+			attributes.put("Name", new NSString("item "+i)).put("Size", NSInteger.valueOf(10*i));
+			items.add(new NSMutableDictionary().put("Attributes", attributes.freeze())
+					.put("Enabled", NSBoolean.valueOf(i%2 == 0)).freeze());
+		}
+		NSDictionary root = new NSDictionary(TESTMAP).with("Items", items.freeze());
+		assertEquals(Arrays.asList(new NSString("item 0"), new NSString("item 1"), new NSString("item 2"), new NSString("item 3"), new NSString("item 4")),
+				PlistPath.compile("Items[*].Attributes.Name").select(root));
+		assertEquals(new NSString("item 4"), PlistPath.compile("Items[-1]['Attributes'].Name").selectFirst(root));
+		assertEquals(Arrays.asList(new NSString("item 3"), new NSString("item 4")),
+				PlistPath.compile("Items[?Attributes.Size >= 30].Attributes.Name").select(root));
+		assertEquals(3, PlistPath.compile("Items[?Enabled == true]").select(root).size());
+		assertEquals(TESTMAP.get("Min"), PlistPath.compile("Dictionary.Min").selectFirst(root));
+		assertEquals(null, PlistPath.compile("Items[7].Attributes").selectFirst(root));
+		assertEquals(Arrays.asList(new NSString("String")), PlistPath.compile("Array[?@ == 'String']").select(root));
+		final int[] tested = new int[1];
+		PlistPath first = PlistPath.compile("Items[?].Attributes.Name", new PlistPath.Predicate() {
+			public boolean matches(NSObject object) {
+				tested[0]++;
+				return ((NSDictionary) object).get("Enabled").isTrue();
+			}
+		});
+		assertEquals(new NSString("item 0"), first.selectFirst(root));
+		assertEquals(1, tested[0]);
+		try {
+			PlistPath.compile("Items[x]");
+			fail("Invalid path compiled");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void diffTest() {
+		NSDictionary original = new NSDictionary(TESTMAP);
+		assertTrue(PlistDiff.diff(original, new NSDictionary(TESTMAP)).isEmpty());
+		NSArray array = (NSArray) original.get("Array");
+		NSDictionary changed = original
+				.without("Min")
+				.with("New", new NSString("new"))
+				.with("Array", array.withInserted(2, NSBoolean.FALSE).without(5).with(array.size()-1, NSInteger.valueOf(7)))
+				.assocIn(Arrays.asList("Dictionary", "Integer"), NSInteger.valueOf(43));
+		PlistDiff patch = PlistDiff.diff(original, changed);
+		assertEquals(changed, PlistDiff.apply(original, patch));
+		assertSame(original.get("Data"), ((NSDictionary) PlistDiff.apply(original, patch)).get("Data"));
+		assertEquals(original, PlistDiff.apply(changed, PlistDiff.diff(changed, original)));
+		assertEquals(1, PlistDiff.diff(original, changed.with("Min", new NSInteger(-1))
+				.with("Array", array).assocIn(Arrays.asList("Dictionary", "Integer"), new NSInteger(42))).getOperations().size());
+		assertEquals(NSBoolean.TRUE, PlistDiff.apply(original, PlistDiff.diff(original, NSBoolean.TRUE)));
+
+		// Equal subtrees which share their children have 2^64 paths, which cannot be visited
+		NSObject sharedA = new NSString("leaf"), sharedB = new NSString("leaf");
+		for(int i=0;i<64;i++) {
+			sharedA = new NSArray(new NSObject[]{sharedA, sharedA});
+			sharedB = new NSArray(new NSObject[]{sharedB, sharedB});
+		}
+		NSDictionary first = new NSDictionary(Collections.singletonMap("Shared", sharedA));
+		NSDictionary second = new NSDictionary(Collections.singletonMap("Shared", sharedB));
+		assertTrue(PlistDiff.diff(first, second).isEmpty());
+		assertNotNull(((NSCollection) sharedB).digest);
+		patch = PlistDiff.diff(first, second.with("New", NSBoolean.TRUE));
+		assertEquals(1, patch.getOperations().size());
+		assertEquals(Arrays.<Object>asList("New"), patch.getOperations().get(0).getPath());
+	}
+
+	@Test
+	public void footprintTest() {
+		NSDictionary dict = new NSDictionary(TESTMAP);
+		FootprintReport report = FootprintReport.of(dict);
+		assertEquals(report.getTotalBytes(), dict.estimateRetainedSize());
+		assertTrue(report.getBytes(NSData.class) > DATA.length);
+		assertEquals(1, report.getCount(NSData.class));
+		assertTrue(report.getTypes().contains(String.class));
+		NSArray twice = new NSArray(new NSObject[]{dict, dict});
+		assertTrue(twice.estimateRetainedSize() < 2*dict.estimateRetainedSize());
+		assertEquals(0, report.getCount(NSMutableArray.class));
+	}
+	
+	@Test
+	public void persistentTest() {
+		NSDictionary original = new NSDictionary(TESTMAP);
+		NSDictionary dict = original;
+		for(int i=0;i<100;i++)
+			dict = dict.with("key "+i, new NSInteger(i));
+		assertEquals(TESTMAP.size(), original.size());
+		assertEquals(TESTMAP.size()+100, dict.size());
+		assertEquals(new NSInteger(42), dict.get("key 42"));
+		NSDictionary smaller = dict.without("key 42");
+		assertFalse(smaller.containsKey("key 42"));
+		assertTrue(dict.containsKey("key 42"));
+		assertSame(smaller, smaller.without("key 42"));
+		for(int i=0;i<100;i++)
+			smaller = smaller.without("key "+i);
+		assertEquals(original, smaller);
+		assertEquals(original.hashCode(), smaller.hashCode());
+		
+		NSArray array = new NSArray(new NSObject[0]);
+		for(int i=0;i<100;i++)
+			array = array.with(i, new NSInteger(i));
+		NSArray changed = array.with(10, NSBoolean.TRUE).without(0);
+		assertEquals(new NSInteger(10), array.get(10));
+		assertEquals(NSBoolean.TRUE, changed.get(9));
+		assertEquals(99, changed.size());
+		assertEquals(new NSInteger(99), changed.get(98));
+		
+		NSDictionary root = new NSDictionary(TESTMAP).with("array", array);
+		NSDictionary updated = root.assocIn(Arrays.asList("array", 5), NSBoolean.FALSE)
+				.assocIn(Arrays.asList("new", "nested", 0), NSBoolean.TRUE);
+		assertEquals(new NSInteger(5), ((NSArray) root.get("array")).get(5));
+		assertEquals(NSBoolean.FALSE, ((NSArray) updated.get("array")).get(5));
+		assertEquals(NSBoolean.TRUE, ((NSArray) ((NSDictionary) updated.get("new")).get("nested")).get(0));
+		assertSame(root.get(TESTMAP.firstKey()), updated.get(TESTMAP.firstKey()));
+		try {
+			root.assocIn(Arrays.asList("array", "key"), NSBoolean.TRUE);
+			fail("Key used as index");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+		
 	@Test
 	public void conversionTest() {
 		assertEquals(new NSDictionary(TESTMAP), NSObject.fromObject(new NSDictionary(TESTMAP)));
@@ -103,6 +406,174 @@ public final class PropertyListTest {
 		assertEquals(new NSDictionary(expected), NSObject.fromObject(actual));
 	}
 	
+	@Test
+	public void toObjectViewTest() {
+		NSDictionary dict = new NSDictionary(TESTMAP);
+		Map<String,?> view = dict.toObjectView();
+		NSDictionary leaves = dict.without("Data").without("Dictionary").without("Array");
+		assertEquals(leaves.toObject(), leaves.toObjectView()); // primitive arrays have #equals() implemented with ==
+		assertEquals(dict.toObject().keySet(), view.keySet());
+		assertSame(view.get("Dictionary"), view.get("Dictionary"));
+		assertSame(view.get("Data"), view.get("Data"));
+		List<?> array = (List<?>) view.get("Array");
+		assertEquals(((NSArray) TESTMAP.get("Array")).size(), array.size());
+		assertEquals("String", view.get("String"));
+		assertFalse(view.containsKey("no such key"));
+		try {
+			view.clear();
+			fail("View was modified");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void parallelFromObjectTest() {
+		TreeMap<String,Object> map = new TreeMap<String,Object>();
+		for(int i=0;i<1000;i++) {
+			List<Object> list = new ArrayList<Object>();
+			for(int j=0;j<i%200;j++)
+				list.add(Long.valueOf(j));
+			map.put("key "+i, i%2 == 0 ? list : "value "+i);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			NSObject parallel = NSObject.fromObject(map, executor, 64);
+			assertEquals(NSObject.fromObject(map), parallel);
+			assertEquals(NSInteger.class, ((NSArray) ((NSDictionary) parallel).get("key 198")).getPackedType());
+			Map<String,Object> unsorted = new HashMap<String,Object>(map);
+			List<Object> reals = new ArrayList<Object>();
+			for(int j=0;j<100;j++)
+				reals.add(Double.valueOf(j/2.0));
+			List<Object> mixed = new ArrayList<Object>(reals);
+			mixed.add(Long.valueOf(1));
+			unsorted.put("reals", reals);
+			unsorted.put("mixed", mixed);
+			NSDictionary converted = (NSDictionary) NSObject.fromObject(unsorted, executor, 64);
+			assertEquals(NSObject.fromObject(unsorted), converted);
+			assertEquals(NSReal.class, ((NSArray) converted.get("reals")).getPackedType());
+			assertEquals(null, ((NSArray) converted.get("mixed")).getPackedType());
+			map.put("key 500", new Object());
+			try {
+				NSObject.fromObject(map, executor, 64);
+				fail("Object converted");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void dateTest() {
+		NSDate date = new NSDate(CAL.getTime());
+		assertEquals(CAL.getTimeInMillis(), date.getTime());
+		assertEquals(CAL.getTimeInMillis()/1000, date.getEpochSecond());
+		assertEquals(0, date.getNano());
+		assertEquals(date, NSDate.fromEpochSecond(date.getEpochSecond(), 0));
+		assertEquals(date, new NSDate(date.toDouble()));
+
+		NSDate precise = new NSDate(0.25E-3);
+		assertFalse(precise.equals(new NSDate(0)));
+		assertEquals(978307200000L, precise.getTime());
+		assertEquals(978307200L, precise.getEpochSecond());
+		assertEquals(250000, precise.getNano());
+		assertEquals(precise, NSDate.fromEpochSecond(978307200L, 250000));
+
+		NSDate before = NSDate.fromEpochSecond(-1, 500000000);
+		assertEquals(-1, before.getEpochSecond());
+		assertEquals(500000000, before.getNano());
+		assertEquals(-500, before.getTime());
+	}
+	
+	@Test
+	public void dateCodecTest() throws ParseException {
+		SimpleDateFormat format = NSDate.getFormatter();
+		Random random = new Random(42);
+		char[] chars = new char[DateCodec.LENGTH+2];
+		for(int i=0;i<10000;i++) {
+			// From 1600 to 9999, where SimpleDateFormat uses the Gregorian calendar as well
+			long epochSecond = -11676096000L + (long) (random.nextDouble()*(253402300800L+11676096000L));
+			String text = format.format(new Date(epochSecond*1000));
+			assertEquals(text, DateCodec.format(epochSecond));
+			assertEquals(epochSecond, DateCodec.parse(text));
+			DateCodec.format(epochSecond, chars, 1);
+			assertEquals(epochSecond, DateCodec.parse(chars, 1, DateCodec.LENGTH));
+		}
+		assertEquals("0000-01-01T00:00:00Z", DateCodec.format(DateCodec.parse("0000-01-01T00:00:00Z")));
+		assertEquals(DateCodec.parse("2012-03-01T00:00:00Z"), DateCodec.parse(" 2012-02-30T00:00:00Z\n"));
+		assertEquals(DateCodec.parse("2011-12-01T00:00:00Z"), DateCodec.parse("2012-00-01T00:00:00Z"));
+		for(String invalid : new String[]{"", "2012-02-03", "2012-02-03T04:05:06", "2012/02/03T04:05:06Z", "2012-02-03T04:05:0xZ"}) {
+			try {
+				DateCodec.parse(invalid);
+				fail(invalid);
+			} catch (ParseException e) {
+				// expected
+			}
+		}
+		try {
+			DateCodec.format(253402300800L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void numberCodecTest() {
+		assertEquals("42", NumberCodec.format(42));
+		assertEquals("42.28", NumberCodec.format(42.28));
+		assertEquals("1234567.5", NumberCodec.format(1234567.5));
+		assertEquals("0.1", NumberCodec.format(0.1));
+		assertEquals("0.000001", NumberCodec.format(1E-6));
+		assertEquals("1.5E-7", NumberCodec.format(1.5E-7));
+		assertEquals("-1E20", NumberCodec.format(-1E20));
+		assertEquals("-0", NumberCodec.format(-0.0));
+		assertEquals("nan", NumberCodec.format(Double.NaN));
+		assertEquals("-infinity", NumberCodec.format(Double.NEGATIVE_INFINITY));
+		assertEquals("0.3", NumberCodec.format(0.3));
+
+		assertTrue(Double.isNaN(NumberCodec.parseDouble("NaN")));
+		assertEquals(Double.POSITIVE_INFINITY, NumberCodec.parseDouble("+infinity"), 0);
+		assertEquals(Double.NEGATIVE_INFINITY, NumberCodec.parseDouble("-INF"), 0);
+		assertEquals(31, NumberCodec.parseDouble("0x1F"), 0);
+		assertEquals(3, NumberCodec.parseDouble("0x1.8p1"), 0);
+		assertEquals(2.5, NumberCodec.parseDouble(" 2.5\n"), 0);
+		assertEquals(0, NumberCodec.parseDouble("1e-400"), 0);
+		assertEquals(Long.MAX_VALUE, NumberCodec.parseLong("0x7fffffffffffffff"));
+		assertEquals(Long.MIN_VALUE, NumberCodec.parseLong("-9223372036854775808"));
+		assertEquals(-31, NumberCodec.parseLong(" -0x1f "));
+		for(String invalid : new String[]{"", "-", "0x", "1.5", "1e3", "9223372036854775808", "0x10000000000000000", "12a"}) {
+			try {
+				NumberCodec.parseLong(invalid);
+				fail(invalid);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+		for(String invalid : new String[]{"", ".", "1e", "1d", "2.5f", "0x1.8", "1,5", "infinit"}) {
+			try {
+				NumberCodec.parseDouble(invalid);
+				fail(invalid);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+
+		Random random = new Random(42);
+		for(int i=0;i<100000;i++) {
+			double d = Double.longBitsToDouble(random.nextLong());
+			if (Double.isNaN(d))
+				continue;
+			String text = NumberCodec.format(d);
+			assertEquals(text, Double.doubleToLongBits(d), Double.doubleToLongBits(NumberCodec.parseDouble(text)));
+			String decimal = (random.nextBoolean() ? "-" : "")+random.nextInt(1000000)+"."+random.nextInt(1000000000)
+					+(random.nextBoolean() ? "e"+(random.nextInt(40)-20) : "");
+			assertEquals(decimal, Double.parseDouble(decimal), NumberCodec.parseDouble(decimal), 0);
+		}
+	}
+	
 	@Test
 	@SuppressWarnings("boxing")
 	public void toObjectTest() {
@@ -0,0 +1,89 @@
+package net.sf.plist.bind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.plist.NSBoolean;
+import net.sf.plist.NSDictionary;
+import net.sf.plist.NSInteger;
+import net.sf.plist.NSMutableArray;
+import net.sf.plist.NSMutableDictionary;
+import net.sf.plist.NSString;
+
+/**
+ * Compares {@link PlistMapper} with binding the result of {@link NSDictionary#toObject()} by hand.
+ * Run with <code>java -cp target/classes:target/test-classes net.sf.plist.bind.PlistMapperBenchmark</code>.
+ */
+public final class PlistMapperBenchmark {
+
+	public static final class Item {
+		private String name;
+		private long size;
+		private boolean enabled;
+		public String getName() { return name; }
+		public void setName(String name) { this.name = name; }
+		public long getSize() { return size; }
+		public void setSize(long size) { this.size = size; }
+		public boolean isEnabled() { return enabled; }
+		public void setEnabled(boolean enabled) { this.enabled = enabled; }
+	}
+
+	public static final class Catalog {
+		private List<Item> items;
+		public List<Item> getItems() { return items; }
+		public void setItems(List<Item> items) { this.items = items; }
+	}
+
+	private static final int ITEMS = 10000;
+	private static final int ROUNDS = 50;
+
+	public static void main(String[] args) {
+		final NSMutableArray items = new NSMutableArray(ITEMS);
+		for(int i=0;i<ITEMS;i++)
+			items.add(new NSMutableDictionary()
+					.put("name", new NSString("item "+i))
+					.put("size", NSInteger.valueOf(i))
+					.put("enabled", NSBoolean.valueOf(i%2 == 0))
+					.freeze());
+		final NSDictionary dict = new NSMutableDictionary().put("items", items.freeze()).freeze();
+		final PlistMapper mapper = new PlistMapper();
+		long checksum = 0;
+		for(int warmup=0;warmup<2;warmup++) {
+			long start = System.nanoTime();
+			for(int i=0;i<ROUNDS;i++)
+				checksum += mapper.read(dict, Catalog.class).getItems().size();
+			final long mapped = System.nanoTime()-start;
+			start = System.nanoTime();
+			for(int i=0;i<ROUNDS;i++)
+				checksum += byHand(dict).getItems().size();
+			final long converted = System.nanoTime()-start;
+			System.out.printf("PlistMapper: %.2f ms/op, toObject(): %.2f ms/op%n",
+					mapped/1e6/ROUNDS, converted/1e6/ROUNDS);
+		}
+		System.out.println("checksum "+checksum);
+	}
+
+	/**
+	 * Bind a catalog the way it is done without {@link PlistMapper}.
+	 * @param dict	the dictionary
+	 * @return	the catalog
+	 */
+	private static Catalog byHand(NSDictionary dict) {
+		final Map<String,?> map = dict.toObject();
+		final List<?> list = (List<?>) map.get("items");
+		final List<Item> items = new ArrayList<Item>(list.size());
+		for(Object o : list) {
+			final Map<?,?> m = (Map<?,?>) o;
+			final Item item = new Item();
+			item.setName((String) m.get("name"));
+			item.setSize(((Long) m.get("size")).longValue());
+			item.setEnabled(((Boolean) m.get("enabled")).booleanValue());
+			items.add(item);
+		}
+		final Catalog result = new Catalog();
+		result.setItems(items);
+		return result;
+	}
+
+}
@@ -0,0 +1,92 @@
+package net.sf.plist.bind;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.plist.NSArray;
+import net.sf.plist.NSBoolean;
+import net.sf.plist.NSDictionary;
+import net.sf.plist.NSInteger;
+import net.sf.plist.NSMutableDictionary;
+import net.sf.plist.NSObject;
+import net.sf.plist.NSString;
+
+import org.junit.Test;
+
+public final class PlistMapperTest {
+
+	public enum Kind { APPLICATION, FRAMEWORK }
+
+	public static final class Bundle {
+		private String identifier;
+		private int version;
+		private boolean enabled;
+		private Kind kind;
+		private Date created;
+		private List<Bundle> children;
+		private Map<String,Long> sizes;
+		@PlistKey("CFBundleIdentifier")
+		public String getIdentifier() { return identifier; }
+		public void setIdentifier(String identifier) { this.identifier = identifier; }
+		public int getVersion() { return version; }
+		public void setVersion(int version) { this.version = version; }
+		public boolean isEnabled() { return enabled; }
+		public void setEnabled(boolean enabled) { this.enabled = enabled; }
+		public Kind getKind() { return kind; }
+		public void setKind(Kind kind) { this.kind = kind; }
+		public Date getCreated() { return created; }
+		public void setCreated(Date created) { this.created = created; }
+		public List<Bundle> getChildren() { return children; }
+		public void setChildren(List<Bundle> children) { this.children = children; }
+		public Map<String,Long> getSizes() { return sizes; }
+		public void setSizes(Map<String,Long> sizes) { this.sizes = sizes; }
+	}
+
+	@Test
+	public void readWriteTest() {
+		NSDictionary child = new NSMutableDictionary()
+				.put("CFBundleIdentifier", new NSString("net.sf.plist.child"))
+				.put("kind", new NSString("FRAMEWORK"))
+				.freeze();
+		NSDictionary dict = new NSMutableDictionary()
+				.put("CFBundleIdentifier", new NSString("net.sf.plist"))
+				.put("version", NSInteger.valueOf(3))
+				.put("enabled", NSBoolean.TRUE)
+				.put("kind", new NSString("APPLICATION"))
+				.put("children", new NSArray(new NSObject[]{child}))
+				.put("sizes", new NSMutableDictionary().put("binary", NSInteger.valueOf(1024)).freeze())
+				.put("unknown", NSBoolean.FALSE)
+				.freeze();
+		PlistMapper mapper = new PlistMapper();
+		Bundle bundle = mapper.read(dict, Bundle.class);
+		assertEquals("net.sf.plist", bundle.getIdentifier());
+		assertEquals(3, bundle.getVersion());
+		assertTrue(bundle.isEnabled());
+		assertEquals(Kind.APPLICATION, bundle.getKind());
+		assertEquals(null, bundle.getCreated());
+		assertEquals(1, bundle.getChildren().size());
+		assertEquals(Kind.FRAMEWORK, bundle.getChildren().get(0).getKind());
+		assertEquals(Long.valueOf(1024), bundle.getSizes().get("binary"));
+		
+		NSDictionary written = mapper.write(bundle);
+		assertEquals(dict.without("unknown").with("children", new NSArray(new NSObject[]{child
+				.with("version", NSInteger.valueOf(0)).with("enabled", NSBoolean.FALSE)})), written);
+		
+		bundle.setCreated(new Date(0));
+		bundle.setSizes(new TreeMap<String,Long>());
+		bundle.setChildren(Arrays.<Bundle>asList());
+		assertEquals(new Date(0), mapper.read(mapper.write(bundle), Bundle.class).getCreated());
+		try {
+			mapper.read(dict.with("version", new NSString("3")), Bundle.class);
+			fail("String bound to int");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
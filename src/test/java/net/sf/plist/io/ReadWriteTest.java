@@ -7,14 +7,20 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.text.Collator;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
 import java.util.TimeZone;
 import java.util.TreeMap;
 
 import net.sf.plist.*;
+import net.sf.plist.io.bin.BinaryCodec;
 import net.sf.plist.io.bin.BinaryParser;
 import net.sf.plist.io.domxml.DOMXMLParser;
+import net.sf.plist.io.domxml.DOMXMLWriter;
 
 import org.junit.After;
 import org.junit.Before;
@@ -22,6 +28,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
 
 public final class ReadWriteTest {
 
@@ -211,6 +218,8 @@ public final class ReadWriteTest {
     @Before
     public void createTestData() throws IOException {
         emptyFile = folder.newFile("empty");
+        BINARYFILE.reset();
+        XMLFILE.reset();
     }
 	
 	@Test
@@ -218,6 +227,40 @@ public final class ReadWriteTest {
 		assertEquals(DICT, new BinaryParser(BINARYFILE).parse());
 	}
 	@Test
+	public void readBinBufferTest() throws PropertyListException, IOException {
+		byte[] data = new byte[BINARYFILE.available()];
+		BINARYFILE.read(data);
+		assertEquals(DICT, new BinaryParser(ByteBuffer.wrap(data)).parse());
+	}
+	@Test
+	public void keyInternerTest() throws PropertyListException, IOException {
+		KeyInterner interner = new KeyInterner(1024);
+		BinaryParser binaryParser = new BinaryParser(BINARYFILE);
+		binaryParser.setKeyInterner(interner);
+		DOMXMLParser xmlParser = new DOMXMLParser(XMLFILE);
+		xmlParser.setKeyInterner(interner);
+		String binaryKey = binaryParser.parse().toMap().firstKey();
+		String xmlKey = xmlParser.parse().toMap().firstKey();
+		assertSame(binaryKey, xmlKey);
+		assertTrue(interner.getHitRate() > 0);
+	}
+	@Test
+	public void dataSliceTest() throws PropertyListException, IOException {
+		TreeMap<String,NSObject> map = new TreeMap<String,NSObject>();
+		map.put("Data", new NSData(DATA));
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PropertyListWriter.write(new NSDictionary(map), stream, PropertyListFormat.BINARY);
+		ByteBuffer buffer = ByteBuffer.wrap(stream.toByteArray()).asReadOnlyBuffer();
+		NSData data = (NSData) new BinaryParser(buffer).parse().toMap().get("Data");
+		assertEquals(new NSData(DATA), data);
+		assertEquals(0, buffer.position());
+		assertEquals(ByteBuffer.wrap(DATA), data.asReadOnlyBuffer());
+		assertTrue(data.asReadOnlyBuffer().isReadOnly());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		data.writeTo(out);
+		assertArrayEquals(DATA, out.toByteArray());
+	}
+	@Test
 	public void readXMLTest() throws PropertyListException, IOException {
 		assertEquals(DICT, new DOMXMLParser(XMLFILE).parse());
 	}
@@ -236,7 +279,185 @@ public final class ReadWriteTest {
 				new ByteArrayInputStream(stream.toByteArray()))
 			);
 	}
-	
+	@Test
+	public void codecTest() throws Exception {
+		final byte[] binary = new byte[BINARYFILE.available()];
+		BINARYFILE.read(binary);
+		final PropertyListCodec codec = PropertyListCodec.DEFAULT.withKeyInterner(new KeyInterner(1024));
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[4];
+		for(int i=0;i<threads.length;i++) {
+			final PropertyListFormat format = i % 2 == 0 ? PropertyListFormat.BINARY : PropertyListFormat.XML;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for(int j=0;j<20;j++) {
+							assertEquals(DICT, codec.decode(binary));
+							ByteArrayOutputStream stream = new ByteArrayOutputStream();
+							codec.withFormat(format).encode(DICT, stream);
+							assertEquals(DICT, codec.decode(new ByteArrayInputStream(stream.toByteArray())));
+						}
+					} catch (Throwable t) {
+						failure[0] = t;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		if (failure[0] != null)
+			throw new AssertionError(failure[0]);
+	}
+	@Test
+	public void objectInternerTest() throws Exception {
+		final byte[] binary = new byte[BINARYFILE.available()];
+		BINARYFILE.read(binary);
+		NSObjectInterner interner = new NSObjectInterner();
+		PropertyListCodec codec = PropertyListCodec.DEFAULT.withObjectInterner(interner);
+		NSDictionary first = (NSDictionary) codec.decode(binary);
+		NSDictionary second = (NSDictionary) codec.decode(binary);
+		assertEquals(DICT, first);
+		assertSame(first, second);
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PropertyListCodec.XML.encode(DICT, stream);
+		NSDictionary third = (NSDictionary) codec.decode(stream.toByteArray());
+		assertSame(first.get("Dictionary"), third.get("Dictionary"));
+		assertTrue(interner.getHits() > 0);
+		assertTrue(interner.getBytesSaved() > 0);
+		NSDictionary copy = new NSDictionary(DICT.getValue());
+		assertSame(first, interner.intern(copy));
+	}
+	@Test
+	public void packedArrayTest() throws Exception {
+		NSMutableArray longs = new NSMutableArray();
+		NSMutableArray doubles = new NSMutableArray();
+		for(int i=0;i<1000;i++) {
+			longs.add((long) i*i - 500);
+			doubles.add(i + 0.25);
+		}
+		NSMutableDictionary builder = new NSMutableDictionary();
+		builder.put("Longs", longs.freeze()).put("Doubles", doubles.freeze());
+		builder.put("Mixed", new NSMutableArray().add(1L).add(0.5).freeze());
+		NSDictionary dict = builder.freeze();
+		assertEquals(NSInteger.class, ((NSArray) dict.get("Longs")).getPackedType());
+		assertEquals(NSReal.class, ((NSArray) dict.get("Doubles")).getPackedType());
+		assertEquals(null, ((NSArray) dict.get("Mixed")).getPackedType());
+		for(PropertyListFormat format : new PropertyListFormat[]{PropertyListFormat.BINARY, PropertyListFormat.XML}) {
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			PropertyListCodec.DEFAULT.withFormat(format).encode(dict, stream);
+			NSDictionary result = (NSDictionary) PropertyListCodec.DEFAULT.decode(stream.toByteArray());
+			assertEquals(dict, result);
+			NSArray resultLongs = (NSArray) result.get("Longs");
+			assertEquals(NSInteger.class, resultLongs.getPackedType());
+			assertEquals(998001L-500, resultLongs.getLong(999));
+			assertEquals(new NSInteger(-500), resultLongs.get(0));
+			assertEquals(999.25, ((NSArray) result.get("Doubles")).getDouble(999), 0);
+			assertEquals(new NSReal(0.5), ((NSArray) result.get("Mixed")).get(1));
+		}
+	}
+
+	@Test
+	public void contentDigestTest() throws Exception {
+		byte[] digest = DICT.contentDigest();
+		assertEquals(32, digest.length);
+		for(PropertyListFormat format : new PropertyListFormat[]{PropertyListFormat.BINARY, PropertyListFormat.XML}) {
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			PropertyListCodec.DEFAULT.withFormat(format).encode(DICT, stream);
+			assertArrayEquals(digest, PropertyListCodec.DEFAULT.decode(stream.toByteArray()).contentDigest());
+		}
+		assertArrayEquals(digest, new NSDictionary(TESTMAP).contentDigest());
+		NSDictionary changed = DICT.with("Integer", NSInteger.valueOf(43));
+		assertFalse(Arrays.equals(digest, changed.contentDigest()));
+		assertFalse(Arrays.equals(new NSInteger(1).contentDigest(), new NSReal(1).contentDigest()));
+		assertFalse(Arrays.equals(new NSArray(new NSObject[]{new NSString("a"), new NSString("b")}).contentDigest(),
+				new NSArray(new NSObject[]{new NSString("ab")}).contentDigest()));
+	}
+
+	@Test
+	public void canonicalTest() throws Exception {
+		PropertyListCodec codec = PropertyListCodec.BINARY.withCanonical(true);
+		assertTrue(codec.isCanonical());
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		codec.encode(DICT, stream);
+		byte[] canonical = stream.toByteArray();
+		stream.reset();
+		NSDictionary rebuilt = new NSDictionary(new HashMap<String,NSObject>(TESTMAP));
+		codec.encode(new NSObjectInterner().intern(rebuilt), stream);
+		assertArrayEquals(canonical, stream.toByteArray());
+		assertTrue(BinaryCodec.isCanonical(ByteBuffer.wrap(canonical)));
+		assertEquals(DICT, PropertyListCodec.BINARY.decode(canonical));
+
+		byte[] longer = Arrays.copyOf(canonical, canonical.length+1);
+		assertFalse(BinaryCodec.isCanonical(ByteBuffer.wrap(longer)));
+		assertFalse(BinaryCodec.isCanonical(ByteBuffer.wrap(canonical, 0, canonical.length-1)));
+		byte[] minimal = {0x62, 0x70, 0x6C, 0x69, 0x73, 0x74, 0x30, 0x30,
+				(byte) 0xA1, 0x01, 0x51, 0x61, 0x08, 0x0A,
+				0, 0, 0, 0, 0, 0, 1, 1, 0, 0, 0, 0, 0, 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x0C};
+		assertTrue(BinaryCodec.isCanonical(ByteBuffer.wrap(minimal)));
+		for(int i=8;i<minimal.length;i++) {
+			byte[] corrupt = minimal.clone();
+			corrupt[i] = (byte) 0xFF;
+			assertFalse(BinaryCodec.isCanonical(ByteBuffer.wrap(corrupt)));
+		}
+		byte[] wideRefs = {0x62, 0x70, 0x6C, 0x69, 0x73, 0x74, 0x30, 0x30,
+				(byte) 0xA1, 0x00, 0x01, 0x51, 0x61, 0x08, 0x0B,
+				0, 0, 0, 0, 0, 0, 1, 2, 0, 0, 0, 0, 0, 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x0D};
+		assertEquals(PropertyListCodec.BINARY.decode(minimal), PropertyListCodec.BINARY.decode(wideRefs));
+		assertFalse(BinaryCodec.isCanonical(ByteBuffer.wrap(wideRefs)));
+	}
+
+	@Test
+	public void xmlNumberTest() throws Exception {
+		NSArray numbers = new NSArray(new NSObject[]{new NSReal(42), new NSReal(1234567.891), new NSReal(0.1+0.2),
+				new NSReal(Double.NaN), new NSReal(Double.NEGATIVE_INFINITY), new NSInteger(Long.MIN_VALUE)});
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PropertyListCodec.XML.encode(numbers, stream);
+		String xml = stream.toString("UTF-8");
+		assertTrue(xml, xml.contains("<real>42</real>") && xml.contains("<real>1234567.891</real>"));
+		assertEquals(numbers, PropertyListCodec.XML.decode(stream.toByteArray()));
+		assertTrue(PropertyListValidator.validate(stream.toByteArray()).isValid());
+	}
+
+	@Test
+	public void deepTreeTest() throws Exception {
+		NSObject deep = new NSString("leaf");
+		for(int i=0;i<100000;i++)
+			deep = new NSArray(new NSObject[]{deep});
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PropertyListCodec.DEFAULT.withFormat(PropertyListFormat.BINARY).encode(deep, stream);
+		assertTrue(stream.size() > 100000);
+		assertEquals(deep, PropertyListCodec.DEFAULT.decode(stream.toByteArray()));
+		assertEquals(deep, PropertyListParser.parse(new ByteArrayInputStream(stream.toByteArray())));
+		stream.reset();
+		PropertyListCodec.DEFAULT.withFormat(PropertyListFormat.XML).withIndent(false).encode(deep, stream);
+		assertEquals(deep, PropertyListCodec.DEFAULT.decode(stream.toByteArray()));
+		assertFalse(deep.equals(new NSArray(new NSObject[]{deep})));
+		assertEquals(200004, deep.toString().length());
+		Object converted = deep.toObject();
+		assertEquals(deep, NSObject.fromObject(converted));
+		for(int i=0;i<100000;i++)
+			converted = ((List<?>) converted).get(0);
+		assertEquals("leaf", converted);
+		
+		final int[] counts = new int[2];
+		assertFalse(PlistWalker.walk(DICT, new PlistVisitor<RuntimeException>() {
+			public Result preVisit(Object key, NSObject node) {
+				counts[0]++;
+				if ("Array".equals(key))
+					return Result.SKIP_SUBTREE;
+				return "Boolean".equals(key) ? Result.TERMINATE : Result.CONTINUE;
+			}
+			public Result postVisit(Object key, NSCollection node) {
+				counts[1]++;
+				return Result.CONTINUE;
+			}
+		}));
+		assertEquals(0, counts[1]);
+		assertEquals(3, counts[0]);
+	}
+
 	@Test
 	public void emptyFileTest() throws Exception {
 		thrown.expect(CompoundPropertyListException.class);
@@ -257,6 +478,80 @@ public final class ReadWriteTest {
 		PropertyListParser.parse((InputStream) null);
 	}
 	
+	@Test
+	public void validateBinTest() throws IOException {
+		ValidationReport report = PropertyListValidator.validate(BINARYFILE);
+		assertTrue(report.toString(), report.isValid());
+		assertEquals(PropertyListFormat.BINARY, report.getFormat());
+		assertEquals(22, report.getObjectCount());
+	}
+	@Test
+	public void validateXMLTest() throws PropertyListException, IOException {
+		ValidationReport report = PropertyListValidator.validate(XMLFILE);
+		assertTrue(report.toString(), report.isValid());
+		assertEquals(PropertyListFormat.XML, report.getFormat());
+		byte[] padded = ("<plist version=\"1.0\"><date>\n  1987-07-31T06:00:00Z\n</date></plist>").getBytes("UTF-8");
+		assertTrue(PropertyListValidator.validate(padded).toString(), PropertyListValidator.validate(padded).isValid());
+		assertEquals(new NSDate(CAL.getTime()), PropertyListCodec.XML.decode(padded));
+	}
+	@Test
+	public void validateInvalidBinTest() throws IOException {
+		byte[] data = new byte[BINARYFILE.available()];
+		BINARYFILE.read(data);
+		data[9] = 0x7F; // reference to a non-existing object
+		ValidationReport report = PropertyListValidator.validate(data);
+		assertFalse(report.isValid());
+		assertEquals(1, report.getProblems().size());
+		data[data.length-1] = 0x7F; // offset table outside file
+		assertFalse(PropertyListValidator.validate(data).isValid());
+	}
+	@Test
+	@SuppressWarnings("deprecation")
+	public void deprecatedXMLWriterTest() throws PropertyListException {
+		new DOMXMLWriter(DICT) {{
+			Element dict = generateNode(root);
+			assertEquals("dict", dict.getNodeName());
+			assertEquals(2*DICT.size(), dict.getChildNodes().getLength());
+			assertEquals("42", generateInteger(new NSInteger(42)).getTextContent());
+			assertEquals("key", generateKey("a").getNodeName());
+			assertEquals("dict", generateUID(new NSUID(1)).getNodeName());
+		}};
+	}
+	@Test
+	public void setTest() throws IOException {
+		final byte[] data = new byte[46];
+		System.arraycopy("bplist00".getBytes("US-ASCII"), 0, data, 0, 8);
+		data[8] = (byte) 0xC1; data[9] = 1; // set containing object 1
+		data[10] = 0x10; data[11] = 5; // integer 5
+		data[12] = 8; data[13] = 10; // offset table
+		data[data.length-26] = 1; data[data.length-25] = 1; // offset and reference size
+		data[data.length-17] = 2; // number of objects
+		data[data.length-1] = 12; // offset table offset
+		final ValidationReport report = PropertyListValidator.validate(data);
+		assertFalse(report.isValid());
+		assertEquals(report.toString(), 1, report.getProblems().size());
+		assertTrue(report.getProblems().get(0).contains("NSSet"));
+		try {
+			PropertyListCodec.DEFAULT.decode(data);
+			fail("Set was decoded");
+		} catch (PropertyListException e) {
+			// expected
+		}
+		try {
+			PropertyListParser.parse(new ByteArrayInputStream(data));
+			fail("Set was parsed");
+		} catch (PropertyListException e) {
+			// expected
+		}
+	}
+	@Test
+	public void validateInvalidXMLTest() throws IOException {
+		assertFalse(PropertyListValidator.validate("<plist><dict><key>a</key></dict></plist>".getBytes()).isValid());
+		assertFalse(PropertyListValidator.validate("<plist><integer>4x2</integer></plist>".getBytes()).isValid());
+		assertFalse(PropertyListValidator.validate("<plist><true/><false/></plist>".getBytes()).isValid());
+		assertFalse(PropertyListValidator.validate(emptyFile).isValid());
+	}
+	
     @After
     public void cleanUp() {
        assertTrue(emptyFile.exists());